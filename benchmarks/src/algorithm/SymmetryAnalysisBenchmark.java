@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2013 Maarten Houbraken
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Software available at https://github.com/mhoubraken/ISMAGS
+ * Author : Maarten Houbraken (maarten.houbraken@intec.ugent.be)
+ */
+package algorithm;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ISMAGS.CommandLineInterface;
+import benchmarks.Datasets;
+import datastructures.NodeIterator;
+import datastructures.SymProp;
+import motifs.Motif;
+import network.CSRGraph;
+import network.LinkType;
+
+/**
+ * Micro-benchmark of the motif analysis by {@link SymmetryHandler}, which
+ * determines the symmetry-breaking constraints of a motif. It lives in the
+ * algorithm package because SymmetryHandler is package-private.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SymmetryAnalysisBenchmark {
+
+	@Param({ "3", "4", "5", "6", "7" })
+	public int motifSize;
+
+	@Param({ "clique", "cycle", "path", "star" })
+	public String shape;
+
+	private Motif motif;
+	private CSRGraph graph;
+
+	@Setup
+	public void setup() {
+		HashMap<Character, LinkType> typeTranslation = new HashMap<Character, LinkType>();
+		typeTranslation.put('A', new LinkType(false, "A", 0, 'A', "n", "n"));
+		motif = CommandLineInterface.getMotif(Datasets.motifSpec(shape, motifSize), typeTranslation);
+		graph = new CSRGraph(0, new int[0][], new int[0][]);
+	}
+
+	@Benchmark
+	public SymProp analyseMotif() {
+		NodeIterator[] mapping = new NodeIterator[motifSize];
+		for (int i = 0; i < motifSize; i++) {
+			mapping[i] = new NodeIterator(i);
+		}
+		return new SymmetryHandler(mapping, motif, new int[motifSize], graph).getSymProp();
+	}
+}
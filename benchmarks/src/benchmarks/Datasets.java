@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2013 Maarten Houbraken
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Software available at https://github.com/mhoubraken/ISMAGS
+ * Author : Maarten Houbraken (maarten.houbraken@intec.ugent.be)
+ */
+package benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.StringTokenizer;
+
+import ISMAGS.CommandLineInterface;
+import motifs.Motif;
+import network.LinkType;
+import network.Network;
+
+/**
+ * Loads the networks bundled in the networks folder and builds the motifs
+ * used by the benchmarks. The folder is taken from the system property
+ * ismags.networks and defaults to networks/, so the benchmarks should be
+ * started from the root of the repository.
+ */
+public class Datasets {
+
+	/**
+	 * Link files of the X/Y/Z example, in the format of the linkfiles option
+	 */
+	public static final String EXAMPLE_LINKFILES = "X u A A Xu.txt Y u B B Yu.txt Z d A B Zd.txt";
+	/**
+	 * Motif of the X/Y/Z example
+	 */
+	public static final String EXAMPLE_MOTIF = "XXXZ000Z0Y00ZYY";
+
+	private Network network;
+	private HashMap<Character, LinkType> typeTranslation;
+
+	/**
+	 * Reads a network
+	 *
+	 * @param linkfiles
+	 *            link files separated by spaces, in the format of the
+	 *            linkfiles option of the command line interface
+	 * @throws IOException
+	 *             if a link file cannot be read
+	 */
+	public Datasets(String linkfiles) throws IOException {
+		String folder = System.getProperty("ismags.networks", "networks/");
+		ArrayList<String> files = new ArrayList<String>();
+		ArrayList<LinkType> allLinkTypes = new ArrayList<LinkType>();
+		typeTranslation = new HashMap<Character, LinkType>();
+		StringTokenizer st = new StringTokenizer(linkfiles, " ");
+		for (int i = 0; st.hasMoreTokens(); i++) {
+			String name = st.nextToken();
+			boolean directed = st.nextToken().equals("d");
+			String source = st.nextToken();
+			String destination = st.nextToken();
+			files.add(folder + st.nextToken());
+			LinkType t = typeTranslation.get(name.charAt(0));
+			if (t == null) {
+				t = new LinkType(directed, name, i, name.charAt(0), source, destination);
+				typeTranslation.put(name.charAt(0), t);
+			}
+			allLinkTypes.add(t);
+		}
+		network = Network.readNetworkFromFiles(files, allLinkTypes);
+	}
+
+	/**
+	 * Reads one of the bundled networks with a single link type
+	 *
+	 * @param dataset
+	 *            name of the link file without extension, or XYZ for the
+	 *            example with three link types
+	 * @return the network with its link types
+	 * @throws IOException
+	 *             if the link file cannot be read
+	 */
+	public static Datasets read(String dataset) throws IOException {
+		if (dataset.equals("XYZ")) {
+			return new Datasets(EXAMPLE_LINKFILES);
+		}
+		return new Datasets("A u n n " + dataset + ".txt");
+	}
+
+	public Network getNetwork() {
+		return network;
+	}
+
+	/**
+	 * Builds a motif from its description
+	 *
+	 * @param motifspec
+	 *            motif description, in the format of the motif option
+	 * @return the motif
+	 */
+	public Motif getMotif(String motifspec) {
+		return CommandLineInterface.getMotif(motifspec, typeTranslation);
+	}
+
+	/**
+	 * Describes an undirected motif of link type A
+	 *
+	 * @param shape
+	 *            clique, cycle, path or star
+	 * @param size
+	 *            number of motif nodes
+	 * @return motif description, in the format of the motif option
+	 */
+	public static String motifSpec(String shape, int size) {
+		StringBuilder spec = new StringBuilder();
+		for (int i = 1; i < size; i++) {
+			for (int j = 0; j < i; j++) {
+				boolean link;
+				if (shape.equals("clique")) {
+					link = true;
+				} else if (shape.equals("cycle")) {
+					link = j == i - 1 || (j == 0 && i == size - 1);
+				} else if (shape.equals("path")) {
+					link = j == i - 1;
+				} else if (shape.equals("star")) {
+					link = j == 0;
+				} else {
+					throw new IllegalArgumentException("Unknown motif shape: " + shape);
+				}
+				spec.append(link ? 'A' : '0');
+			}
+		}
+		return spec.toString();
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2013 Maarten Houbraken
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Software available at https://github.com/mhoubraken/ISMAGS
+ * Author : Maarten Houbraken (maarten.houbraken@intec.ugent.be)
+ */
+package benchmarks;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import algorithm.MotifFinder;
+import motifs.Motif;
+import motifs.MotifInstance;
+import network.Network;
+
+/**
+ * Search for the motif of the X/Y/Z example with three link types, as run by
+ * the unit tests
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExampleSearchBenchmark {
+
+	private Network network;
+	private Motif motif;
+
+	@Setup
+	public void setup() throws IOException {
+		Datasets datasets = Datasets.read("XYZ");
+		network = datasets.getNetwork();
+		motif = datasets.getMotif(Datasets.EXAMPLE_MOTIF);
+	}
+
+	@Benchmark
+	public Set<MotifInstance> findMotif() {
+		return new MotifFinder(network).findMotif(motif);
+	}
+}
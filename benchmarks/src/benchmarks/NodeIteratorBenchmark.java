@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2013 Maarten Houbraken
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Software available at https://github.com/mhoubraken/ISMAGS
+ * Author : Maarten Houbraken (maarten.houbraken@intec.ugent.be)
+ */
+package benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import datastructures.NodeIterator;
+import motifs.Motif;
+import motifs.MotifLink;
+import network.CSRGraph;
+
+/**
+ * Micro-benchmarks of the candidate computation of {@link NodeIterator}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NodeIteratorBenchmark {
+
+	/**
+	 * Constraining lists of the last motif node of a clique of motifSize
+	 * nodes: the neighbour lists of motifSize - 1 mapped graph nodes, a random
+	 * node and motifSize - 2 of its neighbours
+	 */
+	@State(Scope.Benchmark)
+	public static class CliqueLists {
+
+		private static final int NR_SAMPLES = 1024;
+
+		@Param({ "CA-HepTh", "Wiki-Vote" })
+		public String dataset;
+
+		@Param({ "3", "4", "5", "6", "7" })
+		public int motifSize;
+
+		private CSRGraph graph;
+		private int linkID;
+		private int[][] samples;
+		private int[][] mappedNodes;
+		private NodeIterator iterator;
+		private int sample = 0;
+
+		@Setup
+		public void setup() throws IOException {
+			Datasets datasets = Datasets.read(dataset);
+			graph = datasets.getNetwork().getCSRGraph();
+			linkID = datasets.getMotif(Datasets.motifSpec("clique", 2)).getLinksOfMotifNode(0)[0].getMotifLinkID();
+			int[] nodes = graph.getNodesWithLink(linkID);
+			Random random = new Random(42);
+			samples = new int[NR_SAMPLES][];
+			mappedNodes = new int[NR_SAMPLES][];
+			for (int s = 0; s < NR_SAMPLES; s++) {
+				int[] nodesOfSample = null;
+				while (nodesOfSample == null) {
+					int node = nodes[random.nextInt(nodes.length)];
+					int degree = graph.getDegree(linkID, node);
+					if (degree >= motifSize - 2) {
+						nodesOfSample = new int[motifSize - 1];
+						nodesOfSample[0] = node;
+						// distinct random neighbours of the node
+						int[] targets = graph.getTargets(linkID, node);
+						int start = graph.getStart(linkID, node);
+						for (int i = 1; i < nodesOfSample.length && nodesOfSample != null; i++) {
+							nodesOfSample[i] = targets[start + random.nextInt(degree)];
+							for (int j = 1; j < i; j++) {
+								if (nodesOfSample[j] == nodesOfSample[i]) {
+									nodesOfSample = null;
+									break;
+								}
+							}
+						}
+					}
+				}
+				samples[s] = nodesOfSample;
+				mappedNodes[s] = new int[motifSize];
+				System.arraycopy(nodesOfSample, 0, mappedNodes[s], 0, nodesOfSample.length);
+				mappedNodes[s][motifSize - 1] = -1;
+			}
+			iterator = new NodeIterator(motifSize - 1);
+			iterator.addRestrictionList(nodes);
+		}
+	}
+
+	/**
+	 * Initial lists of the motif nodes of the X/Y/Z example, the nodes having
+	 * each of the link types of the motif node
+	 */
+	@State(Scope.Benchmark)
+	public static class ExampleLists {
+
+		private int[][][] initialLists;
+
+		@Setup
+		public void setup() throws IOException {
+			Datasets example = Datasets.read("XYZ");
+			Motif motif = example.getMotif(Datasets.EXAMPLE_MOTIF);
+			CSRGraph graph = example.getNetwork().getCSRGraph();
+			initialLists = new int[motif.getNrMotifNodes()][][];
+			for (int i = 0; i < initialLists.length; i++) {
+				ArrayList<int[]> lists = new ArrayList<int[]>();
+				boolean[] added = new boolean[MotifLink.getNrLinkIDs()];
+				for (MotifLink link : motif.getLinksOfMotifNode(i)) {
+					if (!added[link.getMotifLinkID()]) {
+						added[link.getMotifLinkID()] = true;
+						lists.add(graph.getNodesWithLink(link.getMotifLinkID()));
+					}
+				}
+				initialLists[i] = lists.toArray(new int[lists.size()][]);
+			}
+		}
+	}
+
+	/**
+	 * Adds the constraining lists, intersects them and removes them again, as
+	 * the search does for one partial mapping
+	 */
+	@Benchmark
+	public NodeIterator intersect(CliqueLists state) {
+		int[] nodes = state.samples[state.sample];
+		CSRGraph graph = state.graph;
+		int linkID = state.linkID;
+		for (int node : nodes) {
+			state.iterator.addRestrictionList(graph.getTargets(linkID, node), graph.getStart(linkID, node),
+					graph.getEnd(linkID, node), graph.getBitmap(linkID, node), node);
+		}
+		NodeIterator result = state.iterator.intersect(-1, Integer.MAX_VALUE, state.mappedNodes[state.sample]);
+		for (int i = nodes.length - 1; i >= 0; i--) {
+			state.iterator.removeRestrictionList(nodes[i]);
+		}
+		state.sample = (state.sample + 1) % CliqueLists.NR_SAMPLES;
+		return result;
+	}
+
+	/**
+	 * Computes the initial candidates of every motif node of the X/Y/Z example
+	 */
+	@Benchmark
+	public void getNodeSet(ExampleLists state, Blackhole blackhole) {
+		for (int i = 0; i < state.initialLists.length; i++) {
+			NodeIterator nodeIterator = new NodeIterator(i);
+			for (int[] list : state.initialLists[i]) {
+				nodeIterator.addRestrictionList(list);
+			}
+			blackhole.consume(nodeIterator.getNodeSet());
+		}
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2013 Maarten Houbraken
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Software available at https://github.com/mhoubraken/ISMAGS
+ * Author : Maarten Houbraken (maarten.houbraken@intec.ugent.be)
+ */
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import datastructures.PriorityObject;
+import datastructures.PriorityQueueMap;
+
+/**
+ * Micro-benchmarks of {@link PriorityQueueMap}, for a clique motif of
+ * motifSize nodes of which the first half is mapped. Every mapped motif node
+ * constrains every unmapped motif node by a list of random size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PriorityQueueMapBenchmark {
+
+	@Param({ "3", "4", "5", "6", "7" })
+	public int motifSize;
+
+	private PriorityQueueMap map;
+	private boolean[] mapped;
+	private int[] sizes;
+	private int nrMapped;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(42);
+		map = new PriorityQueueMap(motifSize);
+		mapped = new boolean[motifSize];
+		nrMapped = motifSize / 2;
+		sizes = new int[motifSize];
+		for (int i = 0; i < motifSize; i++) {
+			sizes[i] = 1 + random.nextInt(1000);
+		}
+		for (int from = 0; from < nrMapped; from++) {
+			mapped[from] = true;
+			for (int to = nrMapped; to < motifSize; to++) {
+				map.add(from, from, to, 1 + random.nextInt(1000));
+			}
+		}
+	}
+
+	@Benchmark
+	public PriorityObject poll() {
+		return map.poll(mapped);
+	}
+
+	/**
+	 * Maps the next motif node, selects the next motif node to be mapped and
+	 * backtracks, as the search does for every candidate
+	 */
+	@Benchmark
+	public PriorityObject addPollRemove() {
+		int from = nrMapped;
+		mapped[from] = true;
+		for (int to = from + 1; to < motifSize; to++) {
+			map.add(from, from, to, sizes[to]);
+		}
+		PriorityObject result = map.poll(mapped);
+		for (int to = from + 1; to < motifSize; to++) {
+			map.remove(from, to);
+		}
+		mapped[from] = false;
+		return result;
+	}
+}
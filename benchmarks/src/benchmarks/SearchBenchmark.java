@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2013 Maarten Houbraken
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Software available at https://github.com/mhoubraken/ISMAGS
+ * Author : Maarten Houbraken (maarten.houbraken@intec.ugent.be)
+ */
+package benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import algorithm.MotifFinder;
+import algorithm.MotifInstanceSink;
+import motifs.Motif;
+import network.Network;
+import network.Node;
+
+/**
+ * End-to-end search on the bundled networks, for motifs of 3 to 7 nodes. The
+ * instances are passed to a sink that consumes them, so the benchmark measures
+ * the search itself rather than building a result set. Large motifs on the
+ * densest networks take tens of seconds per search, so every search is timed
+ * once per iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SearchBenchmark {
+
+	@Param({ "Wiki-Vote", "p2p-Gnutella08", "p2p-Gnutella30", "CA-HepTh", "CA-CondMat" })
+	public String dataset;
+
+	@Param({ "3", "4", "5", "6", "7" })
+	public int motifSize;
+
+	@Param({ "clique" })
+	public String shape;
+
+	private Network network;
+	private Motif motif;
+
+	@Setup
+	public void setup() throws IOException {
+		Datasets datasets = Datasets.read(dataset);
+		network = datasets.getNetwork();
+		motif = datasets.getMotif(Datasets.motifSpec(shape, motifSize));
+	}
+
+	@Benchmark
+	public void findMotif(final Blackhole blackhole) {
+		new MotifFinder(network).findMotif(motif, new MotifInstanceSink() {
+			@Override
+			public void instanceFound(Node[] mapping) {
+				blackhole.consume(mapping);
+			}
+		});
+	}
+
+	@Benchmark
+	public long countMotif() {
+		return new MotifFinder(network).countMotif(motif);
+	}
+}
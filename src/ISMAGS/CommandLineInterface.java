@@ -20,11 +20,18 @@ package ISMAGS;
  * Author : Maarten Houbraken (maarten.houbraken@intec.ugent.be)
  */
 
+import algorithm.CountEstimate;
+import algorithm.MotifCensus;
 import algorithm.MotifFinder;
+import algorithm.SearchCheckpoint;
+import algorithm.SearchLimits;
+import algorithm.SearchResult;
+import algorithm.SearchStatistics;
+import algorithm.SymmetryCache;
 import java.io.*;
+import java.nio.file.Paths;
 import java.util.*;
 import motifs.Motif;
-import motifs.MotifInstance;
 import org.apache.commons.cli.*;
 import network.*;
 
@@ -34,12 +41,38 @@ public class CommandLineInterface {
 
     public static void main(String[] args) throws IOException {
         String folder = null, files = null, motifspec = null, output = null;
+        String checkpoint = null, resume = null, snapshot = null;
+        int threads = 1;
+        int census = 0;
+        int serve = 0;
+        long checkpointInterval = 600;
+        double estimate = 0;
+        long estimateTime = 3600;
+        long timeLimit = 0, maxInstances = 0;
+        boolean count = false;
+        boolean statistics = false;
+        boolean gzip = false;
 
         Options opts = new Options();
         opts.addOption("folder", true, "Folder name");
         opts.addOption("linkfiles", true, "Link files seperated by spaces (format: linktype[char] directed[d/u] filename)");
         opts.addOption("motif", true, "Motif description by two strings (format: linktypes)");
         opts.addOption("output", true, "Output file name");
+        opts.addOption("threads", true, "Number of threads used for the search (default: 1)");
+        opts.addOption("count", false, "Only count the motif instances, the output file is optional");
+        opts.addOption("checkpoint", true, "File to which the search progress is written periodically");
+        opts.addOption("checkpointinterval", true, "Seconds between two checkpoints (default: 600)");
+        opts.addOption("resume", true, "Checkpoint file from which an interrupted search is continued");
+        opts.addOption("snapshot", true, "Binary network snapshot, read instead of the link files if it exists and written otherwise");
+        opts.addOption("census", true, "Counts all connected motifs with this number of nodes instead of a single motif");
+        opts.addOption("estimate", true, "Estimates the number of instances by sampling, up to this relative error (e.g. 0.05)");
+        opts.addOption("estimatetime", true, "Maximal number of seconds spent on an estimate (default: 3600)");
+        opts.addOption("timelimit", true, "Stops the search after this number of seconds and reports the instances found so far");
+        opts.addOption("maxinstances", true, "Stops the search after this number of instances");
+        opts.addOption("gzip", false, "Compresses the output file with gzip, using the search threads to compress");
+        opts.addOption("statistics", false, "Counts the work of a motif search per depth, available through JMX and printed at the end");
+        opts.addOption("symmetrycache", true, "Folder in which motif analysis results are stored and reused between runs");
+        opts.addOption("serve", true, "Keeps the network in memory and answers motif queries on this local port");
 
         CommandLineParser parser = new PosixParser();
         try {
@@ -56,15 +89,84 @@ public class CommandLineInterface {
             if (cmd.hasOption("output")) {
                 output = cmd.getOptionValue("output");
             }
+            if (cmd.hasOption("threads")) {
+                threads = Integer.parseInt(cmd.getOptionValue("threads"));
+            }
+            count = cmd.hasOption("count");
+            statistics = cmd.hasOption("statistics");
+            gzip = cmd.hasOption("gzip");
+            if (cmd.hasOption("census")) {
+                census = Integer.parseInt(cmd.getOptionValue("census"));
+            }
+            if (cmd.hasOption("serve")) {
+                serve = Integer.parseInt(cmd.getOptionValue("serve"));
+            }
+            if (cmd.hasOption("checkpoint")) {
+                checkpoint = cmd.getOptionValue("checkpoint");
+            }
+            if (cmd.hasOption("resume")) {
+                resume = cmd.getOptionValue("resume");
+                if (checkpoint == null) {
+                    checkpoint = resume;
+                }
+            }
+            if (cmd.hasOption("snapshot")) {
+                snapshot = cmd.getOptionValue("snapshot");
+            }
+            if (cmd.hasOption("symmetrycache")) {
+                SymmetryCache.setStore(new File(cmd.getOptionValue("symmetrycache")));
+            }
+            if (cmd.hasOption("checkpointinterval")) {
+                checkpointInterval = Long.parseLong(cmd.getOptionValue("checkpointinterval"));
+            }
+            if (cmd.hasOption("estimate")) {
+                estimate = Double.parseDouble(cmd.getOptionValue("estimate"));
+            }
+            if (cmd.hasOption("estimatetime")) {
+                estimateTime = Long.parseLong(cmd.getOptionValue("estimatetime"));
+            }
+            if (cmd.hasOption("timelimit")) {
+                timeLimit = Long.parseLong(cmd.getOptionValue("timelimit"));
+            }
+            if (cmd.hasOption("maxinstances")) {
+                maxInstances = Long.parseLong(cmd.getOptionValue("maxinstances"));
+            }
         } catch (ParseException e) {
             Die("Error: Parsing error");
+        } catch (NumberFormatException e) {
+            Die("Error: number of threads, checkpoint interval, census size, estimate time, search limits and port"
+                    + " should be integers, the relative error of an estimate a number");
+        }
+        if (threads < 1) {
+            Die("Error: number of threads should be at least 1");
+        }
+        if (checkpoint != null && (threads != 1 || gzip)) {
+            Die("Error: checkpoints are only supported by a search using 1 thread, without compression");
+        }
+        if (census != 0 && (census < 2 || motifspec != null || checkpoint != null)) {
+            Die("Error: a census needs at least 2 nodes and no motif or checkpoint");
+        }
+        if (estimate != 0 && (!(estimate > 0) || estimateTime < 1 || census != 0 || checkpoint != null)) {
+            Die("Error: an estimate needs a positive relative error and time, and no census or checkpoint");
+        }
+        if (timeLimit < 0 || maxInstances < 0
+                || ((timeLimit != 0 || maxInstances != 0) && (census != 0 || checkpoint != null || estimate != 0))) {
+            Die("Error: search limits should be positive and cannot be combined with a census, checkpoint or estimate");
+        }
+
+        if (serve != 0 && (serve < 0 || serve > 65535 || census != 0 || checkpoint != null || estimate != 0)) {
+            Die("Error: the server needs a valid port and no census, checkpoint or estimate");
+        }
+        if (statistics && (census != 0 || estimate != 0 || serve != 0)) {
+            Die("Error: statistics are only collected by a motif search, not by a census, estimate or server");
         }
 
         if (print) {
             printBanner(folder, files, motifspec, output);
         }
 
-        if (folder == null || files == null || motifspec == null || output == null) {
+        if (folder == null || files == null || (census == 0 && serve == 0
+                && (motifspec == null || (output == null && !count && estimate == 0)))) {
             Die("Error: not all options are provided");
         } else {
             ArrayList<String> linkfiles = new ArrayList<String>();
@@ -92,31 +194,146 @@ public class CommandLineInterface {
                 allLinkTypes.add(t);
                 typeTranslation.put(nn, t);
             }
-            if (print) {
-                System.out.println("Reading network..");
+            Network network;
+            if (snapshot != null && new File(snapshot).exists()) {
+                if (print) {
+                    System.out.println("Opening network snapshot: " + snapshot);
+                }
+                network = Network.openSnapshot(Paths.get(snapshot));
+            } else {
+                if (print) {
+                    System.out.println("Reading network..");
+                }
+                network = Network.readNetworkFromFiles(linkfiles, allLinkTypes);
+                if (snapshot != null) {
+                    if (print) {
+                        System.out.println("Writing network snapshot: " + snapshot);
+                    }
+                    network.writeSnapshot(Paths.get(snapshot));
+                }
             }
-            Network network = Network.readNetworkFromFiles(linkfiles, allLinkTypes);
 
 
+            if (census != 0) {
+                census(network, census, typeTranslation, threads, output);
+                return;
+            }
+
+            if (serve != 0) {
+                final QueryServer server = new QueryServer(network, typeTranslation, threads,
+                        new SearchLimits(timeLimit * 1000, maxInstances, 0));
+                server.start(serve);
+                // stop accepting queries when the process is terminated
+                Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            server.close();
+                        } catch (IOException e) {
+                            // the process ends anyway
+                        }
+                    }
+                }));
+                if (print) {
+                    System.out.println("Serving queries on port " + server.getPort() + " with " + threads
+                            + " thread(s)");
+                }
+                try {
+                    server.awaitTermination();
+                } catch (InterruptedException e) {
+                    server.close();
+                    Thread.currentThread().interrupt();
+                }
+                return;
+            }
+
             Motif motif = getMotif(motifspec, typeTranslation);
 
+            if (estimate != 0) {
+                estimate(network, motif, motifspec, estimate, estimateTime, threads, output);
+                return;
+            }
+
             if (print) {
                 System.out.println("Starting the search..");
             }
             MotifFinder mf = new MotifFinder(network);
+            if (statistics) {
+                SearchStatistics searchStatistics = new SearchStatistics();
+                searchStatistics.register();
+                mf.setStatistics(searchStatistics);
+            }
+            SearchLimits limits = new SearchLimits(timeLimit * 1000, maxInstances, 0);
+            SearchResult result = null;
+            long nrInstances;
             long tijd = System.nanoTime();
-            Set<MotifInstance> motifs = mf.findMotif(motif,false);
+            if (checkpoint != null) {
+                SearchCheckpoint from = null;
+                if (resume != null) {
+                    from = SearchCheckpoint.read(new File(resume));
+                    if (!from.matches(network, motif)) {
+                        Die("Error: checkpoint " + resume + " was not made by a search for this motif in this network");
+                    }
+                    if (print) {
+                        System.out.println("Resuming from checkpoint: " + from);
+                    }
+                }
+                InstanceWriter writer = null;
+                if (!count) {
+                    if (print) {
+                        System.out.println("Writing instances to file: " + output);
+                    }
+                    if (from != null) {
+                        // drop the instances written after the checkpoint
+                        truncateLines(new File(output), from.getNrInstances());
+                    }
+                    writer = new InstanceWriter(output, from != null, false, 1);
+                }
+                try {
+                    nrInstances = mf.findMotif(motif, writer, from, new File(checkpoint), checkpointInterval * 1000);
+                } finally {
+                    if (writer != null) {
+                        writer.close();
+                    }
+                }
+            } else if (count) {
+                result = mf.findMotif(motif, null, limits, threads);
+                nrInstances = result.getNrInstances();
+            } else {
+                if (print) {
+                    System.out.println("Writing instances to file: " + output);
+                }
+                InstanceWriter writer = new InstanceWriter(output, false, gzip, threads);
+                try {
+                    result = mf.findMotif(motif, writer, limits, threads);
+                } finally {
+                    writer.close();
+                }
+                nrInstances = writer.getNrInstances();
+            }
             tijd=System.nanoTime()-tijd;
             if (print) {
                 System.out.println("Completed search in "+ tijd/1000000+ " milliseconds");
             }
             if(print) {
-                System.out.println("Found " + motifs.size() + " instances of " + motifspec + " motif");
+                System.out.println("Found " + nrInstances + " instances of " + motifspec + " motif");
             }
-            if (print) {
-                System.out.println("Writing instances to file: " + output);
+            if (mf.getStatistics() != null) {
+                mf.getStatistics().printTable(System.out);
+            }
+            if (print && result != null && !result.isComplete()) {
+                System.out.println("Search stopped early (" + result.getStatus() + ") after finishing "
+                        + result.getNrFinishedRootCandidates() + " of " + result.getNrRootCandidates()
+                        + " candidates for the first motif node");
+            }
+            if (count && output != null) {
+                if (print) {
+                    System.out.println("Writing number of instances to file: " + output);
+                }
+                PrintWriter out = new PrintWriter(new File(output));
+                out.println(motifspec + "\t" + nrInstances);
+                out.close();
             }
-            printMotifs(motifs, output);
             if (print) {
                 System.out.println("Done.");
             }
@@ -141,6 +358,91 @@ public class CommandLineInterface {
 
     }
 
+    /**
+     * Counts the instances of all connected motifs of a given size and writes
+     * every motif with its number of instances, to the output file if given
+     *
+     * @param network network to be searched
+     * @param size number of motif nodes
+     * @param typeTranslation link types by their character
+     * @param threads number of threads used for the search
+     * @param output output file name, null to print the counts
+     * @throws IOException if the output file cannot be written
+     */
+    private static void census(Network network, int size, HashMap<Character, LinkType> typeTranslation,
+            int threads, String output) throws IOException {
+        MotifCensus motifCensus = new MotifCensus(size, typeTranslation);
+        if (print) {
+            System.out.println("Counting " + motifCensus.getNrMotifs() + " motifs of " + size + " nodes..");
+        }
+        long tijd = System.nanoTime();
+        long[] counts = motifCensus.count(new MotifFinder(network), threads);
+        tijd = System.nanoTime() - tijd;
+        if (print) {
+            System.out.println("Completed census in " + tijd / 1000000 + " milliseconds");
+        }
+        PrintWriter out;
+        if (output != null) {
+            if (print) {
+                System.out.println("Writing numbers of instances to file: " + output);
+            }
+            out = new PrintWriter(new File(output));
+        } else {
+            out = new PrintWriter(System.out);
+        }
+        for (int i = 0; i < counts.length; i++) {
+            out.println(motifCensus.getSpec(i) + "\t" + counts[i]);
+        }
+        if (output != null) {
+            out.close();
+        } else {
+            out.flush();
+        }
+        if (print) {
+            System.out.println("Done.");
+        }
+    }
+
+    /**
+     * Estimates the number of instances of a motif by sampling and writes the
+     * estimate with its 95% confidence interval to the output file if given
+     *
+     * @param network network to be searched
+     * @param motif motif of which instances are counted
+     * @param motifspec description of the motif
+     * @param relativeError relative error at which sampling stops
+     * @param seconds maximal number of seconds spent sampling
+     * @param threads number of threads sampling
+     * @param output output file name, null to only print the estimate
+     * @throws IOException if the output file cannot be written
+     */
+    private static void estimate(Network network, Motif motif, String motifspec, double relativeError,
+            long seconds, int threads, String output) throws IOException {
+        if (print) {
+            System.out.println("Sampling the search..");
+        }
+        long tijd = System.nanoTime();
+        CountEstimate estimate = new MotifFinder(network).estimateMotifCount(motif, relativeError, seconds * 1000,
+                threads);
+        tijd = System.nanoTime() - tijd;
+        if (print) {
+            System.out.println("Completed sampling in " + tijd / 1000000 + " milliseconds");
+            System.out.println("Estimated " + estimate + " instances of " + motifspec + " motif");
+        }
+        if (output != null) {
+            if (print) {
+                System.out.println("Writing estimated number of instances to file: " + output);
+            }
+            PrintWriter out = new PrintWriter(new File(output));
+            out.println(String.format(Locale.ROOT, "%s\t%.0f\t%.0f\t%.0f", motifspec, estimate.getEstimate(),
+                    estimate.getLowerBound(), estimate.getUpperBound()));
+            out.close();
+        }
+        if (print) {
+            System.out.println("Done.");
+        }
+    }
+
     public static void Die(String msg) {
         System.out.println(msg);
         System.exit(1);
@@ -165,15 +467,47 @@ public class CommandLineInterface {
                 + "output\t\t" + output + "\n");
     }
 
+    /**
+     * Builds a motif from its description, ending the program if the
+     * description is invalid
+     *
+     * @param motifspec motif description, in the format of the motif option
+     * @param typeTranslation link types by their character in the description
+     * @return the motif
+     * @see #parseMotif(String, HashMap)
+     */
     public static Motif getMotif(String motifspec, HashMap<Character, LinkType> typeTranslation) {
+        try {
+            return parseMotif(motifspec, typeTranslation);
+        } catch (IllegalArgumentException e) {
+            Die("Error: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Builds a motif from its description
+     *
+     * @param motifspec motif description, in the format of the motif option
+     * @param typeTranslation link types by their character in the description
+     * @return the motif
+     * @throws IllegalArgumentException if the description has an invalid
+     * length or an unknown link type, or if the motif is not connected
+     */
+    public static Motif parseMotif(String motifspec, HashMap<Character, LinkType> typeTranslation) {
         int l = motifspec.length();
         int nrNodes = (int) Math.ceil(Math.sqrt(2 * l));
         int l2 = nrNodes * (nrNodes - 1) / 2;
-        if (l != l2) {
-            Die("Error: motif \"" + motifspec + "\" has invalid length");
+        if (l == 0 || l != l2) {
+            throw new IllegalArgumentException("motif \"" + motifspec + "\" has invalid length");
         }
         int counter = 0;
         Motif m = new Motif(nrNodes);
+        // component of every motif node, to check that the motif is connected
+        int[] component = new int[nrNodes];
+        for (int i = 0; i < nrNodes; i++) {
+            component[i] = i;
+        }
         for (int i = 1; i < nrNodes; i++) {
             for (int j = 0; j < i; j++) {
 //                System.out.println("("+(1+i)+","+(1+j)+")");
@@ -183,22 +517,59 @@ public class CommandLineInterface {
                     continue;
                 }
                 LinkType lt = typeTranslation.get(Character.toUpperCase(c));
+                if (lt == null) {
+                    throw new IllegalArgumentException("motif \"" + motifspec + "\" has unknown link type " + c);
+                }
                 if (Character.isUpperCase(c)) {
                     m.addMotifLink(j, i, lt);
                 } else {
                     m.addMotifLink(i, j, lt);
                 }
+                int merged = component[i];
+                for (int k = 0; k < nrNodes; k++) {
+                    if (component[k] == merged) {
+                        component[k] = component[j];
+                    }
+                }
+            }
+        }
+        for (int i = 1; i < nrNodes; i++) {
+            if (component[i] != component[0]) {
+                throw new IllegalArgumentException("motif \"" + motifspec + "\" is not connected");
             }
         }
         m.finaliseMotif();
         return m;
     }
 
-    private static void printMotifs(Set<MotifInstance> motifs, String output) throws IOException {
-        PrintWriter out = new PrintWriter(new File(output));
-        for (MotifInstance m : motifs) {
-            out.println(m);
+    /**
+     * Truncates a file after a number of lines
+     *
+     * @param file file to be truncated
+     * @param nrLines number of lines to keep
+     * @throws IOException if the file cannot be read or has fewer lines
+     */
+    private static void truncateLines(File file, long nrLines) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+        long length = 0;
+        try {
+            for (long line = 0; line < nrLines; length++) {
+                int c = in.read();
+                if (c == -1) {
+                    throw new IOException("Output file " + file + " holds fewer instances than the checkpoint");
+                }
+                if (c == '\n') {
+                    line++;
+                }
+            }
+        } finally {
+            in.close();
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(length);
+        } finally {
+            raf.close();
         }
-        out.close();
     }
 }
@@ -0,0 +1,393 @@
+package ISMAGS;
+
+/*
+ * Copyright (C) 2013 Maarten Houbraken
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Software available at https://github.com/mhoubraken/ISMAGS
+ * Author : Maarten Houbraken (maarten.houbraken@intec.ugent.be)
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import algorithm.MotifInstanceSink;
+import motifs.MotifInstance;
+import network.Node;
+
+/**
+ * Writes motif instances to a file while the search is running, in the same
+ * format as {@link motifs.MotifInstance#toString()}. The search threads only
+ * copy the nodes of every instance into a batch; full batches are handed
+ * through a bounded queue to a writer thread, which formats them into large
+ * byte chunks, so writing overlaps with the search. The search waits when
+ * the writer falls behind by more than the queue.
+ * <p>
+ * The output can be gzip-compressed. With more than one compression thread,
+ * every chunk is compressed separately into a gzip member, and the members
+ * are written in order. Concatenated members form a valid gzip file.
+ */
+public class InstanceWriter implements MotifInstanceSink, Flushable, Closeable {
+
+	/**
+	 * Number of instances in a batch
+	 */
+	private static final int BATCH_SIZE = 4096;
+	/**
+	 * Maximal number of full batches waiting for the writer
+	 */
+	private static final int QUEUE_CAPACITY = 16;
+	/**
+	 * Size above which a chunk of formatted instances is written
+	 */
+	private static final int CHUNK_SIZE = 1 << 20;
+	/**
+	 * Batch telling the writer to flush the output, and to close it
+	 */
+	private static final Batch FLUSH = new Batch(0);
+	private static final Batch CLOSE = new Batch(0);
+
+	private OutputStream out;
+	private ExecutorService compressors;
+	private int nrCompressionThreads;
+	private BlockingQueue<Batch> queue = new ArrayBlockingQueue<Batch>(QUEUE_CAPACITY);
+	private BlockingQueue<Batch> freeBatches = new ArrayBlockingQueue<Batch>(QUEUE_CAPACITY + 2);
+	private BlockingQueue<Boolean> flushed = new ArrayBlockingQueue<Boolean>(1);
+	private Batch batch;
+	private long nrInstances = 0;
+	private Thread writer;
+	/**
+	 * First error of the writer thread, after which further instances are
+	 * dropped
+	 */
+	private volatile IOException error;
+
+	/**
+	 * Creates a writer and starts its writer thread
+	 *
+	 * @param output
+	 *            file to write to
+	 * @param append
+	 *            true to append to the file, false to replace it
+	 * @param compress
+	 *            true to gzip-compress the output
+	 * @param nrCompressionThreads
+	 *            number of threads compressing chunks in parallel, 1 to
+	 *            compress on the writer thread
+	 * @throws IOException
+	 *             if the file cannot be opened
+	 */
+	public InstanceWriter(String output, boolean append, boolean compress, int nrCompressionThreads)
+			throws IOException {
+		out = new FileOutputStream(new File(output), append);
+		if (compress && nrCompressionThreads > 1) {
+			this.nrCompressionThreads = nrCompressionThreads;
+			compressors = Executors.newFixedThreadPool(nrCompressionThreads);
+		} else if (compress) {
+			out = new FastGZIPOutputStream(out);
+		}
+		writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				write();
+			}
+		}, "InstanceWriter");
+		writer.start();
+	}
+
+	@Override
+	public synchronized void instanceFound(Node[] mapping) {
+		if (batch == null) {
+			batch = freeBatches.poll();
+			if (batch == null) {
+				batch = new Batch(BATCH_SIZE * mapping.length);
+			}
+		}
+		System.arraycopy(mapping, 0, batch.nodes, batch.size, mapping.length);
+		batch.size += mapping.length;
+		batch.width = mapping.length;
+		nrInstances++;
+		if (batch.size == batch.nodes.length) {
+			put(batch);
+			batch = null;
+		}
+	}
+
+	/**
+	 * Waits until all instances found so far are written to the file
+	 */
+	@Override
+	public synchronized void flush() throws IOException {
+		if (batch != null) {
+			put(batch);
+			batch = null;
+		}
+		put(FLUSH);
+		try {
+			flushed.take();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("Interrupted while flushing instances");
+		}
+		checkError();
+	}
+
+	public synchronized long getNrInstances() {
+		return nrInstances;
+	}
+
+	/**
+	 * Writes the remaining instances, closes the file and stops the writer
+	 * thread
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (writer == null) {
+			return;
+		}
+		if (batch != null) {
+			put(batch);
+			batch = null;
+		}
+		put(CLOSE);
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("Interrupted while closing instance writer");
+		}
+		writer = null;
+		checkError();
+	}
+
+	private void checkError() throws IOException {
+		if (error != null) {
+			throw new IOException("Could not write instances", error);
+		}
+	}
+
+	private void put(Batch full) {
+		try {
+			queue.put(full);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new UncheckedIOException(new InterruptedIOException("Interrupted while writing instances"));
+		}
+	}
+
+	/**
+	 * Main loop of the writer thread
+	 */
+	private void write() {
+		Formatter formatter = new Formatter();
+		ArrayDeque<Future<byte[]>> compressing = new ArrayDeque<Future<byte[]>>();
+		boolean closing = false;
+		while (!closing) {
+			Batch next;
+			try {
+				next = queue.take();
+			} catch (InterruptedException e) {
+				// keep taking batches, so the search does not wait forever
+				error = new InterruptedIOException("Instance writer was interrupted");
+				continue;
+			}
+			closing = next == CLOSE;
+			try {
+				if (next == FLUSH || next == CLOSE) {
+					writeChunk(formatter, compressing);
+					while (!compressing.isEmpty()) {
+						writeCompressed(compressing.poll());
+					}
+					if (closing) {
+						out.close();
+					} else {
+						out.flush();
+					}
+				} else if (error == null) {
+					formatter.format(next);
+					if (formatter.size() >= CHUNK_SIZE) {
+						writeChunk(formatter, compressing);
+					}
+				}
+			} catch (IOException e) {
+				if (error == null) {
+					error = e;
+				}
+			}
+			if (next == FLUSH) {
+				flushed.add(Boolean.TRUE);
+			} else if (!closing) {
+				next.size = 0;
+				freeBatches.offer(next);
+			}
+		}
+		if (compressors != null) {
+			compressors.shutdown();
+		}
+	}
+
+	/**
+	 * Writes the formatted instances, or hands them to a compression thread
+	 */
+	private void writeChunk(Formatter formatter, ArrayDeque<Future<byte[]>> compressing) throws IOException {
+		if (error != null || formatter.size() == 0) {
+			formatter.reset();
+			return;
+		}
+		if (compressors == null) {
+			formatter.writeTo(out);
+		} else {
+			final byte[] chunk = formatter.toByteArray();
+			compressing.add(compressors.submit(new Callable<byte[]>() {
+				@Override
+				public byte[] call() throws IOException {
+					ByteArrayOutputStream compressed = new ByteArrayOutputStream(chunk.length / 4);
+					FastGZIPOutputStream gzip = new FastGZIPOutputStream(compressed);
+					gzip.write(chunk);
+					gzip.close();
+					return compressed.toByteArray();
+				}
+			}));
+			// keep every compression thread busy, with one chunk waiting
+			while (compressing.size() > nrCompressionThreads + 1) {
+				writeCompressed(compressing.poll());
+			}
+		}
+		formatter.reset();
+	}
+
+	private void writeCompressed(Future<byte[]> member) throws IOException {
+		try {
+			out.write(member.get());
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("Interrupted while compressing instances");
+		} catch (ExecutionException e) {
+			throw new IOException("Could not compress instances", e.getCause());
+		}
+	}
+
+	/**
+	 * Gzip stream compressing at the fastest level, since the output is
+	 * highly redundant and compression should keep up with the search
+	 */
+	private static class FastGZIPOutputStream extends GZIPOutputStream {
+
+		FastGZIPOutputStream(OutputStream out) throws IOException {
+			super(out, CHUNK_SIZE);
+			def.setLevel(Deflater.BEST_SPEED);
+		}
+	}
+
+	/**
+	 * Instances copied from the search, as consecutive rows of nodes. All
+	 * instances passed to a writer should have the same number of nodes.
+	 */
+	private static class Batch {
+
+		private Node[] nodes;
+		private int size = 0;
+		private int width;
+
+		Batch(int capacity) {
+			nodes = new Node[capacity];
+		}
+	}
+
+	/**
+	 * Formats instances into a reusable byte buffer, in the format of
+	 * {@link MotifInstance#format(StringBuilder, Node[])}. The encoded
+	 * description of every node is cached by node index, so every description
+	 * is encoded only once.
+	 */
+	private static class Formatter {
+
+		private static final Charset CHARSET = Charset.defaultCharset();
+		private static final byte[] SEPARATOR = String.valueOf(MotifInstance.SEPARATOR).getBytes(CHARSET);
+		private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(CHARSET);
+
+		private byte[] buffer = new byte[CHUNK_SIZE + (CHUNK_SIZE >> 2)];
+		private int size = 0;
+		private byte[][] descriptions = new byte[1024][];
+
+		void format(Batch batch) {
+			Node[] nodes = batch.nodes;
+			for (int row = 0; row < batch.size; row += batch.width) {
+				for (int i = row; i < row + batch.width; i++) {
+					byte[] description = getDescription(nodes[i]);
+					if (size + description.length + SEPARATOR.length + LINE_SEPARATOR.length > buffer.length) {
+						buffer = Arrays.copyOf(buffer, 2 * buffer.length + description.length);
+					}
+					if (i > row) {
+						System.arraycopy(SEPARATOR, 0, buffer, size, SEPARATOR.length);
+						size += SEPARATOR.length;
+					}
+					System.arraycopy(description, 0, buffer, size, description.length);
+					size += description.length;
+				}
+				System.arraycopy(LINE_SEPARATOR, 0, buffer, size, LINE_SEPARATOR.length);
+				size += LINE_SEPARATOR.length;
+			}
+		}
+
+		int size() {
+			return size;
+		}
+
+		void reset() {
+			size = 0;
+		}
+
+		void writeTo(OutputStream out) throws IOException {
+			out.write(buffer, 0, size);
+		}
+
+		byte[] toByteArray() {
+			return Arrays.copyOf(buffer, size);
+		}
+
+		private byte[] getDescription(Node node) {
+			int index = node.getIndex();
+			if (index < 0) {
+				return node.getDescription().getBytes(CHARSET);
+			}
+			if (index >= descriptions.length) {
+				descriptions = Arrays.copyOf(descriptions, Math.max(index + 1, 2 * descriptions.length));
+			}
+			byte[] description = descriptions[index];
+			if (description == null) {
+				description = node.getDescription().getBytes(CHARSET);
+				descriptions[index] = description;
+			}
+			return description;
+		}
+	}
+}
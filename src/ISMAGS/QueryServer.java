@@ -0,0 +1,335 @@
+package ISMAGS;
+
+/*
+ * Copyright (C) 2013 Maarten Houbraken
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Software available at https://github.com/mhoubraken/ISMAGS
+ * Author : Maarten Houbraken (maarten.houbraken@intec.ugent.be)
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import algorithm.MotifFinder;
+import algorithm.MotifInstanceSink;
+import algorithm.SearchLimits;
+import algorithm.SearchResult;
+import motifs.Motif;
+import motifs.MotifInstance;
+import network.LinkType;
+import network.Network;
+import network.Node;
+
+/**
+ * Answers motif queries on a network held in memory, so the network is read
+ * and the search code is compiled only once for many queries. Clients connect
+ * to a local port and send one query per line, with the fields separated by
+ * tabs or spaces:
+ * <ul>
+ * <li>COUNT motif: counts the instances of the motif</li>
+ * <li>FIND motif: lists the instances of the motif</li>
+ * <li>CONTAINING motif node [node]: lists the instances of the motif
+ * containing one or two nodes, given by their description</li>
+ * <li>QUIT: closes the connection</li>
+ * </ul>
+ * Motifs are given in the format of the motif option. Instances are streamed
+ * while the search runs, one per line in the format of the output file, and
+ * every answer ends with a line "OK" followed by the number of instances. A
+ * search stopped by the limits of the server ends with "PARTIAL", the number
+ * of instances found and the reason, and an invalid query or a failed search
+ * is answered with a line "ERROR" followed by a message.
+ * <p>
+ * Every connection is served by one thread of a fixed pool. Connections
+ * waiting for a thread are queued up to a maximum, beyond which they are
+ * refused, and idle connections are closed after a while.
+ */
+public class QueryServer implements Closeable {
+
+	/**
+	 * Maximal number of connections waiting for a thread
+	 */
+	private static final int MAX_QUEUED_CONNECTIONS = 64;
+	/**
+	 * Time after which a connection without queries is closed, in
+	 * milliseconds
+	 */
+	private static final int IDLE_TIMEOUT = 60000;
+	/**
+	 * Number of instances after which a stream is checked for a client that
+	 * went away
+	 */
+	private static final int CHECK_INTERVAL = 1024;
+
+	private Network network;
+	private HashMap<Character, LinkType> typeTranslation;
+	private SearchLimits limits;
+	private ThreadPoolExecutor workers;
+	private ServerSocket serverSocket;
+	private Thread acceptor;
+	private volatile boolean closed = false;
+
+	/**
+	 * Creates a server for a network
+	 *
+	 * @param network
+	 *            finalised network to be searched
+	 * @param typeTranslation
+	 *            link types by their character in motif descriptions
+	 * @param nrWorkers
+	 *            number of connections served concurrently
+	 * @param limits
+	 *            limits of every COUNT and FIND query
+	 */
+	public QueryServer(Network network, HashMap<Character, LinkType> typeTranslation, int nrWorkers,
+			SearchLimits limits) {
+		this.network = network;
+		this.typeTranslation = typeTranslation;
+		this.limits = limits;
+		workers = new ThreadPoolExecutor(nrWorkers, nrWorkers, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(MAX_QUEUED_CONNECTIONS));
+	}
+
+	/**
+	 * Starts accepting connections on a thread of its own
+	 *
+	 * @param port
+	 *            port on the loopback address to listen on, 0 for any free
+	 *            port
+	 * @throws IOException
+	 *             if the port cannot be opened
+	 */
+	public void start(int port) throws IOException {
+		serverSocket = new ServerSocket(port, MAX_QUEUED_CONNECTIONS, InetAddress.getLoopbackAddress());
+		acceptor = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				accept();
+			}
+		}, "QueryServer-" + getPort());
+		acceptor.start();
+	}
+
+	/**
+	 * Returns the port the server listens on
+	 *
+	 * @return local port
+	 */
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Waits until the server is closed and the queries being answered are
+	 * finished
+	 *
+	 * @throws InterruptedException
+	 *             if the thread is interrupted while waiting
+	 */
+	public void awaitTermination() throws InterruptedException {
+		acceptor.join();
+		workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops accepting connections and closes the server once the queries
+	 * being answered are finished
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		workers.shutdown();
+		if (serverSocket != null) {
+			serverSocket.close();
+		}
+	}
+
+	private void accept() {
+		while (!closed) {
+			final Socket socket;
+			try {
+				socket = serverSocket.accept();
+			} catch (IOException e) {
+				if (!closed) {
+					System.err.println("Could not accept connection: " + e.getMessage());
+				}
+				continue;
+			}
+			try {
+				workers.execute(new Runnable() {
+					@Override
+					public void run() {
+						serve(socket);
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				refuse(socket);
+			}
+		}
+	}
+
+	private static void refuse(Socket socket) {
+		try {
+			PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(),
+					StandardCharsets.UTF_8));
+			out.print("ERROR Server is busy\n");
+			out.flush();
+			socket.close();
+		} catch (IOException e) {
+			// the client is gone already
+		}
+	}
+
+	/**
+	 * Answers the queries of a connection until the client quits, goes away
+	 * or stays idle
+	 */
+	private void serve(Socket socket) {
+		try {
+			socket.setSoTimeout(IDLE_TIMEOUT);
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+					StandardCharsets.UTF_8));
+			PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(),
+					StandardCharsets.UTF_8), 1 << 16));
+			String line;
+			while (!closed && (line = in.readLine()) != null) {
+				line = line.trim();
+				if (line.equals("QUIT")) {
+					break;
+				}
+				if (!line.isEmpty()) {
+					answer(line, out);
+					out.flush();
+					if (out.checkError()) {
+						break;
+					}
+				}
+			}
+		} catch (SocketTimeoutException e) {
+			// idle connection
+		} catch (SocketException e) {
+			// the client went away
+		} catch (IOException e) {
+			System.err.println("Could not serve connection: " + e.getMessage());
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// nothing left to release
+			}
+		}
+	}
+
+	/**
+	 * Answers one query
+	 *
+	 * @param query
+	 *            line sent by the client
+	 * @param out
+	 *            writer to the client
+	 */
+	private void answer(String query, PrintWriter out) {
+		String[] fields = query.split(query.indexOf('\t') >= 0 ? "\t" : " +");
+		String command = fields[0].toUpperCase();
+		try {
+			if (fields.length < 2) {
+				throw new IllegalArgumentException("Query should be COUNT, FIND or CONTAINING followed by a motif");
+			}
+			Motif motif = CommandLineInterface.parseMotif(fields[1], typeTranslation);
+			MotifFinder finder = new MotifFinder(network);
+			if (command.equals("COUNT") && fields.length == 2) {
+				report(finder.findMotif(motif, null, limits, 1), out);
+			} else if (command.equals("FIND") && fields.length == 2) {
+				StreamingSink sink = new StreamingSink(finder, out);
+				report(finder.findMotif(motif, sink, limits, 1), out);
+			} else if (command.equals("CONTAINING") && (fields.length == 3 || fields.length == 4)) {
+				Node first = getNode(fields[2]);
+				StreamingSink sink = new StreamingSink(finder, out);
+				long nrInstances;
+				if (fields.length == 3) {
+					nrInstances = finder.findMotifContaining(motif, first, sink);
+				} else {
+					nrInstances = finder.findMotifContaining(motif, first, getNode(fields[3]), sink);
+				}
+				out.print("OK " + nrInstances + "\n");
+			} else {
+				throw new IllegalArgumentException("Unknown query: " + query);
+			}
+		} catch (RuntimeException e) {
+			// a failed search ends only this query, the connection stays open
+			String message = e.getMessage() != null ? e.getMessage() : e.toString();
+			out.print("ERROR " + message + "\n");
+		}
+	}
+
+	private static void report(SearchResult result, PrintWriter out) {
+		if (result.isComplete()) {
+			out.print("OK " + result.getNrInstances() + "\n");
+		} else {
+			out.print("PARTIAL " + result.getNrInstances() + " " + result.getStatus() + "\n");
+		}
+	}
+
+	private Node getNode(String description) {
+		Node node = network.getNodeByDescription(description);
+		if (node == null) {
+			throw new IllegalArgumentException("Unknown node: " + description);
+		}
+		return node;
+	}
+
+	/**
+	 * Writes the instances to the client while the search runs. The writer is
+	 * flushed by checking it for errors every {@link #CHECK_INTERVAL}
+	 * instances, and the search is cancelled when the client went away.
+	 */
+	private static class StreamingSink implements MotifInstanceSink {
+
+		private MotifFinder finder;
+		private PrintWriter out;
+		private StringBuilder line = new StringBuilder();
+		private long nrInstances = 0;
+
+		StreamingSink(MotifFinder finder, PrintWriter out) {
+			this.finder = finder;
+			this.out = out;
+		}
+
+		@Override
+		public void instanceFound(Node[] mapping) {
+			line.setLength(0);
+			out.append(MotifInstance.format(line, mapping).append('\n'));
+			if (++nrInstances % CHECK_INTERVAL == 0 && out.checkError()) {
+				finder.cancel();
+			}
+		}
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2013 Maarten Houbraken
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Software available at https://github.com/mhoubraken/ISMAGS
+ * Author : Maarten Houbraken (maarten.houbraken@intec.ugent.be)
+ */
+package algorithm;
+
+import java.io.File;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * Periodically writes the frontier of a sequential search to a checkpoint
+ * file. Before a checkpoint is written, the sink is flushed if it is
+ * {@link Flushable}, so all instances before the frontier are stored.
+ */
+class Checkpointer {
+
+	private File file;
+	private long interval;
+	private long nextCheckpoint;
+	private long networkFingerprint;
+	private long motifFingerprint;
+	private long resumedInstances;
+	private MotifInstanceSink sink;
+
+	/**
+	 * Creates a checkpointer
+	 *
+	 * @param file
+	 *            file to write the checkpoints to
+	 * @param interval
+	 *            minimal time between two checkpoints, in milliseconds
+	 * @param networkFingerprint
+	 *            fingerprint of the network searched
+	 * @param motifFingerprint
+	 *            fingerprint of the motif searched for
+	 * @param resumedInstances
+	 *            number of instances found before the search was resumed
+	 * @param sink
+	 *            receiver of the motif instances, null if instances are only
+	 *            counted
+	 */
+	Checkpointer(File file, long interval, long networkFingerprint, long motifFingerprint, long resumedInstances,
+			MotifInstanceSink sink) {
+		this.file = file;
+		this.interval = interval;
+		this.networkFingerprint = networkFingerprint;
+		this.motifFingerprint = motifFingerprint;
+		this.resumedInstances = resumedInstances;
+		this.sink = sink;
+		nextCheckpoint = System.currentTimeMillis() + interval;
+	}
+
+	/**
+	 * Checks whether a new checkpoint should be written
+	 *
+	 * @return true if the interval since the last checkpoint has passed
+	 */
+	boolean isDue() {
+		return System.currentTimeMillis() >= nextCheckpoint;
+	}
+
+	/**
+	 * Writes a checkpoint
+	 *
+	 * @param positions
+	 *            position of the candidate being explored at every depth
+	 * @param depth
+	 *            number of positions in the frontier
+	 * @param nrInstances
+	 *            number of instances found by the search since it was
+	 *            (re)started
+	 */
+	void checkpoint(int[] positions, int depth, long nrInstances) {
+		try {
+			if (sink instanceof Flushable) {
+				((Flushable) sink).flush();
+			}
+			new SearchCheckpoint(networkFingerprint, motifFingerprint, resumedInstances + nrInstances,
+					Arrays.copyOf(positions, depth)).write(file);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		nextCheckpoint = System.currentTimeMillis() + interval;
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2013 Maarten Houbraken
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Software available at https://github.com/mhoubraken/ISMAGS
+ * Author : Maarten Houbraken (maarten.houbraken@intec.ugent.be)
+ */
+package algorithm;
+
+import java.util.Locale;
+
+/**
+ * Estimate of the number of instances of a motif with its 95% confidence
+ * interval, computed from the mean and variance of independent unbiased
+ * samples. The statistics are accumulated with Welford's method, and the
+ * statistics of samples taken by different threads are merged.
+ */
+public class CountEstimate {
+
+	/**
+	 * Quantile of the standard normal distribution for a two-sided 95%
+	 * confidence interval
+	 */
+	public static final double Z_95 = 1.959963984540054;
+
+	private long nrSamples;
+	private double mean;
+	private double m2;
+
+	CountEstimate() {
+	}
+
+	/**
+	 * Adds a sample
+	 *
+	 * @param sample
+	 *            unbiased estimate of the number of instances
+	 */
+	void add(double sample) {
+		nrSamples++;
+		double delta = sample - mean;
+		mean += delta / nrSamples;
+		m2 += delta * (sample - mean);
+	}
+
+	/**
+	 * Adds the samples of another estimate
+	 *
+	 * @param other
+	 *            estimate from other samples
+	 */
+	void merge(CountEstimate other) {
+		if (other.nrSamples == 0) {
+			return;
+		}
+		long total = nrSamples + other.nrSamples;
+		double delta = other.mean - mean;
+		mean += delta * other.nrSamples / total;
+		m2 += other.m2 + delta * delta * ((double) nrSamples * other.nrSamples / total);
+		nrSamples = total;
+	}
+
+	public long getNrSamples() {
+		return nrSamples;
+	}
+
+	/**
+	 * Returns the estimated number of instances
+	 *
+	 * @return mean of the samples
+	 */
+	public double getEstimate() {
+		return mean;
+	}
+
+	/**
+	 * Returns the standard error of the estimate
+	 *
+	 * @return standard deviation of the samples divided by the square root of
+	 *         the number of samples
+	 */
+	public double getStandardError() {
+		if (nrSamples < 2) {
+			return Double.POSITIVE_INFINITY;
+		}
+		return Math.sqrt(m2 / (nrSamples - 1) / nrSamples);
+	}
+
+	/**
+	 * Returns the lower bound of the 95% confidence interval
+	 *
+	 * @return lower bound, at least 0
+	 */
+	public double getLowerBound() {
+		return Math.max(0, mean - Z_95 * getStandardError());
+	}
+
+	/**
+	 * Returns the upper bound of the 95% confidence interval
+	 *
+	 * @return upper bound
+	 */
+	public double getUpperBound() {
+		return mean + Z_95 * getStandardError();
+	}
+
+	/**
+	 * Returns the half width of the 95% confidence interval relative to the
+	 * estimate
+	 *
+	 * @return relative error, 0 if all samples are 0
+	 */
+	public double getRelativeError() {
+		double halfWidth = Z_95 * getStandardError();
+		if (halfWidth == 0) {
+			return 0;
+		}
+		return halfWidth / mean;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(Locale.ROOT, "%.0f (95%% confidence interval: %.0f - %.0f, %d samples)", getEstimate(),
+				getLowerBound(), getUpperBound(), nrSamples);
+	}
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2013 Maarten Houbraken
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Software available at https://github.com/mhoubraken/ISMAGS
+ * Author : Maarten Houbraken (maarten.houbraken@intec.ugent.be)
+ */
+package algorithm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import motifs.Motif;
+import motifs.MotifInstance;
+import motifs.MotifInstanceSet;
+import network.LinkType;
+import network.Network;
+import network.Node;
+
+/**
+ * Keeps the instances, or only the number of instances, of a motif up to date
+ * while links are added to and removed from a network. The instances are
+ * found once by a full search. Afterwards, only the instances using a changed
+ * link are searched, by pinning the link to the motif links of its type, so
+ * the cost of an update depends on the neighbourhood of the link rather than
+ * on the size of the network.
+ * <p>
+ * The network should only be changed through the index. Like the network,
+ * the index should not be updated while searches run.
+ */
+public class IncrementalMotifIndex {
+
+	private Network network;
+	private Motif motif;
+	private MotifFinder finder;
+	private long nrInstances;
+	/**
+	 * Instances, null if only the number of instances is maintained
+	 */
+	private MotifInstanceSet instances;
+
+	/**
+	 * Creates an index by searching all instances of the motif
+	 *
+	 * @param network
+	 *            finalised network to be indexed
+	 * @param motif
+	 *            motif of which instances are maintained
+	 * @param keepInstances
+	 *            true to maintain the instances, false to only maintain their
+	 *            number
+	 */
+	public IncrementalMotifIndex(Network network, Motif motif, boolean keepInstances) {
+		this.network = network;
+		this.motif = motif;
+		finder = new MotifFinder(network);
+		if (keepInstances) {
+			instances = new MotifInstanceSet(network, motif.getNrMotifNodes());
+			finder.findMotif(motif, MotifFinder.collect(instances));
+			nrInstances = instances.size();
+		} else {
+			nrInstances = finder.countMotif(motif);
+		}
+	}
+
+	/**
+	 * Adds a link to the network and the instances using it to the index
+	 *
+	 * @param start
+	 *            start node of the link
+	 * @param end
+	 *            end node of the link
+	 * @param type
+	 *            type of the link
+	 * @return number of new instances, 0 if the network already had the link
+	 */
+	public long addEdge(Node start, Node end, LinkType type) {
+		if (!network.addEdge(start, end, type)) {
+			return 0;
+		}
+		long nrAdded;
+		if (instances == null) {
+			nrAdded = finder.findMotifWithLink(motif, start, end, type, null);
+		} else {
+			List<MotifInstance> added = findInstances(start, end, type);
+			for (MotifInstance instance : added) {
+				instances.addDistinct(instance.getNodeArray());
+			}
+			nrAdded = added.size();
+		}
+		nrInstances += nrAdded;
+		return nrAdded;
+	}
+
+	/**
+	 * Removes a link from the network and the instances using it from the
+	 * index
+	 *
+	 * @param start
+	 *            start node of the link
+	 * @param end
+	 *            end node of the link
+	 * @param type
+	 *            type of the link
+	 * @return number of removed instances, 0 if the network did not have the
+	 *         link
+	 */
+	public long removeEdge(Node start, Node end, LinkType type) {
+		if (!network.hasEdge(start, end, type)) {
+			return 0;
+		}
+		// the instances using the link can only be found while it exists
+		long nrRemoved;
+		if (instances == null) {
+			nrRemoved = finder.findMotifWithLink(motif, start, end, type, null);
+		} else {
+			List<MotifInstance> removed = findInstances(start, end, type);
+			for (MotifInstance instance : removed) {
+				instances.remove(instance);
+			}
+			nrRemoved = removed.size();
+		}
+		network.removeEdge(start, end, type);
+		nrInstances -= nrRemoved;
+		return nrRemoved;
+	}
+
+	/**
+	 * Finds the instances using a link
+	 */
+	private List<MotifInstance> findInstances(Node start, Node end, LinkType type) {
+		final List<MotifInstance> found = new ArrayList<MotifInstance>();
+		finder.findMotifWithLink(motif, start, end, type, new MotifInstanceSink() {
+			@Override
+			public void instanceFound(Node[] mapping) {
+				found.add(new MotifInstance(mapping));
+			}
+		});
+		return found;
+	}
+
+	/**
+	 * Returns the number of instances of the motif in the current network
+	 *
+	 * @return number of instances
+	 */
+	public long getNrInstances() {
+		return nrInstances;
+	}
+
+	/**
+	 * Returns the instances of the motif in the current network
+	 *
+	 * @return unmodifiable view of the instances, which changes with the
+	 *         index, null if only the number of instances is maintained
+	 */
+	public Set<MotifInstance> getInstances() {
+		return instances == null ? null : Collections.unmodifiableSet(instances);
+	}
+
+	public Network getNetwork() {
+		return network;
+	}
+
+	public Motif getMotif() {
+		return motif;
+	}
+}
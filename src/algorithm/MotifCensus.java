@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2013 Maarten Houbraken
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Software available at https://github.com/mhoubraken/ISMAGS
+ * Author : Maarten Houbraken (maarten.houbraken@intec.ugent.be)
+ */
+package algorithm;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import motifs.CanonicalForm;
+import motifs.Motif;
+import motifs.MotifLink;
+import network.LinkType;
+
+/**
+ * Census of all connected motifs of a given size over a set of link types.
+ * The motifs are enumerated up to isomorphism: every motif of k nodes is
+ * found by adding a motif node, linked in every possible way, to a motif of
+ * k-1 nodes, and only the first motif of every canonical form is kept. A
+ * motif node belongs to a single network, so motifs in which the links of a
+ * motif node require different networks are left out, as they have no
+ * instances. All motifs are then counted together by
+ * {@link MotifFinder#countMotifs(List, int)}.
+ */
+public class MotifCensus {
+
+	private List<Character> abbreviations;
+	private List<Motif> motifs;
+	private List<String> specs;
+
+	/**
+	 * Enumerates the connected motifs
+	 *
+	 * @param size
+	 *            number of motif nodes, at least 2
+	 * @param typeTranslation
+	 *            link types by the character that denotes them in a motif
+	 *            description
+	 */
+	public MotifCensus(int size, Map<Character, LinkType> typeTranslation) {
+		if (size < 2) {
+			throw new IllegalArgumentException("Motifs of a census should have at least 2 nodes: " + size);
+		}
+		// every link type once, in order of its character
+		Map<LinkType, Character> characters = new LinkedHashMap<LinkType, Character>();
+		for (Map.Entry<Character, LinkType> entry : new TreeMap<Character, LinkType>(typeTranslation).entrySet()) {
+			if (!characters.containsKey(entry.getValue())) {
+				characters.put(entry.getValue(), Character.toUpperCase(entry.getKey()));
+			}
+		}
+		List<MotifLink> labels = new ArrayList<MotifLink>();
+		abbreviations = new ArrayList<Character>();
+		for (Map.Entry<LinkType, Character> entry : characters.entrySet()) {
+			LinkType type = entry.getKey();
+			labels.add(type.getMotifLink());
+			abbreviations.add(entry.getValue());
+			if (type.isDirected()) {
+				labels.add(type.getInverseMotifLink());
+				abbreviations.add(Character.toLowerCase(entry.getValue()));
+			}
+		}
+		List<MotifLink[][]> patterns = new ArrayList<MotifLink[][]>();
+		patterns.add(new MotifLink[1][1]);
+		for (int n = 2; n <= size; n++) {
+			patterns = extend(patterns, labels, n);
+		}
+		motifs = new ArrayList<Motif>();
+		specs = new ArrayList<String>();
+		for (MotifLink[][] pattern : patterns) {
+			motifs.add(toMotif(pattern));
+			specs.add(toSpec(pattern, labels));
+		}
+	}
+
+	/**
+	 * Returns the number of motifs in the census
+	 *
+	 * @return number of non-isomorphic connected motifs
+	 */
+	public int getNrMotifs() {
+		return motifs.size();
+	}
+
+	public List<Motif> getMotifs() {
+		return motifs;
+	}
+
+	/**
+	 * Returns the description of a motif, in the format of the motif option
+	 * of the command line interface
+	 *
+	 * @param motif
+	 *            index of the motif in the census
+	 * @return motif description
+	 */
+	public String getSpec(int motif) {
+		return specs.get(motif);
+	}
+
+	/**
+	 * Counts the instances of all motifs of the census
+	 *
+	 * @param finder
+	 *            finder for the network to be searched
+	 * @param parallelism
+	 *            number of threads used for the search
+	 * @return number of occurrences of every motif in the network, in the
+	 *         order of the census
+	 */
+	public long[] count(MotifFinder finder, int parallelism) {
+		return finder.countMotifs(motifs, parallelism);
+	}
+
+	/**
+	 * Adds a motif node to every pattern in every possible way
+	 *
+	 * @param patterns
+	 *            non-isomorphic connected patterns of n-1 motif nodes, as
+	 *            matrices of the motif links from one motif node to another
+	 * @param labels
+	 *            motif links, of which the inverse links are also in the list
+	 * @param n
+	 *            number of motif nodes of the new patterns
+	 * @return non-isomorphic connected patterns of n motif nodes
+	 */
+	private static List<MotifLink[][]> extend(List<MotifLink[][]> patterns, List<MotifLink> labels, int n) {
+		Map<CanonicalForm, MotifLink[][]> extended = new LinkedHashMap<CanonicalForm, MotifLink[][]>();
+		int[] choice = new int[n - 1];
+		for (MotifLink[][] pattern : patterns) {
+			String[] networks = getNetworks(pattern, n - 1);
+			// every combination of no link or a label to every old motif node
+			while (next(choice, labels.size() + 1)) {
+				MotifLink[][] candidate = new MotifLink[n][n];
+				for (int i = 0; i < n - 1; i++) {
+					System.arraycopy(pattern[i], 0, candidate[i], 0, n - 1);
+				}
+				String network = null;
+				boolean consistent = true;
+				for (int i = 0; i < n - 1 && consistent; i++) {
+					if (choice[i] == 0) {
+						continue;
+					}
+					MotifLink link = labels.get(choice[i] - 1);
+					MotifLink inverse = getInverse(link);
+					candidate[i][n - 1] = link;
+					candidate[n - 1][i] = inverse;
+					consistent = matches(networks[i], getSource(link));
+					String required = getSource(inverse);
+					consistent &= matches(network, required);
+					if (network == null) {
+						network = required;
+					}
+				}
+				if (!consistent) {
+					continue;
+				}
+				CanonicalForm form = toMotif(candidate).getCanonicalForm();
+				if (!extended.containsKey(form)) {
+					extended.put(form, candidate);
+				}
+			}
+		}
+		return new ArrayList<MotifLink[][]>(extended.values());
+	}
+
+	/**
+	 * Advances to the next combination of choices, in lexicographic order
+	 *
+	 * @return false if all combinations were visited, the choices are then
+	 *         reset
+	 */
+	private static boolean next(int[] choice, int nrChoices) {
+		for (int i = 0; i < choice.length; i++) {
+			if (++choice[i] < nrChoices) {
+				return true;
+			}
+			choice[i] = 0;
+		}
+		return false;
+	}
+
+	/**
+	 * Determines the network of every motif node of a connected pattern
+	 */
+	private static String[] getNetworks(MotifLink[][] pattern, int n) {
+		String[] networks = new String[n];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				if (pattern[i][j] != null && getSource(pattern[i][j]) != null) {
+					networks[i] = getSource(pattern[i][j]);
+				}
+			}
+		}
+		return networks;
+	}
+
+	/**
+	 * Returns the network of the motif node a motif link starts from
+	 *
+	 * @return network, null if an undirected link type links two networks
+	 */
+	private static String getSource(MotifLink link) {
+		LinkType type = link.getLinkType();
+		if (!type.isDirected() && !type.getSourceNetwork().equals(type.getDestinationNetwork())) {
+			return null;
+		}
+		return link == type.getMotifLink() ? type.getSourceNetwork() : type.getDestinationNetwork();
+	}
+
+	private static boolean matches(String network, String required) {
+		return network == null || required == null || network.equals(required);
+	}
+
+	private static MotifLink getInverse(MotifLink link) {
+		LinkType type = link.getLinkType();
+		return link == type.getMotifLink() ? type.getInverseMotifLink() : type.getMotifLink();
+	}
+
+	private static Motif toMotif(MotifLink[][] pattern) {
+		int n = pattern.length;
+		Motif motif = new Motif(n);
+		for (int i = 0; i < n; i++) {
+			for (int j = i + 1; j < n; j++) {
+				MotifLink link = pattern[i][j];
+				if (link == null) {
+					continue;
+				}
+				LinkType type = link.getLinkType();
+				if (link == type.getMotifLink()) {
+					motif.addMotifLink(i, j, type);
+				} else {
+					motif.addMotifLink(j, i, type);
+				}
+			}
+		}
+		motif.finaliseMotif();
+		return motif;
+	}
+
+	/**
+	 * Describes a pattern in the format of the motif option: the links of
+	 * every motif node to the motif nodes before it, upper case for a link
+	 * from the earlier motif node
+	 */
+	private String toSpec(MotifLink[][] pattern, List<MotifLink> labels) {
+		StringBuilder spec = new StringBuilder();
+		for (int i = 1; i < pattern.length; i++) {
+			for (int j = 0; j < i; j++) {
+				MotifLink link = pattern[j][i];
+				spec.append(link == null ? '0' : abbreviations.get(labels.indexOf(link)));
+			}
+		}
+		return spec.toString();
+	}
+}
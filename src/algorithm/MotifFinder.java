@@ -19,15 +19,26 @@
  */
 package algorithm;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import datastructures.NodeIterator;
+import datastructures.SymProp;
 import motifs.Motif;
 import motifs.MotifInstance;
+import motifs.MotifInstanceSet;
 import motifs.MotifLink;
+import network.LinkType;
 import network.Network;
 import network.Node;
 
@@ -36,12 +47,27 @@ import network.Node;
  */
 public class MotifFinder {
 
+	/**
+	 * Number of tasks per thread the candidates of the first motif node are
+	 * divided in during a parallel search
+	 */
+	private static final int TASKS_PER_THREAD = 8;
+	/**
+	 * Number of samples a thread takes before merging them into the shared
+	 * estimate, and the number of samples taken before the relative error is
+	 * trusted
+	 */
+	private static final int SAMPLES_PER_BATCH = 256;
+	private static final int MIN_SAMPLES = 10000;
+	/**
+	 * Difference between the seeds of the samplers of consecutive threads
+	 */
+	private static final long SEED_INCREMENT = 0x9e3779b97f4a7c15L;
+
 	private Network network;
-	private SymmetryHandler symmetryHandler;
-	private Set<Integer> unmappedNodes;
-	// private List<Node> usedNodes;
 	private Set<Set<Node>> usedLinks;
-	private boolean cancelled = false;
+	private volatile boolean cancelled = false;
+	private SearchStatistics statistics;
 
 	/**
 	 * Default constructor for MotifFinder
@@ -76,141 +102,786 @@ public class MotifFinder {
 	 * @return All occurrences of the motif in the network
 	 */
 	public Set<MotifInstance> findMotif(Motif motif, boolean saveLinks) {
-		// initially, no nodes are mapped
-		unmappedNodes = new HashSet<Integer>();
+		return this.findMotif(motif, saveLinks, 1);
+	}
+
+	/**
+	 * Finds and returns all instances of specified motif in the network,
+	 * using multiple threads
+	 *
+	 * @param motif
+	 *            Motif of which instances need to be found
+	 * @param parallelism
+	 *            number of threads used for the search
+	 * 
+	 * @return All occurrences of the motif in the network
+	 */
+	public Set<MotifInstance> findMotif(Motif motif, int parallelism) {
+		return this.findMotif(motif, false, parallelism);
+	}
+
+	/**
+	 * Finds and returns all instances of specified motif in the network. The
+	 * candidates for the first motif node are divided over fork/join tasks,
+	 * each searching with its own state, so the result is identical to the
+	 * sequential search.
+	 *
+	 * @param motif
+	 *            Motif of which instances need to be found
+	 * @param saveLinks
+	 *            if true: keep a set of links used in the result set
+	 * @param parallelism
+	 *            number of threads used for the search, 1 searches on the
+	 *            calling thread
+	 * 
+	 * @return All occurrences of the motif in the network
+	 */
+	public Set<MotifInstance> findMotif(Motif motif, boolean saveLinks, int parallelism) {
+		MotifInstanceSet instances = new MotifInstanceSet(network, motif.getNrMotifNodes());
+		findMotif(motif, collect(instances), saveLinks, parallelism);
+		return instances;
+	}
+
+	/**
+	 * Finds all instances of specified motif in the network and passes them to
+	 * the sink as soon as they are found
+	 *
+	 * @param motif
+	 *            Motif of which instances need to be found
+	 * @param sink
+	 *            receiver of the motif instances
+	 */
+	public void findMotif(Motif motif, MotifInstanceSink sink) {
+		this.findMotif(motif, sink, false, 1);
+	}
+
+	/**
+	 * Finds all instances of specified motif in the network and passes them to
+	 * the sink as soon as they are found. The candidates for the first motif
+	 * node are divided over fork/join tasks, each searching with its own
+	 * state, so the result is identical to the sequential search. Tasks
+	 * running out of work steal unexplored subtrees from busy tasks.
+	 *
+	 * @param motif
+	 *            Motif of which instances need to be found
+	 * @param sink
+	 *            receiver of the motif instances, should be thread-safe if
+	 *            parallelism is larger than 1
+	 * @param saveLinks
+	 *            if true: keep a set of links used in the result set
+	 * @param parallelism
+	 *            number of threads used for the search, 1 searches on the
+	 *            calling thread
+	 */
+	public void findMotif(Motif motif, MotifInstanceSink sink, boolean saveLinks, int parallelism) {
+		search(motif, sink, saveLinks, parallelism, SearchLimits.NONE);
+	}
+
+	/**
+	 * Finds the instances of specified motif in the network until the search
+	 * completes, is cancelled or reaches one of the limits
+	 *
+	 * @param motif
+	 *            Motif of which instances need to be found
+	 * @param limits
+	 *            limits of the search
+	 * @param parallelism
+	 *            number of threads used for the search, 1 searches on the
+	 *            calling thread
+	 * @return status of the search with the instances found
+	 */
+	public SearchResult findMotif(Motif motif, SearchLimits limits, int parallelism) {
+		MotifInstanceSet instances = new MotifInstanceSet(network, motif.getNrMotifNodes());
+		SearchResult result = search(motif, collect(instances), false, parallelism, limits);
+		return new SearchResult(result.getStatus(), result.getNrInstances(), result.getNrFinishedRootCandidates(),
+				result.getNrRootCandidates(), result.getNrSearchNodes(), instances);
+	}
+
+	/**
+	 * Finds the instances of specified motif in the network and passes them to
+	 * the sink as soon as they are found, until the search completes, is
+	 * cancelled or reaches one of the limits. If the search has an instance
+	 * limit, no more instances than the limit are passed to the sink.
+	 *
+	 * @param motif
+	 *            Motif of which instances need to be found
+	 * @param sink
+	 *            receiver of the motif instances, null to only count them,
+	 *            should be thread-safe if parallelism is larger than 1
+	 * @param limits
+	 *            limits of the search
+	 * @param parallelism
+	 *            number of threads used for the search, 1 searches on the
+	 *            calling thread
+	 * @return status of the search
+	 */
+	public SearchResult findMotif(Motif motif, MotifInstanceSink sink, SearchLimits limits, int parallelism) {
+		return search(motif, sink, false, parallelism, limits);
+	}
+
+	/**
+	 * Finds all instances of specified motif in the network on the calling
+	 * thread, passes them to the sink and periodically writes the frontier of
+	 * the search to a checkpoint file. If the search is interrupted, it can be
+	 * resumed from the last checkpoint, and only the part of the search tree
+	 * after the checkpoint is explored again. The sink is flushed before every
+	 * checkpoint if it is {@link java.io.Flushable}. The checkpoint file is
+	 * deleted when the search completes.
+	 *
+	 * @param motif
+	 *            Motif of which instances need to be found
+	 * @param sink
+	 *            receiver of the motif instances, null to only count them
+	 * @param resumeFrom
+	 *            checkpoint of an earlier search for the motif in the network
+	 *            to be resumed, null to start a new search
+	 * @param checkpointFile
+	 *            file to write the checkpoints to
+	 * @param checkpointInterval
+	 *            minimal time between two checkpoints, in milliseconds
+	 * @return number of occurrences of the motif in the network, including
+	 *         those found before the checkpoint
+	 * @throws IOException
+	 *             if a checkpoint cannot be written
+	 */
+	public long findMotif(Motif motif, MotifInstanceSink sink, SearchCheckpoint resumeFrom, File checkpointFile,
+			long checkpointInterval) throws IOException {
+		if (resumeFrom != null && !resumeFrom.matches(network, motif)) {
+			throw new IllegalArgumentException("Checkpoint was not made by a search for this motif in this network");
+		}
+		NodeIterator[] mapping = createMapping(motif);
+		int bestMN = selectFirstMotifNode(mapping);
+		usedLinks = null;
+		int[] candidates = mapping[bestMN].getNodeSet();
+		int nrCandidates = mapping[bestMN].getNrNodes();
+		long resumedInstances = resumeFrom == null ? 0 : resumeFrom.getNrInstances();
+		MotifSearch search = new MotifSearch(motif, network, mapping, null, sink, null, null,
+				new SearchControl(this, SearchLimits.NONE));
+		search.setStatistics(statistics);
+		search.setCheckpointing(resumeFrom == null ? null : resumeFrom.getPositions(),
+				new Checkpointer(checkpointFile, checkpointInterval, network.getFingerprint(),
+						SearchCheckpoint.fingerprint(motif), resumedInstances, sink));
+		try {
+			search.search(bestMN, candidates, 0, nrCandidates);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		if (!cancelled) {
+			checkpointFile.delete();
+		}
+		return resumedInstances + search.getNrInstances();
+	}
+
+	/**
+	 * Returns an iterator over the instances of specified motif in the
+	 * network. The search runs on the calling thread and only advances to the
+	 * next instance when it is requested, so the consumer determines the pace
+	 * of the search and can stop at any time. Cancelling the finder ends the
+	 * iteration.
+	 *
+	 * @param motif
+	 *            Motif of which instances need to be found
+	 * @return lazy iterator over all occurrences of the motif in the network
+	 */
+	public Iterator<MotifInstance> iterate(Motif motif) {
+		NodeIterator[] mapping = createMapping(motif);
+		int bestMN = selectFirstMotifNode(mapping);
+		return new MotifIterator(this, motif, mapping, bestMN, mapping[bestMN].getNodeSet(),
+				mapping[bestMN].getNrNodes());
+	}
+
+	/**
+	 * Finds and returns the instances of specified motif containing a node.
+	 * Only the neighbourhood of the node is searched.
+	 *
+	 * @param motif
+	 *            Motif of which instances need to be found
+	 * @param node
+	 *            node of the network
+	 * @return occurrences of the motif containing the node
+	 */
+	public Set<MotifInstance> findMotifContaining(Motif motif, Node node) {
+		MotifInstanceSet instances = new MotifInstanceSet(network, motif.getNrMotifNodes());
+		findMotifContaining(motif, node, collect(instances));
+		return instances;
+	}
+
+	/**
+	 * Finds and returns the instances of specified motif containing two
+	 * nodes, which need not be linked. Only the neighbourhood of the nodes is
+	 * searched.
+	 *
+	 * @param motif
+	 *            Motif of which instances need to be found
+	 * @param first
+	 *            node of the network
+	 * @param second
+	 *            other node of the network
+	 * @return occurrences of the motif containing both nodes
+	 */
+	public Set<MotifInstance> findMotifContaining(Motif motif, Node first, Node second) {
+		MotifInstanceSet instances = new MotifInstanceSet(network, motif.getNrMotifNodes());
+		findMotifContaining(motif, first, second, collect(instances));
+		return instances;
+	}
+
+	/**
+	 * Counts the instances of specified motif containing a node, without
+	 * creating them
+	 *
+	 * @param motif
+	 *            Motif of which instances need to be counted
+	 * @param node
+	 *            node of the network
+	 * @return number of occurrences of the motif containing the node
+	 */
+	public long countMotifContaining(Motif motif, Node node) {
+		return findMotifContaining(motif, node, (MotifInstanceSink) null);
+	}
+
+	/**
+	 * Counts the instances of specified motif containing two nodes, without
+	 * creating them
+	 *
+	 * @param motif
+	 *            Motif of which instances need to be counted
+	 * @param first
+	 *            node of the network
+	 * @param second
+	 *            other node of the network
+	 * @return number of occurrences of the motif containing both nodes
+	 */
+	public long countMotifContaining(Motif motif, Node first, Node second) {
+		return findMotifContaining(motif, first, second, null);
+	}
+
+	/**
+	 * Finds the instances of specified motif containing a node. The node is
+	 * pinned to every motif node in turn and the rest of each mapping is
+	 * searched from there. The symmetry-breaking constraints still apply to
+	 * the pinned node, so every instance is found once, with the same mapping
+	 * as by a full search.
+	 *
+	 * @param motif
+	 *            Motif of which instances need to be found
+	 * @param node
+	 *            node of the network
+	 * @param sink
+	 *            receiver of the motif instances, null if instances only need
+	 *            to be counted
+	 * @return number of occurrences of the motif containing the node
+	 */
+	public long findMotifContaining(Motif motif, Node node, MotifInstanceSink sink) {
+		int[] graphNodes = { getIndex(node) };
+		MotifSearch search = createPinnedSearch(motif, sink);
 		for (int i = 0; i < motif.getNrMotifNodes(); i++) {
-			unmappedNodes.add(i);
+			search.searchFrom(new int[] { i }, graphNodes);
 		}
-		int nrMotifNodes = motif.getNrMotifNodes();
+		return search.getNrInstances();
+	}
 
-		// determining first motif node to be investigated based on number of
-		// edges in network
-		NodeIterator[] mapping = new NodeIterator[nrMotifNodes];
+	/**
+	 * Finds the instances of specified motif containing two nodes, by pinning
+	 * them to every pair of motif nodes in turn
+	 *
+	 * @param motif
+	 *            Motif of which instances need to be found
+	 * @param first
+	 *            node of the network
+	 * @param second
+	 *            other node of the network
+	 * @param sink
+	 *            receiver of the motif instances, null if instances only need
+	 *            to be counted
+	 * @return number of occurrences of the motif containing both nodes
+	 * @see #findMotifContaining(Motif, Node, MotifInstanceSink)
+	 */
+	public long findMotifContaining(Motif motif, Node first, Node second, MotifInstanceSink sink) {
+		if (first == second) {
+			throw new IllegalArgumentException("Nodes should be distinct: " + first.getDescription());
+		}
+		int[] graphNodes = { getIndex(first), getIndex(second) };
+		MotifSearch search = createPinnedSearch(motif, sink);
+		for (int i = 0; i < motif.getNrMotifNodes(); i++) {
+			for (int j = 0; j < motif.getNrMotifNodes(); j++) {
+				if (i != j) {
+					search.searchFrom(new int[] { i, j }, graphNodes);
+				}
+			}
+		}
+		return search.getNrInstances();
+	}
+
+	/**
+	 * Finds the instances of specified motif that use a link of the network
+	 * for one of their motif links. The link is pinned to every motif link of
+	 * its type in turn, so the work is limited to the neighbourhood of the
+	 * link.
+	 *
+	 * @param motif
+	 *            Motif of which instances need to be found
+	 * @param start
+	 *            start node of the link
+	 * @param end
+	 *            end node of the link
+	 * @param type
+	 *            type of the link
+	 * @param sink
+	 *            receiver of the motif instances, null if instances only need
+	 *            to be counted
+	 * @return number of occurrences of the motif using the link, 0 if the
+	 *         network does not have the link
+	 * @see #findMotifContaining(Motif, Node, MotifInstanceSink)
+	 */
+	public long findMotifWithLink(Motif motif, Node start, Node end, LinkType type, MotifInstanceSink sink) {
+		int linkID = type.getMotifLink().getMotifLinkID();
+		int[] graphNodes = { getIndex(start), getIndex(end) };
+		MotifSearch search = createPinnedSearch(motif, sink);
+		for (int i = 0; i < motif.getNrMotifNodes(); i++) {
+			int[] connections = motif.getConnectionsOfMotifNode(i);
+			MotifLink[] links = motif.getLinksOfMotifNode(i);
+			for (int j = 0; j < connections.length; j++) {
+				// undirected motif links are listed at both motif nodes, so
+				// both orientations are tried
+				if (links[j].getMotifLinkID() == linkID) {
+					search.searchFrom(new int[] { i, connections[j] }, graphNodes);
+				}
+			}
+		}
+		return search.getNrInstances();
+	}
+
+	/**
+	 * Creates a sequential search for instances containing pinned nodes
+	 */
+	private MotifSearch createPinnedSearch(Motif motif, MotifInstanceSink sink) {
+		MotifSearch search = new MotifSearch(motif, network, createMapping(motif), null, sink, null, null,
+				new SearchControl(this, SearchLimits.NONE));
+		search.setStatistics(statistics);
+		return search;
+	}
+
+	/**
+	 * Returns the index of a node, checking that it belongs to the network
+	 */
+	private int getIndex(Node node) {
+		int index = node.getIndex();
+		if (index < 0 || index >= network.getnNodes() || network.getNodeByIndex(index) != node) {
+			throw new IllegalArgumentException("Node " + node.getDescription() + " is not in the network");
+		}
+		return index;
+	}
+
+	/**
+	 * Creates a sink adding the instances found to a set. A search finds
+	 * every instance once, so the instances are not looked up in the set.
+	 */
+	static MotifInstanceSink collect(final MotifInstanceSet instances) {
+		return new MotifInstanceSink() {
+			@Override
+			public void instanceFound(Node[] mapping) {
+				synchronized (instances) {
+					instances.addDistinct(mapping);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Counts the instances of specified motif in the network, without
+	 * creating them
+	 *
+	 * @param motif
+	 *            Motif of which instances need to be counted
+	 * @return number of occurrences of the motif in the network
+	 */
+	public long countMotif(Motif motif) {
+		return countMotif(motif, 1);
+	}
+
+	/**
+	 * Counts the instances of specified motif in the network, without
+	 * creating them, using multiple threads
+	 *
+	 * @param motif
+	 *            Motif of which instances need to be counted
+	 * @param parallelism
+	 *            number of threads used for the search, 1 searches on the
+	 *            calling thread
+	 * @return number of occurrences of the motif in the network
+	 */
+	public long countMotif(Motif motif, int parallelism) {
+		return search(motif, null, false, parallelism, SearchLimits.NONE).getNrInstances();
+	}
+
+	/**
+	 * Finds and returns all instances of several motifs in the network. The
+	 * motifs are searched together: every motif is matched in a fixed order of
+	 * its motif nodes, chosen such that motifs start with common sub-patterns
+	 * as much as possible, and the partial mappings of a common sub-pattern
+	 * are only found once. A family of related motifs is therefore found
+	 * faster than by searching the motifs one by one.
+	 *
+	 * @param motifs
+	 *            connected motifs of which instances need to be found
+	 * @return all occurrences of every motif in the network, in the order of
+	 *         the motifs
+	 */
+	public List<Set<MotifInstance>> findMotifs(List<Motif> motifs) {
+		List<Set<MotifInstance>> instances = new ArrayList<Set<MotifInstance>>();
+		List<MotifInstanceSink> sinks = new ArrayList<MotifInstanceSink>();
+		for (int i = 0; i < motifs.size(); i++) {
+			MotifInstanceSet motifInstances = new MotifInstanceSet(network, motifs.get(i).getNrMotifNodes());
+			instances.add(motifInstances);
+			sinks.add(collect(motifInstances));
+		}
+		findMotifs(motifs, sinks);
+		return instances;
+	}
+
+	/**
+	 * Finds all instances of several motifs in the network together and passes
+	 * them to the sink of their motif as soon as they are found
+	 *
+	 * @param motifs
+	 *            connected motifs of which instances need to be found
+	 * @param sinks
+	 *            receiver of the instances of every motif, null for the motifs
+	 *            of which instances only need to be counted
+	 * @return number of occurrences of every motif in the network, in the
+	 *         order of the motifs
+	 * @see #findMotifs(List)
+	 */
+	public long[] findMotifs(List<Motif> motifs, List<? extends MotifInstanceSink> sinks) {
+		return findMotifs(motifs, sinks, 1);
+	}
+
+	/**
+	 * Finds all instances of several motifs in the network together, using
+	 * multiple threads, and passes them to the sink of their motif as soon as
+	 * they are found. The candidates for the first motif node are divided over
+	 * fork/join tasks, each following the motifs through the same trie with
+	 * its own state.
+	 *
+	 * @param motifs
+	 *            connected motifs of which instances need to be found
+	 * @param sinks
+	 *            receiver of the instances of every motif, null for the motifs
+	 *            of which instances only need to be counted, should be
+	 *            thread-safe if parallelism is larger than 1
+	 * @param parallelism
+	 *            number of threads used for the search, 1 searches on the
+	 *            calling thread
+	 * @return number of occurrences of every motif in the network, in the
+	 *         order of the motifs
+	 * @see #findMotifs(List)
+	 */
+	public long[] findMotifs(List<Motif> motifs, List<? extends MotifInstanceSink> sinks, int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism should be at least 1: " + parallelism);
+		}
+		if (sinks.size() != motifs.size()) {
+			throw new IllegalArgumentException("Every motif should have a sink: " + sinks.size() + " sinks for "
+					+ motifs.size() + " motifs");
+		}
+		if (motifs.isEmpty()) {
+			return new long[0];
+		}
+		List<SymProp> symProps = new ArrayList<SymProp>();
+		for (Motif motif : motifs) {
+			symProps.add(new SymmetryHandler(createMapping(motif), motif, new int[motif.getNrMotifNodes()],
+					network.getCSRGraph()).getSymProp());
+		}
+		int[][] orders = new int[motifs.size()][];
+		MotifTrie trie = MotifTrie.build(motifs, symProps, orders);
+		MotifInstanceSink[] sinkArray = sinks.toArray(new MotifInstanceSink[motifs.size()]);
+		MultiMotifSearch search = new MultiMotifSearch(this, trie, orders, sinkArray);
+		int[] first = search.getFirstCandidates();
+		if (parallelism == 1) {
+			search.search(first, 0, first.length);
+			return search.getNrInstances();
+		}
+		int granularity = Math.max(1, first.length / (parallelism * TASKS_PER_THREAD));
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			return pool.invoke(new MultiMotifSearch.Task(this, trie, orders, sinkArray, first, 0, first.length,
+					granularity));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Counts the instances of several motifs in the network together, without
+	 * creating them
+	 *
+	 * @param motifs
+	 *            connected motifs of which instances need to be counted
+	 * @return number of occurrences of every motif in the network, in the
+	 *         order of the motifs
+	 * @see #findMotifs(List)
+	 */
+	public long[] countMotifs(List<Motif> motifs) {
+		return countMotifs(motifs, 1);
+	}
+
+	/**
+	 * Counts the instances of several motifs in the network together, without
+	 * creating them, using multiple threads
+	 *
+	 * @param motifs
+	 *            connected motifs of which instances need to be counted
+	 * @param parallelism
+	 *            number of threads used for the search, 1 searches on the
+	 *            calling thread
+	 * @return number of occurrences of every motif in the network, in the
+	 *         order of the motifs
+	 * @see #findMotifs(List, List, int)
+	 */
+	public long[] countMotifs(List<Motif> motifs, int parallelism) {
+		return findMotifs(motifs, Collections.<MotifInstanceSink> nCopies(motifs.size(), null), parallelism);
+	}
+
+	/**
+	 * Estimates the number of instances of specified motif in the network by
+	 * sampling random paths through the search tree
+	 *
+	 * @param motif
+	 *            Motif of which instances need to be counted
+	 * @param relativeError
+	 *            sampling stops as soon as the half width of the 95% confidence
+	 *            interval is at most this fraction of the estimate
+	 * @param timeBudget
+	 *            sampling stops after this time, in milliseconds, even if the
+	 *            relative error is not reached
+	 * @param parallelism
+	 *            number of threads sampling, 1 samples on the calling thread
+	 * @return estimated number of occurrences of the motif in the network
+	 * @see MotifSampler
+	 */
+	public CountEstimate estimateMotifCount(Motif motif, double relativeError, long timeBudget, int parallelism) {
+		return estimateMotifCount(motif, relativeError, timeBudget, parallelism, System.nanoTime());
+	}
+
+	/**
+	 * Estimates the number of instances of specified motif in the network by
+	 * sampling random paths through the search tree. With a single thread, the
+	 * samples only depend on the seed and the relative error, unless the time
+	 * budget runs out.
+	 *
+	 * @param motif
+	 *            Motif of which instances need to be counted
+	 * @param relativeError
+	 *            sampling stops as soon as the half width of the 95% confidence
+	 *            interval is at most this fraction of the estimate
+	 * @param timeBudget
+	 *            sampling stops after this time, in milliseconds, even if the
+	 *            relative error is not reached
+	 * @param parallelism
+	 *            number of threads sampling, 1 samples on the calling thread
+	 * @param seed
+	 *            seed of the random choices
+	 * @return estimated number of occurrences of the motif in the network
+	 * @see MotifSampler
+	 */
+	public CountEstimate estimateMotifCount(Motif motif, double relativeError, long timeBudget, int parallelism,
+			long seed) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism should be at least 1: " + parallelism);
+		}
+		if (!(relativeError > 0)) {
+			throw new IllegalArgumentException("Relative error should be positive: " + relativeError);
+		}
+		if (timeBudget <= 0) {
+			throw new IllegalArgumentException("Time budget should be positive: " + timeBudget);
+		}
+		final long deadline = System.currentTimeMillis() + timeBudget;
+		NodeIterator[] mapping = createMapping(motif);
+		int bestMN = selectFirstMotifNode(mapping);
+		// analyse the motif once, the results are shared by all samplers
+		SymProp symProp = new SymmetryHandler(mapping, motif, new int[mapping.length], network.getCSRGraph())
+				.getSymProp();
+		final CountEstimate estimate = new CountEstimate();
+		if (parallelism == 1) {
+			sample(new MotifSampler(motif, network, mapping, symProp, bestMN, new Random(seed)), estimate,
+					relativeError, deadline);
+			return estimate;
+		}
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+			for (int i = 0; i < parallelism; i++) {
+				final MotifSampler sampler = new MotifSampler(motif, network, i == 0 ? mapping
+						: createMapping(motif), symProp, bestMN, new Random(seed + i * SEED_INCREMENT));
+				final double error = relativeError;
+				tasks.add(pool.submit(new Runnable() {
+					@Override
+					public void run() {
+						sample(sampler, estimate, error, deadline);
+					}
+				}));
+			}
+			for (ForkJoinTask<?> task : tasks) {
+				task.join();
+			}
+		} finally {
+			pool.shutdown();
+		}
+		return estimate;
+	}
+
+	/**
+	 * Takes batches of samples until the estimate is accurate enough, the
+	 * deadline has passed or the search is cancelled
+	 *
+	 * @param sampler
+	 *            sampler owned by the calling thread
+	 * @param estimate
+	 *            estimate shared by all threads, the samples of every batch
+	 *            are merged into it
+	 * @param relativeError
+	 *            relative error at which sampling stops
+	 * @param deadline
+	 *            time at which sampling stops
+	 */
+	private void sample(MotifSampler sampler, CountEstimate estimate, double relativeError, long deadline) {
+		while (true) {
+			CountEstimate batch = new CountEstimate();
+			for (int i = 0; i < SAMPLES_PER_BATCH; i++) {
+				batch.add(sampler.sample());
+			}
+			synchronized (estimate) {
+				estimate.merge(batch);
+				if (cancelled || System.currentTimeMillis() >= deadline || (estimate.getNrSamples() >= MIN_SAMPLES
+						&& estimate.getRelativeError() <= relativeError)) {
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Searches all instances of the motif
+	 *
+	 * @param motif
+	 *            Motif of which instances need to be found
+	 * @param sink
+	 *            receiver of the motif instances, null to only count them
+	 * @param saveLinks
+	 *            if true: keep a set of links used in the result set
+	 * @param parallelism
+	 *            number of threads used for the search
+	 * @param limits
+	 *            limits of the search
+	 * @return status of the search, without the instances
+	 */
+	private SearchResult search(Motif motif, MotifInstanceSink sink, boolean saveLinks, int parallelism,
+			SearchLimits limits) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism should be at least 1: " + parallelism);
+		}
+		NodeIterator[] mapping = createMapping(motif);
+		int bestMN = selectFirstMotifNode(mapping);
+		usedLinks = saveLinks ? new HashSet<Set<Node>>() : null;
+		int[] candidates = mapping[bestMN].getNodeSet();
+		int nrCandidates = mapping[bestMN].getNrNodes();
+		SearchControl control = new SearchControl(this, limits);
+		if (parallelism == 1) {
+			// Initialise symmetry handler to analyse motif
+			MotifSearch search = new MotifSearch(motif, network, mapping, null, sink, usedLinks, null, control);
+			search.setStatistics(statistics);
+			search.search(bestMN, candidates, 0, nrCandidates);
+			return new SearchResult(control.getStatus(), search.getNrInstances(),
+					search.getFinishedRoots().cardinality(), nrCandidates, control.getNrSearchNodes(), null);
+		} else {
+			// analyse the motif once, the results are shared by all tasks
+			SymProp symProp = new SymmetryHandler(mapping, motif, new int[mapping.length], network.getCSRGraph())
+					.getSymProp();
+			int granularity = Math.max(1, nrCandidates / (parallelism * TASKS_PER_THREAD));
+			ForkJoinPool pool = new ForkJoinPool(parallelism);
+			try {
+				SearchTask task = new SearchTask(this, motif, symProp, bestMN, candidates, 0, nrCandidates,
+						granularity, sink, usedLinks, control);
+				long nrInstances = pool.invoke(task);
+				return new SearchResult(control.getStatus(), nrInstances, task.getNrFinishedRoots(), nrCandidates,
+						control.getNrSearchNodes(), null);
+			} finally {
+				pool.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * Determines the first motif node to be investigated based on the number
+	 * of edges in the network
+	 *
+	 * @param mapping
+	 *            initial candidate lists for each motif node
+	 * @return motif node with the smallest candidate list
+	 */
+	int selectFirstMotifNode(NodeIterator[] mapping) {
 		int bestMN = -1;
 		int sizeOfListOfBestNode = Integer.MAX_VALUE;
+		for (int i = 0; i < mapping.length; i++) {
+			// First node to be mapped is the node with the smallest candidate
+			// sublist
+			if (mapping[i].getMinSetSize() < sizeOfListOfBestNode) {
+				sizeOfListOfBestNode = mapping[i].getMinSetSize();
+				bestMN = i;
+			}
+		}
+		return bestMN;
+	}
+
+	/**
+	 * Creates for every motif node a NodeIterator containing the lists of
+	 * nodes in the network having the edge types of the motif node
+	 *
+	 * @param motif
+	 *            motif to be searched for
+	 * @return initial candidate lists for each motif node
+	 */
+	NodeIterator[] createMapping(Motif motif) {
+		int nrMotifNodes = motif.getNrMotifNodes();
+		NodeIterator[] mapping = new NodeIterator[nrMotifNodes];
 		for (int i = 0; i < nrMotifNodes; i++) {
 			// determine nodes mapable on node i
 			int[] nrLinks = new int[MotifLink.getNrLinkIDs()];
 			MotifLink[] linksFromi = motif.getLinksOfMotifNode(i);
-			int[] nodesConnectedToi = motif.getConnectionsOfMotifNode(i);
-			int nrConnections = nodesConnectedToi.length;
+			int nrConnections = motif.getConnectionsOfMotifNode(i).length;
 			NodeIterator nodeIterator = new NodeIterator(i);
-			int sizeOfSmallestListOfNodei = Integer.MAX_VALUE;
 			// for each outgoing link, add the list of nodes in the network
 			// having that edge type
 			for (int k = 0; k < nrConnections; k++) {
 				MotifLink link = linksFromi[k];
 				nrLinks[link.getMotifLinkID()]++;
 				if (nrLinks[link.getMotifLinkID()] == 1) {
-					ArrayList<Node> nodesOfType = this.network.getNodesOfType(link);
-					nodeIterator.addRestrictionList(nodesOfType);
-					if (sizeOfSmallestListOfNodei > nodesOfType.size()) {
-						sizeOfSmallestListOfNodei = nodesOfType.size();
-					}
+					nodeIterator.addRestrictionList(network.getCSRGraph().getNodesWithLink(link.getMotifLinkID()));
 				}
 			}
-			// First node to be mapped is the node with the smallest candidate
-			// sublist
-			if (sizeOfSmallestListOfNodei < sizeOfListOfBestNode) {
-				sizeOfListOfBestNode = sizeOfSmallestListOfNodei;
-				bestMN = i;
-			}
 			mapping[i] = nodeIterator;
 		}
-		Set<MotifInstance> instances = new HashSet<MotifInstance>();
-		Node[] mappedNodes = new Node[nrMotifNodes];
-		// Initialise symmetry handler to analyse motif
-		symmetryHandler = new SymmetryHandler(mapping, motif, mappedNodes);
-		if (saveLinks)
-			usedLinks = new HashSet<Set<Node>>();
-		mapNext(motif, instances, bestMN, mappedNodes, 0, saveLinks);
-		return instances;
+		return mapping;
+	}
+
+	Network getNetwork() {
+		return network;
 	}
 
 	/**
-	 * Recursively called to map graph nodes to the next motif node
-	 *
-	 * @param motif
-	 *            subgraph to be searched for
-	 * @param instances
-	 *            set to store motif instances in
-	 * @param motifNode
-	 *            next node to be mapped
-	 * @param mappedNodes
-	 *            current partial node mapping
-	 * @param nrMapped
-	 *            number of nodes already in the partial mapping
-	 */
-	private void mapNext(Motif motif, Set<MotifInstance> instances, int motifNode, Node[] mappedNodes, int nrMapped,
-			boolean saveLinks) {
-		ArrayList<Node> nodes = symmetryHandler.mapping[motifNode].getNodeSet();
-		// if the current node mapping will complete the mapping, export the
-		// instances
-		if (nrMapped == motif.getNrMotifNodes() - 1) {
-			if (saveLinks && !nodes.isEmpty()) {
-				for (int i = 0; i < motif.getNrMotifNodes(); i++) {
-					if (mappedNodes[i] == null)
-						continue;
-					int[] links = motif.getConnectionsOfMotifNode(i);
-					// System.out.println(Arrays.toString(links));
-					for (int j = 0; j < links.length; j++) {
-						if (mappedNodes[links[j]] == null)
-							continue;
-						 else if( links[j]>i) break;
-						HashSet<Node> link = new HashSet<Node>(2);
-						link.add(mappedNodes[i]);
-						link.add(mappedNodes[links[j]]);
-						usedLinks.add(link);
+	 * Lets the searches of this finder count their work, per depth of the
+	 * search tree. Counting slows down the search a little, so it is off by
+	 * default.
+	 *
+	 * @param statistics
+	 *            statistics the counts are added to, null to stop counting
+	 */
+	public void setStatistics(SearchStatistics statistics) {
+		this.statistics = statistics;
+	}
 
-					}
-				}
-			}
-			for (Node node : nodes) {
-				mappedNodes[motifNode] = node;
-				instances.add(new MotifInstance(mappedNodes));
-				if (saveLinks) {
-					int[] links = motif.getConnectionsOfMotifNode(motifNode);
-					for (int j = 0; j < links.length; j++) {
-						HashSet<Node> link = new HashSet<Node>(2);
-						link.add(mappedNodes[links[j]]);
-						link.add(node);
-						usedLinks.add(link);
-					}
-				}
-			}
-			mappedNodes[motifNode] = null;
-		} else {
-			// for each possible node, map
-			Iterator<Node> nodeIterator = nodes.iterator();
-			symmetryHandler.mappedPositions.add(motifNode);
-			unmappedNodes.remove(motifNode);
-			while (!cancelled && nodeIterator.hasNext()) {
-				Node n = nodeIterator.next();
-				mappedNodes[motifNode] = n;
-				n.used = true;
-				// map graph node to motif node, early termination if graph node
-				// does not support all edges of motif node
-				boolean succesMapping = symmetryHandler.mapNode(motifNode, n);
-				if (succesMapping) {
-					// determine next node to be mapped
-					NodeIterator nextIterator = symmetryHandler.getNextBestIterator(unmappedNodes);
-					if (!cancelled && nextIterator != null) {// && nextIterator.nodes.size() >
-												// 0) {
-						symmetryHandler.mapping[nextIterator.getMotifNodeID()] = nextIterator;
-						// recursively call mapNext
-						mapNext(motif, instances, nextIterator.getMotifNodeID(), mappedNodes, nrMapped + 1, saveLinks);
-						// backtracking
-						symmetryHandler.mapping[nextIterator.getMotifNodeID()] = nextIterator.getParent();
-					}
-				}
-				// backtracking
-				symmetryHandler.removeNodeMapping(motifNode, n);
-				n.used = false;
-				mappedNodes[motifNode] = null;
-			}
-			symmetryHandler.mappedPositions.remove(motifNode);
-			unmappedNodes.add(motifNode);
-		}
+	public SearchStatistics getStatistics() {
+		return statistics;
 	}
 
 	public Set<Set<Node>> getUsedLinks() {
@@ -223,4 +894,8 @@ public class MotifFinder {
 	public void cancel(){
 		this.cancelled = true;
 	}
+
+	boolean isCancelled() {
+		return cancelled;
+	}
 }
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2013 Maarten Houbraken
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Software available at https://github.com/mhoubraken/ISMAGS
+ * Author : Maarten Houbraken (maarten.houbraken@intec.ugent.be)
+ */
+package algorithm;
+
+import network.Node;
+
+/**
+ * Receives the motif instances found by a {@link MotifFinder} while the search
+ * is running, so instances can be processed without keeping them in memory
+ */
+public interface MotifInstanceSink {
+
+	/**
+	 * Called for every motif instance found. The array is reused by the search
+	 * and is only valid during the call: it must not be modified, and should
+	 * be copied if the instance needs to be kept. During a parallel search,
+	 * this method is called concurrently by multiple threads.
+	 *
+	 * @param mapping
+	 *            graph nodes of the instance, indexed by motif node
+	 */
+	void instanceFound(Node[] mapping);
+}
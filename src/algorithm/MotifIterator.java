@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2013 Maarten Houbraken
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Software available at https://github.com/mhoubraken/ISMAGS
+ * Author : Maarten Houbraken (maarten.houbraken@intec.ugent.be)
+ */
+package algorithm;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import datastructures.NodeIterator;
+import motifs.Motif;
+import motifs.MotifInstance;
+import network.Network;
+import network.Node;
+
+/**
+ * Depth-first search through the network that produces the motif instances
+ * on demand. The recursion of {@link MotifSearch} is replaced by an explicit
+ * stack holding, for every depth, the candidates of the motif node mapped at
+ * that depth and the position of the next candidate to be tried. The search
+ * is suspended as soon as an instance is found and resumed by the next call,
+ * so no instances are buffered and no other threads are involved.
+ */
+class MotifIterator implements Iterator<MotifInstance> {
+
+	private MotifFinder finder;
+	private Network network;
+	private SymmetryHandler symmetryHandler;
+	private int[] mappedNodes;
+	private Node[] mappedNodeView;
+	private int lastDepth;
+
+	/**
+	 * Motif node, candidate graph nodes, number of candidates and position of
+	 * the next candidate for every depth of the search
+	 */
+	private int[] stackMotifNode;
+	private int[][] stackCandidates;
+	private int[] stackSize;
+	private int[] stackPosition;
+	/**
+	 * NodeIterator that was installed for the motif node of every depth, its
+	 * parent is restored when the depth is left
+	 */
+	private NodeIterator[] stackIterator;
+	private int depth;
+
+	private MotifInstance next;
+
+	/**
+	 * Creates an iterator over the instances of a motif
+	 *
+	 * @param finder
+	 *            finder that started the search
+	 * @param motif
+	 *            subgraph to be searched for
+	 * @param mapping
+	 *            NodeIterators with the initial candidate lists, owned by this
+	 *            search
+	 * @param motifNode
+	 *            first motif node to be mapped
+	 * @param candidates
+	 *            graph nodes to be mapped on the first motif node
+	 * @param nrCandidates
+	 *            number of candidates
+	 */
+	MotifIterator(MotifFinder finder, Motif motif, NodeIterator[] mapping, int motifNode, int[] candidates,
+			int nrCandidates) {
+		this.finder = finder;
+		this.network = finder.getNetwork();
+		int nrMotifNodes = motif.getNrMotifNodes();
+		mappedNodes = new int[nrMotifNodes];
+		Arrays.fill(mappedNodes, -1);
+		mappedNodeView = new Node[nrMotifNodes];
+		symmetryHandler = new SymmetryHandler(mapping, motif, mappedNodes, network.getCSRGraph(), null);
+		lastDepth = nrMotifNodes - 1;
+		stackMotifNode = new int[nrMotifNodes];
+		stackCandidates = new int[nrMotifNodes][];
+		stackSize = new int[nrMotifNodes];
+		stackPosition = new int[nrMotifNodes];
+		stackIterator = new NodeIterator[nrMotifNodes];
+		depth = -1;
+		push(motifNode, candidates, nrCandidates, null);
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (next == null) {
+			next = advance();
+		}
+		return next != null;
+	}
+
+	@Override
+	public MotifInstance next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		MotifInstance instance = next;
+		next = null;
+		return instance;
+	}
+
+	/**
+	 * Continues the search up to the next motif instance
+	 *
+	 * @return next motif instance, null if the search is finished or was
+	 *         cancelled
+	 */
+	private MotifInstance advance() {
+		while (depth >= 0 && !finder.isCancelled()) {
+			int motifNode = stackMotifNode[depth];
+			int[] candidates = stackCandidates[depth];
+			if (stackPosition[depth] == stackSize[depth]) {
+				pop();
+				continue;
+			}
+			int n = candidates[stackPosition[depth]++];
+			if (depth == lastDepth) {
+				// every candidate of the last motif node completes an instance
+				mappedNodeView[motifNode] = network.getNodeByIndex(n);
+				MotifInstance instance = new MotifInstance(mappedNodeView);
+				mappedNodeView[motifNode] = null;
+				return instance;
+			}
+			mappedNodes[motifNode] = n;
+			mappedNodeView[motifNode] = network.getNodeByIndex(n);
+			// map graph node to motif node, early termination if graph node
+			// does not support all edges of motif node
+			if (symmetryHandler.mapNode(motifNode, n)) {
+				NodeIterator nextIterator = symmetryHandler.getNextBestIterator();
+				if (nextIterator != null) {
+					push(nextIterator.getMotifNodeID(), nextIterator.getNodeSet(), nextIterator.getNrNodes(),
+							nextIterator);
+					continue;
+				}
+			}
+			unmapCurrent();
+		}
+		return null;
+	}
+
+	/**
+	 * Descends to the next depth of the search
+	 *
+	 * @param motifNode
+	 *            motif node to be mapped at the new depth
+	 * @param candidates
+	 *            graph nodes to be mapped on the motif node
+	 * @param size
+	 *            number of candidates
+	 * @param iterator
+	 *            NodeIterator producing the candidates, null for the first
+	 *            motif node
+	 */
+	private void push(int motifNode, int[] candidates, int size, NodeIterator iterator) {
+		depth++;
+		stackMotifNode[depth] = motifNode;
+		stackCandidates[depth] = candidates;
+		stackSize[depth] = size;
+		stackPosition[depth] = 0;
+		stackIterator[depth] = iterator;
+		if (iterator != null) {
+			symmetryHandler.mapping[motifNode] = iterator;
+		}
+		if (depth < lastDepth) {
+			symmetryHandler.mappedPositions[motifNode] = true;
+		}
+	}
+
+	/**
+	 * Leaves the current depth after all its candidates were tried, and undoes
+	 * the mapping of the candidate at the depth above
+	 */
+	private void pop() {
+		int motifNode = stackMotifNode[depth];
+		if (depth < lastDepth) {
+			symmetryHandler.mappedPositions[motifNode] = false;
+		}
+		NodeIterator iterator = stackIterator[depth];
+		if (iterator != null) {
+			symmetryHandler.mapping[motifNode] = iterator.getParent();
+		}
+		stackCandidates[depth] = null;
+		stackIterator[depth] = null;
+		depth--;
+		if (depth >= 0) {
+			unmapCurrent();
+		}
+	}
+
+	/**
+	 * Undoes the mapping of the graph node last tried at the current depth
+	 */
+	private void unmapCurrent() {
+		int motifNode = stackMotifNode[depth];
+		symmetryHandler.removeNodeMapping(motifNode, mappedNodes[motifNode]);
+		mappedNodes[motifNode] = -1;
+		mappedNodeView[motifNode] = null;
+	}
+}
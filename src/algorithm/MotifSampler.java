@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2013 Maarten Houbraken
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Software available at https://github.com/mhoubraken/ISMAGS
+ * Author : Maarten Houbraken (maarten.houbraken@intec.ugent.be)
+ */
+package algorithm;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import datastructures.NodeIterator;
+import datastructures.SymProp;
+import motifs.Motif;
+import network.Network;
+
+/**
+ * Samples random paths through the search tree of {@link MotifSearch}, as in
+ * Knuth's estimator of the size of a backtracking tree. A path starts at a
+ * random candidate of the first motif node and continues with a random
+ * candidate of the next motif node, until only the last motif node is left,
+ * whose candidates all complete an instance. Every candidate is chosen with
+ * probability one over the number of candidates, so weighting the number of
+ * instances at the end of the path by the product of the numbers of
+ * candidates along the path gives an unbiased estimate of the number of
+ * instances. The candidates are the same as those of the exhaustive search,
+ * including its symmetry-breaking constraints.
+ */
+class MotifSampler {
+
+	private SymmetryHandler symmetryHandler;
+	private int[] mappedNodes;
+	private int lastDepth;
+	private int firstMotifNode;
+	private int[] firstCandidates;
+	private int nrFirstCandidates;
+	private Random random;
+	/**
+	 * Motif node mapped at every depth of the current path, and the
+	 * NodeIterator installed for it
+	 */
+	private int[] pathMotifNodes;
+	private NodeIterator[] pathIterators;
+
+	/**
+	 * Creates a sampler
+	 *
+	 * @param motif
+	 *            motif of which instances are counted
+	 * @param network
+	 *            network to be searched
+	 * @param mapping
+	 *            NodeIterators with the initial candidate lists, owned by this
+	 *            sampler
+	 * @param symProp
+	 *            symmetric properties of the motif
+	 * @param firstMotifNode
+	 *            motif node at the root of the search tree
+	 * @param random
+	 *            source of the random choices
+	 */
+	MotifSampler(Motif motif, Network network, NodeIterator[] mapping, SymProp symProp, int firstMotifNode,
+			Random random) {
+		int nrMotifNodes = motif.getNrMotifNodes();
+		mappedNodes = new int[nrMotifNodes];
+		Arrays.fill(mappedNodes, -1);
+		symmetryHandler = new SymmetryHandler(mapping, motif, mappedNodes, network.getCSRGraph(), symProp);
+		lastDepth = nrMotifNodes - 1;
+		this.firstMotifNode = firstMotifNode;
+		firstCandidates = mapping[firstMotifNode].getNodeSet();
+		nrFirstCandidates = mapping[firstMotifNode].getNrNodes();
+		this.random = random;
+		pathMotifNodes = new int[nrMotifNodes];
+		pathIterators = new NodeIterator[nrMotifNodes];
+	}
+
+	/**
+	 * Samples a path through the search tree
+	 *
+	 * @return unbiased estimate of the number of instances
+	 */
+	double sample() {
+		int motifNode = firstMotifNode;
+		int[] candidates = firstCandidates;
+		int nrCandidates = nrFirstCandidates;
+		double weight = 1;
+		int depth = 0;
+		while (true) {
+			weight *= nrCandidates;
+			if (depth == lastDepth || nrCandidates == 0) {
+				break;
+			}
+			int n = candidates[random.nextInt(nrCandidates)];
+			pathMotifNodes[depth] = motifNode;
+			symmetryHandler.mappedPositions[motifNode] = true;
+			mappedNodes[motifNode] = n;
+			depth++;
+			if (!symmetryHandler.mapNode(motifNode, n)) {
+				weight = 0;
+				break;
+			}
+			NodeIterator next = symmetryHandler.getNextBestIterator();
+			if (next == null) {
+				weight = 0;
+				break;
+			}
+			motifNode = next.getMotifNodeID();
+			symmetryHandler.mapping[motifNode] = next;
+			pathIterators[depth] = next;
+			candidates = next.getNodeSet();
+			nrCandidates = next.getNrNodes();
+		}
+		// undo the path, deepest motif node first
+		for (int d = depth; d > 0; d--) {
+			NodeIterator iterator = pathIterators[d];
+			if (iterator != null) {
+				symmetryHandler.mapping[iterator.getMotifNodeID()] = iterator.getParent();
+				pathIterators[d] = null;
+			}
+			int mapped = pathMotifNodes[d - 1];
+			symmetryHandler.removeNodeMapping(mapped, mappedNodes[mapped]);
+			mappedNodes[mapped] = -1;
+			symmetryHandler.mappedPositions[mapped] = false;
+		}
+		return weight;
+	}
+}
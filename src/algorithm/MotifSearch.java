@@ -0,0 +1,441 @@
+/*
+ * Copyright (C) 2013 Maarten Houbraken
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Software available at https://github.com/mhoubraken/ISMAGS
+ * Author : Maarten Houbraken (maarten.houbraken@intec.ugent.be)
+ */
+package algorithm;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+
+import datastructures.NodeIterator;
+import datastructures.SymProp;
+import motifs.Motif;
+import network.Network;
+import network.Node;
+
+/**
+ * Holds the state of one depth-first search through the network. Every
+ * thread taking part in a search owns its own MotifSearch, so the search state
+ * is never shared. The search runs on the node indices of the CSR
+ * representation of the network, Node objects are only looked up for the
+ * instances passed to the sink.
+ */
+class MotifSearch {
+
+	private Motif motif;
+	private Network network;
+	private SymmetryHandler symmetryHandler;
+	private int[] mappedNodes;
+	private Node[] mappedNodeView;
+	private int[] mappedOrder;
+	private int nrRestored = 0;
+	private MotifInstanceSink sink;
+	private long nrInstances = 0;
+	private Set<Set<Node>> usedLinks;
+	private SearchTask owner;
+	private int[] positions;
+	private int[] resumePositions;
+	private Checkpointer checkpointer;
+	private SearchControl control;
+	/**
+	 * Search nodes left in the current lease of the control
+	 */
+	private int nrLeasedSearchNodes = 0;
+	/**
+	 * Set when part of the search tree was skipped because the search stopped
+	 */
+	private boolean aborted = false;
+	private BitSet finishedRoots = new BitSet();
+	private SearchCounters counters;
+
+	/**
+	 * Creates a new search state
+	 *
+	 * @param motif
+	 *            subgraph to be searched for
+	 * @param network
+	 *            network to be searched
+	 * @param mapping
+	 *            NodeIterators with the initial candidate lists, owned by this
+	 *            search
+	 * @param symProp
+	 *            symmetric properties of the motif
+	 * @param sink
+	 *            receiver of the motif instances found, null if instances
+	 *            only need to be counted
+	 * @param usedLinks
+	 *            set to store the links used by instances in, null if links
+	 *            need not be saved
+	 * @param owner
+	 *            fork/join task running this search, to which unexplored parts
+	 *            of the search tree can be handed off, null if the search
+	 *            tree should not be split
+	 * @param control
+	 *            limits of the search, shared by all threads taking part in it
+	 */
+	MotifSearch(Motif motif, Network network, NodeIterator[] mapping, SymProp symProp,
+			MotifInstanceSink sink, Set<Set<Node>> usedLinks, SearchTask owner, SearchControl control) {
+		this.motif = motif;
+		this.network = network;
+		this.sink = sink;
+		this.usedLinks = usedLinks;
+		this.owner = owner;
+		this.control = control;
+		int nrMotifNodes = motif.getNrMotifNodes();
+		mappedNodes = new int[nrMotifNodes];
+		Arrays.fill(mappedNodes, -1);
+		mappedNodeView = new Node[nrMotifNodes];
+		mappedOrder = new int[nrMotifNodes];
+		positions = new int[nrMotifNodes];
+		symmetryHandler = new SymmetryHandler(mapping, motif, mappedNodes, network.getCSRGraph(), symProp);
+	}
+
+	/**
+	 * Restores a partial mapping by mapping the graph nodes to the motif nodes
+	 * in the order in which the mapping was originally built. Afterwards, the
+	 * search state is identical to the state of the search that created the
+	 * partial mapping.
+	 *
+	 * @param motifNodes
+	 *            motif nodes in the order in which they were mapped
+	 * @param graphNodes
+	 *            graph nodes mapped on the motif nodes
+	 */
+	void restore(int[] motifNodes, int[] graphNodes) {
+		for (int i = 0; i < motifNodes.length; i++) {
+			int motifNode = motifNodes[i];
+			mappedOrder[i] = motifNode;
+			mappedNodes[motifNode] = graphNodes[i];
+			mappedNodeView[motifNode] = network.getNodeByIndex(graphNodes[i]);
+			symmetryHandler.mappedPositions[motifNode] = true;
+			symmetryHandler.mapNode(motifNode, graphNodes[i]);
+		}
+		nrRestored = motifNodes.length;
+	}
+
+	/**
+	 * Lets a sequential search start at a checkpointed frontier and write new
+	 * checkpoints while it runs
+	 *
+	 * @param resumePositions
+	 *            frontier to start at, null to search the whole tree
+	 * @param checkpointer
+	 *            writer of the checkpoints, null if no checkpoints are needed
+	 */
+	void setCheckpointing(int[] resumePositions, Checkpointer checkpointer) {
+		this.resumePositions = resumePositions;
+		this.checkpointer = checkpointer;
+	}
+
+	/**
+	 * Lets the search count its work in the statistics
+	 *
+	 * @param statistics
+	 *            statistics to add the counters to, null if the search should
+	 *            not be instrumented
+	 */
+	void setStatistics(SearchStatistics statistics) {
+		counters = statistics == null ? null : new SearchCounters(statistics, motif.getNrMotifNodes());
+		symmetryHandler.counters = counters;
+	}
+
+	/**
+	 * Maps each of the given graph nodes to the next motif node and completes
+	 * the mappings
+	 *
+	 * @param motifNode
+	 *            next motif node to be mapped
+	 * @param candidates
+	 *            graph nodes to be mapped on the motif node
+	 * @param from
+	 *            index of the first candidate (inclusive)
+	 * @param to
+	 *            index of the last candidate (exclusive)
+	 */
+	void search(int motifNode, int[] candidates, int from, int to) {
+		mapNext(motifNode, candidates, from, to, nrRestored);
+		control.returnSearchNodes(nrLeasedSearchNodes);
+		nrLeasedSearchNodes = 0;
+		if (counters != null) {
+			counters.flush();
+		}
+	}
+
+	/**
+	 * Searches the instances in which the given motif nodes are mapped on the
+	 * given graph nodes. The pinned nodes are checked against each other
+	 * instead of being taken from the candidate lists, after which the rest
+	 * of the mapping is completed as usual, so every instance is found with
+	 * the same mapping as by a full search.
+	 *
+	 * @param motifNodes
+	 *            distinct motif nodes to be pinned, at least one
+	 * @param graphNodes
+	 *            graph nodes to be mapped on the motif nodes
+	 */
+	void searchFrom(int[] motifNodes, int[] graphNodes) {
+		int last = motifNodes.length - 1;
+		int nrPinned = 0;
+		boolean consistent = true;
+		while (consistent && nrPinned < last) {
+			consistent = symmetryHandler.canMap(motifNodes[nrPinned], graphNodes[nrPinned]);
+			if (consistent) {
+				pin(motifNodes[nrPinned], graphNodes[nrPinned], nrPinned);
+				consistent = symmetryHandler.mapNode(motifNodes[nrPinned], graphNodes[nrPinned]);
+				nrPinned++;
+			}
+		}
+		if (consistent && symmetryHandler.canMap(motifNodes[last], graphNodes[last])) {
+			if (nrPinned == motif.getNrMotifNodes() - 1) {
+				// the last pinned node completes the instance
+				mapNext(motifNodes[last], new int[] { graphNodes[last] }, 0, 1, nrPinned);
+			} else {
+				pin(motifNodes[last], graphNodes[last], nrPinned);
+				boolean succesMapping = symmetryHandler.mapNode(motifNodes[last], graphNodes[last]);
+				nrPinned++;
+				NodeIterator nextIterator = succesMapping ? symmetryHandler.getNextBestIterator() : null;
+				if (nextIterator != null) {
+					symmetryHandler.mapping[nextIterator.getMotifNodeID()] = nextIterator;
+					mapNext(nextIterator.getMotifNodeID(), nextIterator.getNodeSet(), 0, nextIterator.getNrNodes(),
+							nrPinned);
+					symmetryHandler.mapping[nextIterator.getMotifNodeID()] = nextIterator.getParent();
+				}
+			}
+		}
+		// undo the pins in reverse order
+		for (int i = nrPinned - 1; i >= 0; i--) {
+			int motifNode = mappedOrder[i];
+			symmetryHandler.removeNodeMapping(motifNode, mappedNodes[motifNode]);
+			mappedNodes[motifNode] = -1;
+			mappedNodeView[motifNode] = null;
+			symmetryHandler.mappedPositions[motifNode] = false;
+		}
+		control.returnSearchNodes(nrLeasedSearchNodes);
+		nrLeasedSearchNodes = 0;
+		if (counters != null) {
+			counters.flush();
+		}
+	}
+
+	/**
+	 * Adds a graph node to the partial mapping of a pinned search
+	 */
+	private void pin(int motifNode, int n, int nrMapped) {
+		mappedOrder[nrMapped] = motifNode;
+		mappedNodes[motifNode] = n;
+		mappedNodeView[motifNode] = network.getNodeByIndex(n);
+		symmetryHandler.mappedPositions[motifNode] = true;
+	}
+
+	/**
+	 * Recursively called to map graph nodes to the next motif node
+	 *
+	 * @param motifNode
+	 *            next node to be mapped
+	 * @param nodes
+	 *            candidate graph nodes for the motif node
+	 * @param from
+	 *            index of the first candidate (inclusive)
+	 * @param to
+	 *            index of the last candidate (exclusive)
+	 * @param nrMapped
+	 *            number of nodes already in the partial mapping
+	 */
+	private void mapNext(int motifNode, int[] nodes, int from, int to, int nrMapped) {
+		boolean saveLinks = usedLinks != null;
+		// if the current node mapping will complete the mapping, export the
+		// instances
+		if (nrMapped == motif.getNrMotifNodes() - 1) {
+			if (control.limitsInstances()) {
+				long granted = control.grantInstances(to - from);
+				if (granted < to - from) {
+					aborted = true;
+					to = from + (int) granted;
+				}
+			}
+			nrInstances += to - from;
+			if (counters != null) {
+				counters.searchNodes[nrMapped] += to - from;
+			}
+			if (sink == null) {
+				// only counting, every candidate completes an instance
+				return;
+			}
+			if (saveLinks && to > from) {
+				for (int i = 0; i < motif.getNrMotifNodes(); i++) {
+					if (mappedNodes[i] == -1)
+						continue;
+					int[] links = motif.getConnectionsOfMotifNode(i);
+					for (int j = 0; j < links.length; j++) {
+						if (mappedNodes[links[j]] == -1)
+							continue;
+						 else if( links[j]>i) break;
+						HashSet<Node> link = new HashSet<Node>(2);
+						link.add(mappedNodeView[i]);
+						link.add(mappedNodeView[links[j]]);
+						usedLinks.add(link);
+
+					}
+				}
+			}
+			for (int k = from; k < to; k++) {
+				Node node = network.getNodeByIndex(nodes[k]);
+				mappedNodeView[motifNode] = node;
+				sink.instanceFound(mappedNodeView);
+				if (saveLinks) {
+					int[] links = motif.getConnectionsOfMotifNode(motifNode);
+					for (int j = 0; j < links.length; j++) {
+						HashSet<Node> link = new HashSet<Node>(2);
+						link.add(mappedNodeView[links[j]]);
+						link.add(node);
+						usedLinks.add(link);
+					}
+				}
+			}
+			mappedNodeView[motifNode] = null;
+		} else {
+			// for each possible node, map
+			symmetryHandler.mappedPositions[motifNode] = true;
+			mappedOrder[nrMapped] = motifNode;
+			int end = to;
+			int k = from;
+			if (resumePositions != null) {
+				// skip the part of the tree before the checkpointed frontier
+				k = resumePositions[nrMapped];
+				if (nrMapped == resumePositions.length - 1) {
+					resumePositions = null;
+				}
+			}
+			for (; k < end && !control.isStopped(); k++) {
+				if (nrLeasedSearchNodes == 0) {
+					if (counters != null) {
+						// publish the counters while the search runs
+						counters.flush();
+					}
+					if ((nrLeasedSearchNodes = control.leaseSearchNodes()) == 0) {
+						break;
+					}
+				}
+				nrLeasedSearchNodes--;
+				positions[nrMapped] = k;
+				if (checkpointer != null && nrMapped == motif.getNrMotifNodes() - 2 && checkpointer.isDue()) {
+					checkpointer.checkpoint(positions, nrMapped + 1, nrInstances);
+				}
+				// hand off the second half of the unexplored candidates when
+				// other threads are running out of work
+				if (owner != null && end - k > 1 && SearchTask.needsWork()) {
+					int middle = k + 1 + (end - k - 1) / 2;
+					owner.split(Arrays.copyOf(mappedOrder, nrMapped), getPartialMapping(nrMapped), motifNode, nodes,
+							middle, end, positions[0]);
+					end = middle;
+				}
+				int n = nodes[k];
+				mappedNodes[motifNode] = n;
+				mappedNodeView[motifNode] = network.getNodeByIndex(n);
+				// map graph node to motif node, early termination if graph node
+				// does not support all edges of motif node
+				boolean succesMapping;
+				if (counters == null) {
+					succesMapping = symmetryHandler.mapNode(motifNode, n);
+				} else {
+					long start = System.nanoTime();
+					succesMapping = symmetryHandler.mapNode(motifNode, n);
+					counters.mapNodeTime[nrMapped] += System.nanoTime() - start;
+					counters.searchNodes[nrMapped]++;
+					if (!succesMapping) {
+						counters.mapNodeFailures[nrMapped]++;
+					}
+				}
+				if (succesMapping) {
+					// determine next node to be mapped
+					NodeIterator nextIterator = symmetryHandler.getNextBestIterator();
+					if (control.isStopped()) {
+						aborted = true;
+					} else if (nextIterator != null) {
+						symmetryHandler.mapping[nextIterator.getMotifNodeID()] = nextIterator;
+						// recursively call mapNext
+						mapNext(nextIterator.getMotifNodeID(), nextIterator.getNodeSet(), 0, nextIterator.getNrNodes(),
+								nrMapped + 1);
+						// backtracking
+						symmetryHandler.mapping[nextIterator.getMotifNodeID()] = nextIterator.getParent();
+					}
+				}
+				// backtracking
+				symmetryHandler.removeNodeMapping(motifNode, n);
+				mappedNodes[motifNode] = -1;
+				mappedNodeView[motifNode] = null;
+				if (nrMapped == 0 && !aborted) {
+					finishedRoots.set(k);
+				}
+			}
+			if (k < end) {
+				aborted = true;
+			}
+			symmetryHandler.mappedPositions[motifNode] = false;
+		}
+	}
+
+	/**
+	 * Returns the number of motif instances found by this search
+	 *
+	 * @return number of instances
+	 */
+	long getNrInstances() {
+		return nrInstances;
+	}
+
+	/**
+	 * Checks whether part of the search tree was skipped because the search
+	 * stopped
+	 *
+	 * @return true if not all instances below the initial partial mapping
+	 *         were found
+	 */
+	boolean isAborted() {
+		return aborted;
+	}
+
+	/**
+	 * Returns the root candidates of which this search explored the whole
+	 * search tree, apart from the parts handed off to other tasks
+	 *
+	 * @return indices of the finished candidates of the first motif node,
+	 *         empty if the search started from a partial mapping
+	 */
+	BitSet getFinishedRoots() {
+		return finishedRoots;
+	}
+
+	/**
+	 * Returns the graph nodes of the partial mapping in the order in which
+	 * they were mapped
+	 *
+	 * @param nrMapped
+	 *            number of nodes in the partial mapping
+	 * @return copy of the partial mapping
+	 */
+	private int[] getPartialMapping(int nrMapped) {
+		int[] partialMapping = new int[nrMapped];
+		for (int i = 0; i < nrMapped; i++) {
+			partialMapping[i] = mappedNodes[mappedOrder[i]];
+		}
+		return partialMapping;
+	}
+}
@@ -0,0 +1,421 @@
+/*
+ * Copyright (C) 2013 Maarten Houbraken
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Software available at https://github.com/mhoubraken/ISMAGS
+ * Author : Maarten Houbraken (maarten.houbraken@intec.ugent.be)
+ */
+package algorithm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import datastructures.SymProp;
+import motifs.Motif;
+import motifs.MotifLink;
+
+/**
+ * Trie of motifs searched together. Every motif is matched in a static order
+ * of its motif nodes, and every trie node stands for a position in that
+ * order, described by the motif link IDs linking the earlier positions to it.
+ * Motifs whose orders start with the same positions share the path of these
+ * positions, so the partial mappings of the shared prefix are enumerated once
+ * before the search branches out per motif.
+ * <p>
+ * The symmetry-breaking constraints of the motifs are translated to
+ * constraints between positions. A constraint is enforced at the first trie
+ * node on the path at which all motifs below it have the constraint: as a
+ * bound on the candidates if it involves the position of the node, otherwise
+ * as a check when the node is entered. Constraints a terminating motif does
+ * not share with the other motifs at its trie node are checked for every
+ * instance of that motif.
+ */
+class MotifTrie {
+
+	/**
+	 * Maximal number of trie nodes visited while looking for the longest
+	 * shared prefix of a motif
+	 */
+	private static final int MAX_VISITS = 100000;
+
+	int depth;
+	/**
+	 * Motif link ID of the link from every earlier position to this position,
+	 * -1 if they are not linked
+	 */
+	private int[] links;
+	MotifTrie[] children = new MotifTrie[0];
+	/**
+	 * Earlier positions linked to this position and the motif link IDs of the
+	 * links, whose neighbour lists are intersected to obtain the candidates
+	 */
+	int[] linkedPositions;
+	int[] linkedIDs;
+	/**
+	 * Earlier positions whose graph nodes bound the candidates from below and
+	 * from above
+	 */
+	int[] lowerBounds = new int[0];
+	int[] upperBounds = new int[0];
+	/**
+	 * Pairs of earlier positions of which the first graph node should be
+	 * smaller than the second, checked when the node is entered
+	 */
+	int[] checks = new int[0];
+	/**
+	 * Motifs of which all positions are mapped at this node, and for each of
+	 * them the pairs of positions checked for every instance
+	 */
+	int[] terminals = new int[0];
+	int[][] terminalChecks = new int[0][];
+	private List<Integer> motifs = new ArrayList<Integer>();
+
+	private MotifTrie(int[] links) {
+		this.links = links;
+		depth = links.length;
+		int nrLinked = 0;
+		for (int link : links) {
+			if (link >= 0) {
+				nrLinked++;
+			}
+		}
+		linkedPositions = new int[nrLinked];
+		linkedIDs = new int[nrLinked];
+		nrLinked = 0;
+		for (int p = 0; p < links.length; p++) {
+			if (links[p] >= 0) {
+				linkedPositions[nrLinked] = p;
+				linkedIDs[nrLinked++] = links[p];
+			}
+		}
+	}
+
+	/**
+	 * Builds the trie of a list of motifs
+	 *
+	 * @param motifs
+	 *            connected motifs to be searched
+	 * @param symProps
+	 *            symmetric properties of every motif
+	 * @param orders
+	 *            receives for every motif the motif node at every position
+	 * @return root of the trie, standing for the first position
+	 */
+	static MotifTrie build(List<Motif> motifs, List<SymProp> symProps, int[][] orders) {
+		MotifTrie root = new MotifTrie(new int[0]);
+		List<Set<Integer>> constraints = new ArrayList<Set<Integer>>();
+		for (int i = 0; i < motifs.size(); i++) {
+			int[][] linkIDs = getLinkIDs(motifs.get(i));
+			int[] order = findOrder(root, linkIDs);
+			MotifTrie node = root;
+			node.motifs.add(i);
+			for (int p = 1; p < order.length; p++) {
+				node = node.getChild(getLinks(linkIDs, order, p));
+				node.motifs.add(i);
+			}
+			node.terminals = Arrays.copyOf(node.terminals, node.terminals.length + 1);
+			node.terminals[node.terminals.length - 1] = i;
+			orders[i] = order;
+			constraints.add(getConstraints(symProps.get(i), order));
+		}
+		root.assignConstraints(new HashSet<Integer>(), constraints);
+		return root;
+	}
+
+	/**
+	 * Returns the child standing for a next position, adding it if needed
+	 */
+	private MotifTrie getChild(int[] links) {
+		for (MotifTrie child : children) {
+			if (Arrays.equals(child.links, links)) {
+				return child;
+			}
+		}
+		MotifTrie child = new MotifTrie(links);
+		children = Arrays.copyOf(children, children.length + 1);
+		children[children.length - 1] = child;
+		return child;
+	}
+
+	/**
+	 * Returns the motif link ID of the link between every pair of motif
+	 * nodes, -1 if they are not linked
+	 */
+	private static int[][] getLinkIDs(Motif motif) {
+		int nrMotifNodes = motif.getNrMotifNodes();
+		int[][] linkIDs = new int[nrMotifNodes][nrMotifNodes];
+		for (int i = 0; i < nrMotifNodes; i++) {
+			Arrays.fill(linkIDs[i], -1);
+			int[] connections = motif.getConnectionsOfMotifNode(i);
+			MotifLink[] links = motif.getLinksOfMotifNode(i);
+			for (int j = 0; j < connections.length; j++) {
+				linkIDs[i][connections[j]] = links[j].getMotifLinkID();
+			}
+		}
+		return linkIDs;
+	}
+
+	/**
+	 * Returns the motif link IDs of the links from the motif nodes at the
+	 * positions before p to the motif node at position p
+	 */
+	private static int[] getLinks(int[][] linkIDs, int[] order, int p) {
+		int[] links = new int[p];
+		for (int q = 0; q < p; q++) {
+			links[q] = linkIDs[order[q]][order[p]];
+		}
+		return links;
+	}
+
+	/**
+	 * Determines the order in which the motif nodes of a motif are matched.
+	 * The order starts with the longest prefix found in the trie; the other
+	 * motif nodes follow by decreasing number of links to the motif nodes
+	 * already in the order, and then by decreasing degree.
+	 *
+	 * @param root
+	 *            root of the trie
+	 * @param linkIDs
+	 *            links of the motif
+	 * @return motif node at every position
+	 */
+	private static int[] findOrder(MotifTrie root, int[][] linkIDs) {
+		int nrMotifNodes = linkIDs.length;
+		Integer[] byDegree = new Integer[nrMotifNodes];
+		final int[] degree = new int[nrMotifNodes];
+		for (int i = 0; i < nrMotifNodes; i++) {
+			byDegree[i] = i;
+			for (int linkID : linkIDs[i]) {
+				if (linkID >= 0) {
+					degree[i]++;
+				}
+			}
+		}
+		Arrays.sort(byDegree, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return degree[b] != degree[a] ? degree[b] - degree[a] : a - b;
+			}
+		});
+		PrefixSearch prefixSearch = new PrefixSearch(linkIDs, byDegree);
+		for (int m : byDegree) {
+			prefixSearch.order[0] = m;
+			prefixSearch.used[m] = true;
+			prefixSearch.explore(root, 1);
+			prefixSearch.used[m] = false;
+		}
+		int[] order = Arrays.copyOf(prefixSearch.bestOrder, nrMotifNodes);
+		boolean[] used = new boolean[nrMotifNodes];
+		for (int p = 0; p < prefixSearch.bestOrder.length; p++) {
+			used[order[p]] = true;
+		}
+		for (int p = prefixSearch.bestOrder.length; p < nrMotifNodes; p++) {
+			int best = -1;
+			int bestLinks = 0;
+			for (int m : byDegree) {
+				if (used[m]) {
+					continue;
+				}
+				int nrLinks = 0;
+				for (int q = 0; q < p; q++) {
+					if (linkIDs[order[q]][m] >= 0) {
+						nrLinks++;
+					}
+				}
+				if (nrLinks > bestLinks) {
+					best = m;
+					bestLinks = nrLinks;
+				}
+			}
+			if (best == -1) {
+				throw new IllegalArgumentException("Motifs searched together should be connected");
+			}
+			order[p] = best;
+			used[best] = true;
+		}
+		return order;
+	}
+
+	/**
+	 * Depth-first search for the longest path in the trie the motif can
+	 * follow
+	 */
+	private static class PrefixSearch {
+
+		private int[][] linkIDs;
+		private Integer[] byDegree;
+		private int[] order;
+		private boolean[] used;
+		private int[] bestOrder = new int[0];
+		private int nrVisits;
+
+		PrefixSearch(int[][] linkIDs, Integer[] byDegree) {
+			this.linkIDs = linkIDs;
+			this.byDegree = byDegree;
+			order = new int[linkIDs.length];
+			used = new boolean[linkIDs.length];
+		}
+
+		/**
+		 * Tries to extend the order, of which depth positions are filled and
+		 * follow the path to the trie node
+		 */
+		void explore(MotifTrie node, int depth) {
+			nrVisits++;
+			if (depth > bestOrder.length) {
+				bestOrder = Arrays.copyOf(order, depth);
+			}
+			if (depth == order.length || nrVisits > MAX_VISITS) {
+				return;
+			}
+			for (MotifTrie child : node.children) {
+				for (int m : byDegree) {
+					if (!used[m] && follows(child, m, depth)) {
+						order[depth] = m;
+						used[m] = true;
+						explore(child, depth + 1);
+						used[m] = false;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Checks whether the motif node has the links of the trie node to the
+		 * motif nodes in the order
+		 */
+		private boolean follows(MotifTrie child, int m, int depth) {
+			for (int q = 0; q < depth; q++) {
+				if (linkIDs[order[q]][m] != child.links[q]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Translates the symmetry-breaking constraints of a motif to pairs of
+	 * positions, encoded by {@link #encode(int, int)}
+	 */
+	private static Set<Integer> getConstraints(SymProp symProp, int[] order) {
+		int[] position = new int[order.length];
+		for (int p = 0; p < order.length; p++) {
+			position[order[p]] = p;
+		}
+		Set<Integer> constraints = new HashSet<Integer>();
+		for (Map.Entry<Integer, Set<Integer>> entry : symProp.getSmaller().entrySet()) {
+			for (int larger : entry.getValue()) {
+				constraints.add(encode(position[entry.getKey()], position[larger]));
+			}
+		}
+		return constraints;
+	}
+
+	/**
+	 * Encodes a constraint requiring the graph node at a position to be
+	 * smaller than the graph node at another position
+	 */
+	private static int encode(int smaller, int larger) {
+		return smaller << 16 | larger;
+	}
+
+	/**
+	 * Assigns the constraints of the motifs to the trie nodes
+	 *
+	 * @param enforced
+	 *            constraints enforced at the ancestors of this node
+	 * @param constraints
+	 *            constraints of every motif
+	 */
+	private void assignConstraints(Set<Integer> enforced, List<Set<Integer>> constraints) {
+		Set<Integer> common = null;
+		for (int motif : motifs) {
+			Set<Integer> available = new HashSet<Integer>();
+			for (int constraint : constraints.get(motif)) {
+				if (Math.max(constraint >>> 16, constraint & 0xffff) <= depth) {
+					available.add(constraint);
+				}
+			}
+			if (common == null) {
+				common = available;
+			} else {
+				common.retainAll(available);
+			}
+		}
+		List<Integer> lower = new ArrayList<Integer>();
+		List<Integer> upper = new ArrayList<Integer>();
+		List<Integer> pairs = new ArrayList<Integer>();
+		for (int constraint : common) {
+			if (enforced.contains(constraint)) {
+				continue;
+			}
+			int smaller = constraint >>> 16;
+			int larger = constraint & 0xffff;
+			if (larger == depth) {
+				lower.add(smaller);
+			} else if (smaller == depth) {
+				upper.add(larger);
+			} else {
+				pairs.add(smaller);
+				pairs.add(larger);
+			}
+		}
+		lowerBounds = toArray(lower);
+		upperBounds = toArray(upper);
+		checks = toArray(pairs);
+		terminalChecks = new int[terminals.length][];
+		for (int i = 0; i < terminals.length; i++) {
+			List<Integer> remaining = new ArrayList<Integer>();
+			for (int constraint : constraints.get(terminals[i])) {
+				if (!common.contains(constraint)) {
+					remaining.add(constraint >>> 16);
+					remaining.add(constraint & 0xffff);
+				}
+			}
+			terminalChecks[i] = toArray(remaining);
+		}
+		for (MotifTrie child : children) {
+			child.assignConstraints(common, constraints);
+		}
+		motifs = null;
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		int[] array = new int[list.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = list.get(i);
+		}
+		return array;
+	}
+
+	/**
+	 * Returns the largest depth of the trie
+	 *
+	 * @return number of positions of the longest motif
+	 */
+	int getHeight() {
+		int height = depth + 1;
+		for (MotifTrie child : children) {
+			height = Math.max(height, child.getHeight());
+		}
+		return height;
+	}
+}
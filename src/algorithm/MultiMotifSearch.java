@@ -0,0 +1,376 @@
+/*
+ * Copyright (C) 2013 Maarten Houbraken
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Software available at https://github.com/mhoubraken/ISMAGS
+ * Author : Maarten Houbraken (maarten.houbraken@intec.ugent.be)
+ */
+package algorithm;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveTask;
+
+import datastructures.Intersection;
+import datastructures.NodeBitmap;
+import network.CSRGraph;
+import network.Network;
+import network.Node;
+
+/**
+ * Depth-first search for several motifs at once, following a
+ * {@link MotifTrie}. The candidates for a position are obtained by
+ * intersecting the neighbour lists of the graph nodes at the linked earlier
+ * positions, so a partial mapping of a prefix shared by several motifs is
+ * found once, after which the search continues for every child of the trie
+ * node.
+ */
+class MultiMotifSearch {
+
+	private MotifFinder finder;
+	private Network network;
+	private CSRGraph graph;
+	private MotifTrie root;
+	private int[][] orders;
+	private MotifInstanceSink[] sinks;
+	private Node[][] views;
+	private long[] nrInstances;
+	/**
+	 * Graph node mapped at every position
+	 */
+	private int[] mapped;
+	/**
+	 * Candidates for every depth, and the neighbour lists intersected to
+	 * obtain them
+	 */
+	private int[][] candidates;
+	private int[][] listStart;
+	private int[][] listEnd;
+	private int[][] listOrder;
+
+	/**
+	 * Creates a search for several motifs
+	 *
+	 * @param finder
+	 *            finder that started the search
+	 * @param motifs
+	 *            trie of the motifs to be searched for
+	 * @param orders
+	 *            motif node at every position, for every motif
+	 * @param sinks
+	 *            receiver of the instances of every motif, null for the
+	 *            motifs of which instances only need to be counted
+	 */
+	MultiMotifSearch(MotifFinder finder, MotifTrie motifs, int[][] orders, MotifInstanceSink[] sinks) {
+		this.finder = finder;
+		this.root = motifs;
+		this.orders = orders;
+		this.sinks = sinks;
+		network = finder.getNetwork();
+		graph = network.getCSRGraph();
+		nrInstances = new long[orders.length];
+		views = new Node[orders.length][];
+		for (int i = 0; i < orders.length; i++) {
+			views[i] = new Node[orders[i].length];
+		}
+		int height = motifs.getHeight();
+		mapped = new int[height];
+		candidates = new int[height][16];
+		listStart = new int[height][height];
+		listEnd = new int[height][height];
+		listOrder = new int[height][height];
+	}
+
+	/**
+	 * Searches the instances of the motifs of which the first position is
+	 * mapped on a range of candidates
+	 *
+	 * @param first
+	 *            candidates for the first position
+	 * @param from
+	 *            first candidate to be mapped
+	 * @param to
+	 *            end of the range of candidates to be mapped, exclusive
+	 */
+	void search(int[] first, int from, int to) {
+		visit(root, from == 0 ? first : Arrays.copyOfRange(first, from, to), to - from);
+	}
+
+	/**
+	 * Returns the number of instances found of every motif
+	 *
+	 * @return number of instances, in the order of the motifs
+	 */
+	long[] getNrInstances() {
+		return nrInstances;
+	}
+
+	/**
+	 * Determines the candidates for the first position: the graph nodes
+	 * having a link with a motif link ID linking the first position to the
+	 * second, or all graph nodes if a motif has a single motif node
+	 */
+	int[] getFirstCandidates() {
+		int nrNodes = graph.getNrNodes();
+		boolean[] candidate = new boolean[nrNodes];
+		if (root.terminals.length > 0) {
+			Arrays.fill(candidate, true);
+		}
+		for (MotifTrie child : root.children) {
+			for (int node : graph.getNodesWithLink(child.linkedIDs[0])) {
+				candidate[node] = true;
+			}
+		}
+		int[] first = new int[nrNodes];
+		int size = 0;
+		for (int node = 0; node < nrNodes; node++) {
+			if (candidate[node]) {
+				first[size++] = node;
+			}
+		}
+		return Arrays.copyOf(first, size);
+	}
+
+	/**
+	 * Maps each candidate to the position of a trie node, reports the
+	 * instances of the motifs terminating at the node and continues the
+	 * search for its children
+	 *
+	 * @param node
+	 *            trie node
+	 * @param nodes
+	 *            candidate graph nodes for the position of the trie node
+	 * @param size
+	 *            number of candidates
+	 */
+	private void visit(MotifTrie node, int[] nodes, int size) {
+		int depth = node.depth;
+		boolean perCandidate = false;
+		for (int i = 0; i < node.terminals.length; i++) {
+			int motif = node.terminals[i];
+			if (sinks[motif] == null && node.terminalChecks[i].length == 0) {
+				// only counting, every candidate completes an instance
+				nrInstances[motif] += size;
+			} else {
+				perCandidate = true;
+			}
+		}
+		if (!perCandidate && node.children.length == 0) {
+			return;
+		}
+		for (int k = 0; k < size && !finder.isCancelled(); k++) {
+			mapped[depth] = nodes[k];
+			if (perCandidate) {
+				report(node);
+			}
+			for (MotifTrie child : node.children) {
+				if (!holds(child.checks)) {
+					continue;
+				}
+				int nrCandidates = intersect(child);
+				if (nrCandidates > 0) {
+					visit(child, candidates[child.depth], nrCandidates);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reports the instance completed by the current mapping to the motifs
+	 * terminating at the trie node that check their constraints per instance
+	 * or keep their instances
+	 */
+	private void report(MotifTrie node) {
+		for (int i = 0; i < node.terminals.length; i++) {
+			int motif = node.terminals[i];
+			if (sinks[motif] == null && node.terminalChecks[i].length == 0) {
+				continue;
+			}
+			if (!holds(node.terminalChecks[i])) {
+				continue;
+			}
+			nrInstances[motif]++;
+			if (sinks[motif] != null) {
+				Node[] view = views[motif];
+				int[] order = orders[motif];
+				for (int p = 0; p < order.length; p++) {
+					view[order[p]] = network.getNodeByIndex(mapped[p]);
+				}
+				sinks[motif].instanceFound(view);
+			}
+		}
+	}
+
+	/**
+	 * Checks pairs of positions of which the first graph node should be
+	 * smaller than the second
+	 */
+	private boolean holds(int[] pairs) {
+		for (int i = 0; i < pairs.length; i += 2) {
+			if (mapped[pairs[i]] >= mapped[pairs[i + 1]]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Determines the candidates for the position of a trie node by
+	 * intersecting the neighbour lists of the linked positions, from small to
+	 * large, within the bounds of the symmetry-breaking constraints. Lists of
+	 * high degree nodes are probed in their bitmap.
+	 *
+	 * @param node
+	 *            trie node
+	 * @return number of candidates, stored at the start of the candidates of
+	 *         the depth of the node
+	 */
+	private int intersect(MotifTrie node) {
+		int depth = node.depth;
+		int min = -1;
+		for (int p : node.lowerBounds) {
+			min = Math.max(min, mapped[p]);
+		}
+		int max = Integer.MAX_VALUE;
+		for (int p : node.upperBounds) {
+			max = Math.min(max, mapped[p]);
+		}
+		if (min >= max) {
+			return 0;
+		}
+		int[] start = listStart[depth];
+		int[] end = listEnd[depth];
+		int[] order = listOrder[depth];
+		int nrLists = node.linkedPositions.length;
+		for (int i = 0; i < nrLists; i++) {
+			int graphNode = mapped[node.linkedPositions[i]];
+			start[i] = graph.getStart(node.linkedIDs[i], graphNode);
+			end[i] = graph.getEnd(node.linkedIDs[i], graphNode);
+			int size = end[i] - start[i];
+			int j = i;
+			while (j > 0 && end[order[j - 1]] - start[order[j - 1]] > size) {
+				order[j] = order[j - 1];
+				j--;
+			}
+			order[j] = i;
+		}
+		int smallest = order[0];
+		int[] list = graph.getTargets(node.linkedIDs[smallest], mapped[node.linkedPositions[smallest]]);
+		int from = Intersection.upperBound(list, start[smallest], end[smallest], min);
+		int to = Intersection.lowerBound(list, from, end[smallest], max);
+		if (from == to) {
+			return 0;
+		}
+		if (candidates[depth].length < to - from) {
+			candidates[depth] = new int[Math.max(to - from, 2 * candidates[depth].length)];
+		}
+		int[] result = candidates[depth];
+		int size = to - from;
+		System.arraycopy(list, from, result, 0, size);
+		for (int i = 1; i < nrLists && size > 0; i++) {
+			int l = order[i];
+			int graphNode = mapped[node.linkedPositions[l]];
+			NodeBitmap bitmap = graph.getBitmap(node.linkedIDs[l], graphNode);
+			if (bitmap != null) {
+				size = bitmap.retain(result, size);
+			} else {
+				size = Intersection.intersect(result, 0, size, graph.getTargets(node.linkedIDs[l], graphNode),
+						start[l], end[l], result);
+			}
+		}
+		// remove the nodes that are already mapped
+		int nrCandidates = 0;
+		f: for (int k = 0; k < size; k++) {
+			int candidate = result[k];
+			for (int p = 0; p < depth; p++) {
+				if (mapped[p] == candidate) {
+					continue f;
+				}
+			}
+			result[nrCandidates++] = candidate;
+		}
+		return nrCandidates;
+	}
+
+	/**
+	 * Fork/join task searching the instances of which the first position is
+	 * mapped on a range of candidates. Ranges larger than the granularity are
+	 * split in two halves, every range is searched with its own state.
+	 */
+	static class Task extends RecursiveTask<long[]> {
+
+		private static final long serialVersionUID = 1L;
+
+		private MotifFinder finder;
+		private MotifTrie motifs;
+		private int[][] orders;
+		private MotifInstanceSink[] sinks;
+		private int[] first;
+		private int from;
+		private int to;
+		private int granularity;
+
+		/**
+		 * Creates a task
+		 *
+		 * @param finder
+		 *            finder that started the search
+		 * @param motifs
+		 *            trie of the motifs to be searched for
+		 * @param orders
+		 *            motif node at every position, for every motif
+		 * @param sinks
+		 *            thread-safe receiver of the instances of every motif, null
+		 *            for the motifs of which instances only need to be counted
+		 * @param first
+		 *            candidates for the first position
+		 * @param from
+		 *            first candidate of the range
+		 * @param to
+		 *            end of the range, exclusive
+		 * @param granularity
+		 *            maximal number of candidates searched without splitting
+		 */
+		Task(MotifFinder finder, MotifTrie motifs, int[][] orders, MotifInstanceSink[] sinks, int[] first,
+				int from, int to, int granularity) {
+			this.finder = finder;
+			this.motifs = motifs;
+			this.orders = orders;
+			this.sinks = sinks;
+			this.first = first;
+			this.from = from;
+			this.to = to;
+			this.granularity = granularity;
+		}
+
+		@Override
+		protected long[] compute() {
+			if (to - from > granularity) {
+				int middle = (from + to) >>> 1;
+				Task second = new Task(finder, motifs, orders, sinks, first, middle, to, granularity);
+				second.fork();
+				long[] nrInstances = new Task(finder, motifs, orders, sinks, first, from, middle, granularity)
+						.compute();
+				long[] secondInstances = second.join();
+				for (int i = 0; i < nrInstances.length; i++) {
+					nrInstances[i] += secondInstances[i];
+				}
+				return nrInstances;
+			}
+			MultiMotifSearch search = new MultiMotifSearch(finder, motifs, orders, sinks);
+			search.search(first, from, to);
+			return search.getNrInstances();
+		}
+	}
+}
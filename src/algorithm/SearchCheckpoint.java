@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2013 Maarten Houbraken
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Software available at https://github.com/mhoubraken/ISMAGS
+ * Author : Maarten Houbraken (maarten.houbraken@intec.ugent.be)
+ */
+package algorithm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+import motifs.Motif;
+import motifs.MotifLink;
+import network.Network;
+
+/**
+ * Frontier of a sequential search, from which the search can be resumed. The
+ * search is deterministic, so the frontier is fully described by the
+ * position in the candidate list of every depth of the search tree, the first
+ * position being the index of the candidate of the first motif node. All
+ * instances in the part of the search tree before the frontier have been
+ * found. The checkpoint also holds fingerprints of the network and the motif,
+ * to make sure a search is resumed on the same input.
+ */
+public class SearchCheckpoint {
+
+	private static final int MAGIC = 0x49534d43;
+	private static final int VERSION = 3;
+
+	private long networkFingerprint;
+	private long motifFingerprint;
+	private long nrInstances;
+	private int[] positions;
+
+	/**
+	 * Creates a checkpoint
+	 *
+	 * @param networkFingerprint
+	 *            fingerprint of the network searched
+	 * @param motifFingerprint
+	 *            fingerprint of the motif searched for
+	 * @param nrInstances
+	 *            number of instances found before the frontier
+	 * @param positions
+	 *            position of the candidate being explored at every depth,
+	 *            starting at the first motif node
+	 */
+	SearchCheckpoint(long networkFingerprint, long motifFingerprint, long nrInstances, int[] positions) {
+		this.networkFingerprint = networkFingerprint;
+		this.motifFingerprint = motifFingerprint;
+		this.nrInstances = nrInstances;
+		this.positions = positions;
+	}
+
+	/**
+	 * Returns the number of instances found before the frontier
+	 *
+	 * @return number of instances
+	 */
+	public long getNrInstances() {
+		return nrInstances;
+	}
+
+	int[] getPositions() {
+		return positions;
+	}
+
+	/**
+	 * Checks whether this checkpoint was made by a search for the motif in the
+	 * network
+	 *
+	 * @param network
+	 *            network to be searched
+	 * @param motif
+	 *            motif to be searched for
+	 * @return true if the search can be resumed from this checkpoint
+	 */
+	public boolean matches(Network network, Motif motif) {
+		return networkFingerprint == network.getFingerprint() && motifFingerprint == fingerprint(motif)
+				&& positions.length < motif.getNrMotifNodes();
+	}
+
+	/**
+	 * Writes the checkpoint to a file. The checkpoint is first written to a
+	 * temporary file that replaces the file afterwards, so the file always
+	 * holds a complete checkpoint.
+	 *
+	 * @param file
+	 *            file to write to
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public void write(File file) throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(networkFingerprint);
+			out.writeLong(motifFingerprint);
+			out.writeLong(nrInstances);
+			out.writeInt(positions.length);
+			for (int position : positions) {
+				out.writeInt(position);
+			}
+		} finally {
+			out.close();
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Reads a checkpoint from a file
+	 *
+	 * @param file
+	 *            file written by {@link #write(File)}
+	 * @return checkpoint stored in the file
+	 * @throws IOException
+	 *             if the file cannot be read or is not a checkpoint
+	 */
+	public static SearchCheckpoint read(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("Not a search checkpoint: " + file);
+			}
+			long networkFingerprint = in.readLong();
+			long motifFingerprint = in.readLong();
+			long nrInstances = in.readLong();
+			int[] positions = new int[in.readInt()];
+			for (int i = 0; i < positions.length; i++) {
+				positions[i] = in.readInt();
+			}
+			return new SearchCheckpoint(networkFingerprint, motifFingerprint, nrInstances, positions);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Computes a hash of the structure of a motif: the connections of every
+	 * motif node and their motif link IDs
+	 *
+	 * @param motif
+	 *            motif to be hashed
+	 * @return fingerprint of the motif
+	 */
+	static long fingerprint(Motif motif) {
+		long hash = motif.getNrMotifNodes();
+		for (int i = 0; i < motif.getNrMotifNodes(); i++) {
+			int[] connections = motif.getConnectionsOfMotifNode(i);
+			MotifLink[] links = motif.getLinksOfMotifNode(i);
+			for (int j = 0; j < connections.length; j++) {
+				hash = hash * 31 + connections[j];
+				hash = hash * 31 + links[j].getMotifLinkID();
+			}
+			hash = hash * 31 - 1;
+		}
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		return nrInstances + " instances, frontier " + Arrays.toString(positions);
+	}
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2013 Maarten Houbraken
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Software available at https://github.com/mhoubraken/ISMAGS
+ * Author : Maarten Houbraken (maarten.houbraken@intec.ugent.be)
+ */
+package algorithm;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import algorithm.SearchResult.Status;
+
+/**
+ * Enforces the {@link SearchLimits} of one search, shared by all threads
+ * taking part in it. Searches take leases of search nodes and only come back
+ * for a new lease when they have used up the previous one, so the deadline,
+ * the search node limit and cancellation are checked once per lease instead
+ * of once per search node. The instance limit is checked whenever instances
+ * are found, but only if the search has one. The reason the search stopped is
+ * volatile, so every thread sees it at its next candidate.
+ */
+class SearchControl {
+
+	/**
+	 * Maximal number of search nodes in a lease
+	 */
+	static final int LEASE_SIZE = 1024;
+
+	private MotifFinder finder;
+	private long deadline;
+	private boolean hasDeadline;
+	/**
+	 * Search nodes and instances that can still be handed out, null if not
+	 * limited
+	 */
+	private AtomicLong remainingSearchNodes;
+	private AtomicLong remainingInstances;
+	private AtomicLong nrSearchNodes = new AtomicLong();
+	private volatile Status stopReason;
+
+	/**
+	 * Starts controlling a search
+	 *
+	 * @param finder
+	 *            finder running the search, which can be cancelled
+	 * @param limits
+	 *            limits of the search, the time limit starts now
+	 */
+	SearchControl(MotifFinder finder, SearchLimits limits) {
+		this.finder = finder;
+		hasDeadline = limits.getTimeLimit() > 0;
+		deadline = System.nanoTime() + limits.getTimeLimit() * 1000000;
+		if (limits.getMaxSearchNodes() > 0) {
+			remainingSearchNodes = new AtomicLong(limits.getMaxSearchNodes());
+		}
+		if (limits.getMaxInstances() > 0) {
+			remainingInstances = new AtomicLong(limits.getMaxInstances());
+		}
+	}
+
+	/**
+	 * Checks whether the search should stop
+	 *
+	 * @return true if the search was cancelled or reached a limit
+	 */
+	boolean isStopped() {
+		return stopReason != null;
+	}
+
+	/**
+	 * Stops the search, unless it was already stopped for another reason
+	 *
+	 * @param reason
+	 *            reason the search stops
+	 */
+	synchronized void stop(Status reason) {
+		if (stopReason == null) {
+			stopReason = reason;
+		}
+	}
+
+	/**
+	 * Hands out a lease of search nodes, after checking whether the search
+	 * should stop
+	 *
+	 * @return number of search nodes that may be expanded, 0 if the search
+	 *         should stop
+	 */
+	int leaseSearchNodes() {
+		if (finder.isCancelled()) {
+			stop(Status.CANCELLED);
+		} else if (hasDeadline && System.nanoTime() - deadline >= 0) {
+			stop(Status.TIME_LIMIT_REACHED);
+		}
+		if (stopReason != null) {
+			return 0;
+		}
+		int lease = LEASE_SIZE;
+		if (remainingSearchNodes != null) {
+			lease = (int) take(remainingSearchNodes, LEASE_SIZE);
+			if (lease == 0) {
+				stop(Status.SEARCH_NODE_LIMIT_REACHED);
+				return 0;
+			}
+		}
+		nrSearchNodes.addAndGet(lease);
+		return lease;
+	}
+
+	/**
+	 * Returns the unused part of a lease when a search ends
+	 *
+	 * @param unused
+	 *            number of search nodes of the lease that were not expanded
+	 */
+	void returnSearchNodes(int unused) {
+		if (unused > 0) {
+			nrSearchNodes.addAndGet(-unused);
+			if (remainingSearchNodes != null) {
+				remainingSearchNodes.addAndGet(unused);
+			}
+		}
+	}
+
+	/**
+	 * Checks whether the search has an instance limit
+	 *
+	 * @return true if found instances should be granted
+	 */
+	boolean limitsInstances() {
+		return remainingInstances != null;
+	}
+
+	/**
+	 * Grants found instances within the instance limit. If not all instances
+	 * are granted, the search stops.
+	 *
+	 * @param nrInstances
+	 *            number of instances found
+	 * @return number of those instances that may be reported
+	 */
+	long grantInstances(long nrInstances) {
+		long granted = take(remainingInstances, nrInstances);
+		if (granted < nrInstances) {
+			stop(Status.INSTANCE_LIMIT_REACHED);
+		}
+		return granted;
+	}
+
+	/**
+	 * Returns the reason the search ended
+	 *
+	 * @return reason the search stopped, {@link Status#COMPLETED} if it did
+	 *         not stop early
+	 */
+	Status getStatus() {
+		Status reason = stopReason;
+		return reason == null ? Status.COMPLETED : reason;
+	}
+
+	long getNrSearchNodes() {
+		return nrSearchNodes.get();
+	}
+
+	/**
+	 * Takes up to the requested amount from a counter without going below 0
+	 */
+	private static long take(AtomicLong remaining, long requested) {
+		while (true) {
+			long available = remaining.get();
+			long taken = Math.min(available, requested);
+			if (taken == 0 || remaining.compareAndSet(available, available - taken)) {
+				return taken;
+			}
+		}
+	}
+}
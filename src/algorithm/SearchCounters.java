@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2013 Maarten Houbraken
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Software available at https://github.com/mhoubraken/ISMAGS
+ * Author : Maarten Houbraken (maarten.houbraken@intec.ugent.be)
+ */
+package algorithm;
+
+/**
+ * Counters of one thread taking part in a search, indexed by the depth in the
+ * search tree. The counters are plain arrays, so counting costs a few
+ * instructions. They are periodically added to the shared
+ * {@link SearchStatistics} and reset.
+ */
+class SearchCounters {
+
+	private SearchStatistics statistics;
+	/**
+	 * Graph nodes mapped on the motif node of every depth, at the last depth
+	 * the instances
+	 */
+	long[] searchNodes;
+	long[] mapNodeFailures;
+	long[] mapNodeTime;
+	long[] intersections;
+	long[] intersectionInput;
+	long[] intersectionOutput;
+	long[] rejectedUsed;
+	long[] boundConflicts;
+	long[] boundExcluded;
+
+	/**
+	 * Creates counters for a search
+	 *
+	 * @param statistics
+	 *            statistics the counters are added to
+	 * @param nrDepths
+	 *            number of depths of the search tree
+	 */
+	SearchCounters(SearchStatistics statistics, int nrDepths) {
+		this.statistics = statistics;
+		searchNodes = new long[nrDepths];
+		mapNodeFailures = new long[nrDepths];
+		mapNodeTime = new long[nrDepths];
+		intersections = new long[nrDepths];
+		intersectionInput = new long[nrDepths];
+		intersectionOutput = new long[nrDepths];
+		rejectedUsed = new long[nrDepths];
+		boundConflicts = new long[nrDepths];
+		boundExcluded = new long[nrDepths];
+	}
+
+	/**
+	 * Adds the counters to the statistics and resets them
+	 */
+	void flush() {
+		statistics.add(this);
+		long[][] all = { searchNodes, mapNodeFailures, mapNodeTime, intersections, intersectionInput,
+				intersectionOutput, rejectedUsed, boundConflicts, boundExcluded };
+		for (long[] counters : all) {
+			for (int i = 0; i < counters.length; i++) {
+				counters[i] = 0;
+			}
+		}
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2013 Maarten Houbraken
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Software available at https://github.com/mhoubraken/ISMAGS
+ * Author : Maarten Houbraken (maarten.houbraken@intec.ugent.be)
+ */
+package algorithm;
+
+/**
+ * Limits on a search for motif instances. A search that reaches one of its
+ * limits stops and reports the instances found so far in a
+ * {@link SearchResult}. A limit of 0 means the search is not limited in that
+ * respect.
+ */
+public class SearchLimits {
+
+	/**
+	 * Limits of a search running until all instances are found
+	 */
+	public static final SearchLimits NONE = new SearchLimits(0, 0, 0);
+
+	private long timeLimit;
+	private long maxInstances;
+	private long maxSearchNodes;
+
+	/**
+	 * Creates limits for a search
+	 *
+	 * @param timeLimit
+	 *            maximal time the search runs, in milliseconds, 0 for no limit
+	 * @param maxInstances
+	 *            maximal number of instances found, 0 for no limit
+	 * @param maxSearchNodes
+	 *            maximal number of nodes of the search tree expanded, i.e. of
+	 *            graph nodes mapped on a motif node before the last one, 0 for
+	 *            no limit
+	 */
+	public SearchLimits(long timeLimit, long maxInstances, long maxSearchNodes) {
+		if (timeLimit < 0 || maxInstances < 0 || maxSearchNodes < 0) {
+			throw new IllegalArgumentException("Search limits should not be negative: " + timeLimit + ", "
+					+ maxInstances + ", " + maxSearchNodes);
+		}
+		this.timeLimit = timeLimit;
+		this.maxInstances = maxInstances;
+		this.maxSearchNodes = maxSearchNodes;
+	}
+
+	public long getTimeLimit() {
+		return timeLimit;
+	}
+
+	public long getMaxInstances() {
+		return maxInstances;
+	}
+
+	public long getMaxSearchNodes() {
+		return maxSearchNodes;
+	}
+}
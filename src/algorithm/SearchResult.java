@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2013 Maarten Houbraken
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Software available at https://github.com/mhoubraken/ISMAGS
+ * Author : Maarten Houbraken (maarten.houbraken@intec.ugent.be)
+ */
+package algorithm;
+
+import java.util.Set;
+
+import motifs.MotifInstance;
+
+/**
+ * Outcome of a search for motif instances, which is partial if the search was
+ * cancelled or reached one of its {@link SearchLimits}. The search tree is
+ * divided by the candidates of the first motif node, the root candidates. All
+ * instances containing a finished root candidate have been found, so a
+ * partial result tells how far the search got.
+ */
+public class SearchResult {
+
+	/**
+	 * Reason a search ended
+	 */
+	public enum Status {
+		/**
+		 * all instances were found
+		 */
+		COMPLETED,
+		/**
+		 * the search was cancelled through {@link MotifFinder#cancel()}
+		 */
+		CANCELLED,
+		/**
+		 * the time limit passed
+		 */
+		TIME_LIMIT_REACHED,
+		/**
+		 * more instances than allowed exist, the maximal number was found
+		 */
+		INSTANCE_LIMIT_REACHED,
+		/**
+		 * the maximal number of search tree nodes was expanded
+		 */
+		SEARCH_NODE_LIMIT_REACHED
+	}
+
+	private Status status;
+	private long nrInstances;
+	private long nrFinishedRootCandidates;
+	private long nrRootCandidates;
+	private long nrSearchNodes;
+	private Set<MotifInstance> instances;
+
+	SearchResult(Status status, long nrInstances, long nrFinishedRootCandidates, long nrRootCandidates,
+			long nrSearchNodes, Set<MotifInstance> instances) {
+		this.status = status;
+		this.nrInstances = nrInstances;
+		this.nrFinishedRootCandidates = nrFinishedRootCandidates;
+		this.nrRootCandidates = nrRootCandidates;
+		this.nrSearchNodes = nrSearchNodes;
+		this.instances = instances;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * Checks whether all instances were found
+	 *
+	 * @return true if the search was neither cancelled nor stopped by a limit
+	 */
+	public boolean isComplete() {
+		return status == Status.COMPLETED;
+	}
+
+	/**
+	 * Returns the number of instances found
+	 *
+	 * @return number of instances found before the search ended
+	 */
+	public long getNrInstances() {
+		return nrInstances;
+	}
+
+	/**
+	 * Returns the number of candidates of the first motif node of which the
+	 * whole search tree was explored
+	 *
+	 * @return number of finished root candidates
+	 */
+	public long getNrFinishedRootCandidates() {
+		return nrFinishedRootCandidates;
+	}
+
+	public long getNrRootCandidates() {
+		return nrRootCandidates;
+	}
+
+	/**
+	 * Returns the number of search tree nodes expanded
+	 *
+	 * @return number of graph nodes mapped on a motif node before the last
+	 *         one
+	 */
+	public long getNrSearchNodes() {
+		return nrSearchNodes;
+	}
+
+	/**
+	 * Returns the instances found
+	 *
+	 * @return instances found before the search ended, null if they were
+	 *         passed to a sink
+	 */
+	public Set<MotifInstance> getInstances() {
+		return instances;
+	}
+
+	@Override
+	public String toString() {
+		return status + ": " + nrInstances + " instances, " + nrFinishedRootCandidates + " of " + nrRootCandidates
+				+ " root candidates finished, " + nrSearchNodes + " search nodes";
+	}
+}
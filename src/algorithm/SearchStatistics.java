@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2013 Maarten Houbraken
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Software available at https://github.com/mhoubraken/ISMAGS
+ * Author : Maarten Houbraken (maarten.houbraken@intec.ugent.be)
+ */
+package algorithm;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Locale;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counts the work done by searches, per depth of the search tree, to explain
+ * why a search is slow. The statistics are collected by the searches of a
+ * {@link MotifFinder} once they are set through
+ * {@link MotifFinder#setStatistics(SearchStatistics)}, and accumulate over
+ * searches until they are reset. Every thread counts in its own counters,
+ * which are added to the statistics after every 1024 search nodes and at the
+ * end of the search, so the statistics can be followed while a search runs,
+ * for instance through JMX after {@link #register()}.
+ */
+public class SearchStatistics implements SearchStatisticsMXBean {
+
+	/**
+	 * Name under which the statistics are registered with the platform
+	 * MBean server
+	 */
+	public static final String OBJECT_NAME = "ISMAGS:type=SearchStatistics";
+
+	private long[] searchNodes = new long[0];
+	private long[] mapNodeFailures = new long[0];
+	private long[] mapNodeTime = new long[0];
+	private long[] intersections = new long[0];
+	private long[] intersectionInput = new long[0];
+	private long[] intersectionOutput = new long[0];
+	private long[] rejectedUsed = new long[0];
+	private long[] boundConflicts = new long[0];
+	private long[] boundExcluded = new long[0];
+
+	/**
+	 * Adds the counters of a thread
+	 *
+	 * @param counters
+	 *            counters since the last time they were added
+	 */
+	synchronized void add(SearchCounters counters) {
+		searchNodes = add(searchNodes, counters.searchNodes);
+		mapNodeFailures = add(mapNodeFailures, counters.mapNodeFailures);
+		mapNodeTime = add(mapNodeTime, counters.mapNodeTime);
+		intersections = add(intersections, counters.intersections);
+		intersectionInput = add(intersectionInput, counters.intersectionInput);
+		intersectionOutput = add(intersectionOutput, counters.intersectionOutput);
+		rejectedUsed = add(rejectedUsed, counters.rejectedUsed);
+		boundConflicts = add(boundConflicts, counters.boundConflicts);
+		boundExcluded = add(boundExcluded, counters.boundExcluded);
+	}
+
+	/**
+	 * Adds counters per depth, growing the totals to the depth of the search
+	 */
+	private static long[] add(long[] totals, long[] counters) {
+		if (totals.length < counters.length) {
+			totals = Arrays.copyOf(totals, counters.length);
+		}
+		for (int i = 0; i < counters.length; i++) {
+			totals[i] += counters[i];
+		}
+		return totals;
+	}
+
+	@Override
+	public synchronized long[] getSearchNodes() {
+		return searchNodes.clone();
+	}
+
+	@Override
+	public synchronized long[] getMapNodeFailures() {
+		return mapNodeFailures.clone();
+	}
+
+	@Override
+	public synchronized long[] getMapNodeTimes() {
+		return mapNodeTime.clone();
+	}
+
+	@Override
+	public synchronized long[] getIntersections() {
+		return intersections.clone();
+	}
+
+	@Override
+	public synchronized long[] getIntersectionInputSizes() {
+		return intersectionInput.clone();
+	}
+
+	@Override
+	public synchronized long[] getIntersectionOutputSizes() {
+		return intersectionOutput.clone();
+	}
+
+	@Override
+	public synchronized long[] getRejectedUsedNodes() {
+		return rejectedUsed.clone();
+	}
+
+	@Override
+	public synchronized long[] getSymmetryBoundConflicts() {
+		return boundConflicts.clone();
+	}
+
+	@Override
+	public synchronized long[] getSymmetryBoundExclusions() {
+		return boundExcluded.clone();
+	}
+
+	@Override
+	public synchronized void reset() {
+		searchNodes = new long[0];
+		mapNodeFailures = new long[0];
+		mapNodeTime = new long[0];
+		intersections = new long[0];
+		intersectionInput = new long[0];
+		intersectionOutput = new long[0];
+		rejectedUsed = new long[0];
+		boundConflicts = new long[0];
+		boundExcluded = new long[0];
+	}
+
+	/**
+	 * Registers the statistics with the platform MBean server under
+	 * {@link #OBJECT_NAME}, replacing statistics registered before
+	 */
+	public void register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(this, name);
+		} catch (JMException e) {
+			throw new IllegalStateException("Cannot register search statistics", e);
+		}
+	}
+
+	/**
+	 * Removes the statistics registered under {@link #OBJECT_NAME} from the
+	 * platform MBean server
+	 */
+	public void unregister() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		} catch (JMException e) {
+			throw new IllegalStateException("Cannot unregister search statistics", e);
+		}
+	}
+
+	/**
+	 * Prints a table with a row per depth of the search tree
+	 *
+	 * @param out
+	 *            stream to print to
+	 */
+	public synchronized void printTable(PrintStream out) {
+		out.println(String.format(Locale.ROOT, "%5s %14s %12s %10s %12s %10s %10s %12s %12s %12s", "depth",
+				"search nodes", "no links", "map ms", "intersects", "avg in", "avg out", "used", "sym pruned",
+				"sym excluded"));
+		for (int i = 0; i < searchNodes.length; i++) {
+			out.println(String.format(Locale.ROOT, "%5d %14d %12d %10d %12d %10.1f %10.1f %12d %12d %12d", i,
+					searchNodes[i], get(mapNodeFailures, i), get(mapNodeTime, i) / 1000000, get(intersections, i),
+					average(get(intersectionInput, i), get(intersections, i)),
+					average(get(intersectionOutput, i), get(intersections, i)), get(rejectedUsed, i),
+					get(boundConflicts, i), get(boundExcluded, i)));
+		}
+	}
+
+	private static long get(long[] counters, int depth) {
+		return depth < counters.length ? counters[depth] : 0;
+	}
+
+	private static double average(long total, long count) {
+		return count == 0 ? 0 : (double) total / count;
+	}
+}
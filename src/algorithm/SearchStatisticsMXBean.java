@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2013 Maarten Houbraken
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Software available at https://github.com/mhoubraken/ISMAGS
+ * Author : Maarten Houbraken (maarten.houbraken@intec.ugent.be)
+ */
+package algorithm;
+
+/**
+ * Management interface of {@link SearchStatistics}. Every attribute holds one
+ * value per depth of the search tree.
+ */
+public interface SearchStatisticsMXBean {
+
+	/**
+	 * @return graph nodes mapped on the motif node of every depth, at the last
+	 *         depth the instances found
+	 */
+	long[] getSearchNodes();
+
+	/**
+	 * @return graph nodes rejected because they lack a link of the motif node
+	 */
+	long[] getMapNodeFailures();
+
+	/**
+	 * @return time spent mapping graph nodes, in nanoseconds
+	 */
+	long[] getMapNodeTimes();
+
+	/**
+	 * @return intersections computing the candidates of the motif node
+	 */
+	long[] getIntersections();
+
+	/**
+	 * @return total size of the smallest lists the intersections started from
+	 */
+	long[] getIntersectionInputSizes();
+
+	/**
+	 * @return total number of candidates produced by the intersections
+	 */
+	long[] getIntersectionOutputSizes();
+
+	/**
+	 * @return candidates rejected because they were already mapped
+	 */
+	long[] getRejectedUsedNodes();
+
+	/**
+	 * @return branches pruned because the symmetry-breaking bounds conflict
+	 */
+	long[] getSymmetryBoundConflicts();
+
+	/**
+	 * @return candidates excluded by the symmetry-breaking bounds
+	 */
+	long[] getSymmetryBoundExclusions();
+
+	/**
+	 * Sets all counters to 0
+	 */
+	void reset();
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2013 Maarten Houbraken
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Software available at https://github.com/mhoubraken/ISMAGS
+ * Author : Maarten Houbraken (maarten.houbraken@intec.ugent.be)
+ */
+package algorithm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.RecursiveTask;
+
+import datastructures.SymProp;
+import motifs.Motif;
+import network.Node;
+
+/**
+ * Fork/join task searching the motif instances starting from a partial
+ * mapping and a range of candidates for the next motif node. Ranges larger
+ * than the granularity are split in two halves, smaller ranges are searched
+ * with a private {@link MotifSearch}. Symmetry-breaking constraints only relate
+ * graph nodes within one mapping, so every range can be searched
+ * independently.
+ * <p>
+ * While searching, the task hands off unexplored sibling candidates at any
+ * depth of the search tree as new tasks whenever other workers run out of
+ * work, so a few candidates with huge subtrees do not keep a single worker
+ * busy while the others are idle.
+ * <p>
+ * The result of the task is the number of motif instances found by the task
+ * and by the tasks it handed off work to. When the search stops early, the
+ * task also tells whether its part of the search tree was fully explored and
+ * which of its candidates for the first motif node were finished.
+ */
+class SearchTask extends RecursiveTask<Long> {
+
+	private static final long serialVersionUID = 1L;
+
+	private MotifFinder finder;
+	private Motif motif;
+	private SymProp symProp;
+	private int[] mappedOrder;
+	private int[] partialMapping;
+	private int motifNode;
+	private int[] candidates;
+	private int from;
+	private int to;
+	private int granularity;
+	private MotifInstanceSink sink;
+	private Set<Set<Node>> usedLinks;
+	private SearchControl control;
+	private List<SearchTask> forkedTasks;
+	/**
+	 * Index of the root candidate every forked task extends
+	 */
+	private List<Integer> forkedRoots;
+	private boolean complete;
+	private long nrFinishedRoots;
+
+	/**
+	 * Creates a task for a range of candidates of the first motif node
+	 *
+	 * @param finder
+	 *            finder that started the search
+	 * @param motif
+	 *            subgraph to be searched for
+	 * @param symProp
+	 *            symmetric properties of the motif
+	 * @param motifNode
+	 *            first motif node to be mapped
+	 * @param candidates
+	 *            all candidates for the first motif node
+	 * @param from
+	 *            index of the first candidate in the range (inclusive)
+	 * @param to
+	 *            index of the last candidate in the range (exclusive)
+	 * @param granularity
+	 *            maximal number of candidates searched without splitting
+	 * @param sink
+	 *            shared receiver of the motif instances found, null if
+	 *            instances only need to be counted
+	 * @param usedLinks
+	 *            shared set to store used links in, null if links need not be
+	 *            saved
+	 * @param control
+	 *            limits of the search
+	 */
+	SearchTask(MotifFinder finder, Motif motif, SymProp symProp, int motifNode, int[] candidates, int from,
+			int to, int granularity, MotifInstanceSink sink, Set<Set<Node>> usedLinks, SearchControl control) {
+		this(finder, motif, symProp, new int[0], new int[0], motifNode, candidates, from, to, granularity, sink,
+				usedLinks, control);
+	}
+
+	/**
+	 * Creates a task for a range of candidates of a motif node, extending a
+	 * partial mapping
+	 *
+	 * @param mappedOrder
+	 *            motif nodes in the partial mapping, in the order in which they
+	 *            were mapped
+	 * @param partialMapping
+	 *            graph nodes mapped on the motif nodes of the partial mapping
+	 */
+	private SearchTask(MotifFinder finder, Motif motif, SymProp symProp, int[] mappedOrder, int[] partialMapping,
+			int motifNode, int[] candidates, int from, int to, int granularity, MotifInstanceSink sink,
+			Set<Set<Node>> usedLinks, SearchControl control) {
+		this.finder = finder;
+		this.motif = motif;
+		this.symProp = symProp;
+		this.mappedOrder = mappedOrder;
+		this.partialMapping = partialMapping;
+		this.motifNode = motifNode;
+		this.candidates = candidates;
+		this.from = from;
+		this.to = to;
+		this.granularity = granularity;
+		this.sink = sink;
+		this.usedLinks = usedLinks;
+		this.control = control;
+	}
+
+	@Override
+	protected Long compute() {
+		if (to - from > granularity) {
+			int middle = (from + to) >>> 1;
+			SearchTask first = new SearchTask(finder, motif, symProp, mappedOrder, partialMapping, motifNode,
+					candidates, from, middle, granularity, sink, usedLinks, control);
+			SearchTask second = new SearchTask(finder, motif, symProp, mappedOrder, partialMapping, motifNode,
+					candidates, middle, to, granularity, sink, usedLinks, control);
+			invokeAll(first, second);
+			long nrInstances = first.join() + second.join();
+			complete = first.complete && second.complete;
+			nrFinishedRoots = first.nrFinishedRoots + second.nrFinishedRoots;
+			return nrInstances;
+		}
+		// search the range with private state and merge the used links afterwards
+		forkedTasks = new ArrayList<SearchTask>();
+		forkedRoots = new ArrayList<Integer>();
+		Set<Set<Node>> localLinks = usedLinks != null ? new HashSet<Set<Node>>() : null;
+		MotifSearch search = new MotifSearch(motif, finder.getNetwork(), finder.createMapping(motif), symProp, sink,
+				localLinks, this, control);
+		search.setStatistics(finder.getStatistics());
+		search.restore(mappedOrder, partialMapping);
+		search.search(motifNode, candidates, from, to);
+		if (usedLinks != null) {
+			synchronized (usedLinks) {
+				usedLinks.addAll(localLinks);
+			}
+		}
+		long nrInstances = search.getNrInstances();
+		complete = !search.isAborted();
+		BitSet finishedRoots = search.getFinishedRoots();
+		for (int i = 0; i < forkedTasks.size(); i++) {
+			SearchTask task = forkedTasks.get(i);
+			nrInstances += task.join();
+			complete &= task.complete;
+			if (task.mappedOrder.length == 0) {
+				// the task took over some of the root candidates
+				nrFinishedRoots += task.nrFinishedRoots;
+			} else if (!task.complete) {
+				finishedRoots.clear(forkedRoots.get(i));
+			}
+		}
+		if (mappedOrder.length == 0) {
+			nrFinishedRoots += finishedRoots.cardinality();
+		}
+		return nrInstances;
+	}
+
+	/**
+	 * Hands off part of the candidates of a motif node to a new task that can
+	 * be stolen by idle workers
+	 *
+	 * @param mappedOrder
+	 *            motif nodes in the partial mapping, in the order in which they
+	 *            were mapped
+	 * @param partialMapping
+	 *            graph nodes mapped on the motif nodes of the partial mapping
+	 * @param motifNode
+	 *            motif node the candidates are mapped on
+	 * @param nodes
+	 *            candidates for the motif node
+	 * @param from
+	 *            index of the first candidate handed off (inclusive)
+	 * @param to
+	 *            index of the last candidate handed off (exclusive)
+	 * @param root
+	 *            index of the root candidate in the partial mapping
+	 */
+	void split(int[] mappedOrder, int[] partialMapping, int motifNode, int[] nodes, int from, int to, int root) {
+		// the candidate buffer is reused by the search, so the task gets a copy
+		SearchTask task = new SearchTask(finder, motif, symProp, mappedOrder, partialMapping, motifNode,
+				Arrays.copyOfRange(nodes, from, to), 0, to - from, Integer.MAX_VALUE, sink, usedLinks, control);
+		task.fork();
+		forkedTasks.add(task);
+		forkedRoots.add(root);
+	}
+
+	/**
+	 * Checks whether the part of the search tree of this task, including the
+	 * parts handed off to other tasks, was fully explored. Only valid after
+	 * the task was joined.
+	 *
+	 * @return true if the search did not stop before the task was finished
+	 */
+	boolean isComplete() {
+		return complete;
+	}
+
+	/**
+	 * Returns the number of root candidates of which this task and the tasks
+	 * it handed off work to explored the whole search tree. Only valid after
+	 * the task was joined.
+	 *
+	 * @return number of finished root candidates
+	 */
+	long getNrFinishedRoots() {
+		return nrFinishedRoots;
+	}
+
+	/**
+	 * Determines whether other workers might run out of work, based on the
+	 * number of tasks queued by the current worker
+	 *
+	 * @return true if unexplored candidates should be handed off
+	 */
+	static boolean needsWork() {
+		return getSurplusQueuedTaskCount() <= 0;
+	}
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright (C) 2013 Maarten Houbraken
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Software available at https://github.com/mhoubraken/ISMAGS
+ * Author : Maarten Houbraken (maarten.houbraken@intec.ugent.be)
+ */
+package algorithm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import datastructures.SymProp;
+import motifs.CanonicalForm;
+import motifs.Motif;
+import motifs.MotifLink;
+import network.LinkType;
+
+/**
+ * Cache of motif analysis results, keyed by the canonical form of the motif.
+ * The analysis is done on the motif in canonical order and relabelled for
+ * every motif isomorphic to it, so the symmetry-breaking constraints of a
+ * motif do not depend on the motifs that were analysed before. The most
+ * recently used results are kept in memory. Optionally, results are also
+ * kept in a store folder with one file per canonical form, so they are
+ * shared between runs.
+ */
+public class SymmetryCache {
+
+	/**
+	 * Default number of analysis results kept in memory
+	 */
+	public static final int DEFAULT_CAPACITY = 256;
+
+	private static final int MAGIC = 0x4953534d;
+	private static final int VERSION = 2;
+
+	private static int capacity = DEFAULT_CAPACITY;
+	private static File store;
+	private static LinkedHashMap<CanonicalForm, SymProp> cache = new LinkedHashMap<CanonicalForm, SymProp>(16,
+			0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<CanonicalForm, SymProp> eldest) {
+			return size() > capacity;
+		}
+	};
+
+	/**
+	 * Sets the number of analysis results kept in memory
+	 *
+	 * @param capacity
+	 *            maximal number of results, 0 to keep none
+	 */
+	public static synchronized void setCapacity(int capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("Capacity should not be negative: " + capacity);
+		}
+		SymmetryCache.capacity = capacity;
+		Iterator<CanonicalForm> it = cache.keySet().iterator();
+		while (cache.size() > capacity) {
+			it.next();
+			it.remove();
+		}
+	}
+
+	/**
+	 * Sets the folder in which analysis results are stored
+	 *
+	 * @param folder
+	 *            store folder, created when the first result is stored, null
+	 *            to keep results in memory only
+	 */
+	public static synchronized void setStore(File folder) {
+		store = folder;
+	}
+
+	/**
+	 * Removes all analysis results from memory
+	 */
+	public static synchronized void clear() {
+		cache.clear();
+	}
+
+	/**
+	 * Returns the symmetric properties of a motif, analysing the motif if its
+	 * canonical form is neither in memory nor in the store
+	 *
+	 * @param motif
+	 *            finalised motif
+	 * @return symmetric properties in terms of the motif nodes of the motif
+	 */
+	static SymProp getSymProp(Motif motif) {
+		CanonicalForm form = motif.getCanonicalForm();
+		SymProp canonical;
+		File folder;
+		synchronized (SymmetryCache.class) {
+			canonical = cache.get(form);
+			folder = store;
+		}
+		if (canonical == null) {
+			File file = folder == null ? null : new File(folder, getFileName(form));
+			if (file != null && file.exists()) {
+				canonical = read(file, form);
+			}
+			if (canonical == null) {
+				canonical = SymmetryHandler.analyse(getCanonicalMotif(motif, form));
+				if (file != null) {
+					write(file, form, canonical);
+				}
+			}
+			synchronized (SymmetryCache.class) {
+				cache.put(form, canonical);
+			}
+		}
+		return relabel(canonical, form.getPositions());
+	}
+
+	/**
+	 * Builds the motif in canonical order. The links are added in canonical
+	 * order as well, so the motif only depends on the canonical form.
+	 */
+	private static Motif getCanonicalMotif(Motif motif, CanonicalForm form) {
+		int nrMotifNodes = motif.getNrMotifNodes();
+		int[] positions = form.getPositions();
+		MotifLink[][] links = new MotifLink[nrMotifNodes][nrMotifNodes];
+		for (int i = 0; i < nrMotifNodes; i++) {
+			int[] connections = motif.getConnectionsOfMotifNode(i);
+			MotifLink[] linksOfNode = motif.getLinksOfMotifNode(i);
+			for (int j = 0; j < connections.length; j++) {
+				links[positions[i]][positions[connections[j]]] = linksOfNode[j];
+			}
+		}
+		Motif canonical = new Motif(nrMotifNodes);
+		for (int a = 0; a < nrMotifNodes; a++) {
+			for (int b = 0; b < nrMotifNodes; b++) {
+				MotifLink link = links[a][b];
+				if (link == null) {
+					continue;
+				}
+				LinkType type = link.getLinkType();
+				if (type.getMotifLink() == link && (type.isDirected() || a < b)) {
+					canonical.addMotifLink(a, b, type);
+				}
+			}
+		}
+		canonical.finaliseMotif();
+		return canonical;
+	}
+
+	/**
+	 * Translates the symmetric properties of the canonical motif to a motif
+	 * isomorphic to it
+	 *
+	 * @param canonical
+	 *            symmetric properties of the canonical motif
+	 * @param positions
+	 *            canonical position of every motif node
+	 * @return symmetric properties in terms of the motif nodes
+	 */
+	private static SymProp relabel(SymProp canonical, int[] positions) {
+		int nrMotifNodes = positions.length;
+		int[] nodes = new int[nrMotifNodes];
+		for (int i = 0; i < nrMotifNodes; i++) {
+			nodes[positions[i]] = i;
+		}
+		SymProp symProp = new SymProp(nrMotifNodes, relabel(canonical.getSmaller(), nodes),
+				relabel(canonical.getLarger(), nodes));
+		for (int[] perm : canonical.getPermutations()) {
+			int[] relabelled = new int[nrMotifNodes];
+			for (int i = 0; i < nrMotifNodes; i++) {
+				relabelled[i] = nodes[perm[positions[i]]];
+			}
+			symProp.addPermutation(relabelled);
+		}
+		int[] orbits = new int[nrMotifNodes];
+		for (int i = 0; i < nrMotifNodes; i++) {
+			orbits[i] = canonical.getOrbits()[positions[i]];
+		}
+		symProp.setOrbits(orbits);
+		return symProp;
+	}
+
+	private static Map<Integer, Set<Integer>> relabel(Map<Integer, Set<Integer>> constraints, int[] nodes) {
+		Map<Integer, Set<Integer>> relabelled = new HashMap<Integer, Set<Integer>>();
+		for (Map.Entry<Integer, Set<Integer>> entry : constraints.entrySet()) {
+			Set<Integer> set = new HashSet<Integer>();
+			for (Integer motifNode : entry.getValue()) {
+				set.add(nodes[motifNode]);
+			}
+			relabelled.put(nodes[entry.getKey()], set);
+		}
+		return relabelled;
+	}
+
+	/**
+	 * Names the store file of a canonical form after a hash of the form
+	 */
+	private static String getFileName(CanonicalForm form) {
+		long hash = form.getNrMotifNodes();
+		for (int id : form.getCode()) {
+			hash = hash * 31 + id;
+		}
+		return "motif-" + form.getNrMotifNodes() + "-" + Long.toHexString(hash) + ".sym";
+	}
+
+	/**
+	 * Writes the analysis results of a canonical form to the store. The
+	 * results are written to a temporary file that is moved in place
+	 * afterwards, so concurrent runs never read a partial file.
+	 */
+	private static void write(File file, CanonicalForm form, SymProp symProp) {
+		try {
+			File folder = file.getParentFile();
+			if (!folder.isDirectory() && !folder.mkdirs()) {
+				throw new IOException("Could not create store folder " + folder);
+			}
+			File temp = File.createTempFile("motif", ".tmp", folder);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				writeInts(out, form.getCode());
+				writeInts(out, symProp.getOrbits());
+				out.writeInt(symProp.getPermutations().size());
+				for (int[] perm : symProp.getPermutations()) {
+					writeInts(out, perm);
+				}
+				int nrConstraints = 0;
+				for (Set<Integer> larger : symProp.getSmaller().values()) {
+					nrConstraints += larger.size();
+				}
+				out.writeInt(nrConstraints);
+				for (Map.Entry<Integer, Set<Integer>> entry : symProp.getSmaller().entrySet()) {
+					for (Integer larger : entry.getValue()) {
+						out.writeInt(entry.getKey());
+						out.writeInt(larger);
+					}
+				}
+			} finally {
+				out.close();
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Reads the analysis results of a canonical form from the store
+	 *
+	 * @return analysis results, null if the file holds another canonical form
+	 *         with the same hash
+	 */
+	private static SymProp read(File file, CanonicalForm form) {
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+					throw new IOException("Not a motif analysis: " + file);
+				}
+				if (!Arrays.equals(readInts(in), form.getCode())) {
+					return null;
+				}
+				int[] orbits = readInts(in);
+				SymProp symProp = new SymProp(orbits.length, new HashMap<Integer, Set<Integer>>(),
+						new HashMap<Integer, Set<Integer>>());
+				symProp.setOrbits(orbits);
+				int nrPerms = in.readInt();
+				for (int i = 0; i < nrPerms; i++) {
+					symProp.addPermutation(readInts(in));
+				}
+				int nrConstraints = in.readInt();
+				for (int i = 0; i < nrConstraints; i++) {
+					int smaller = in.readInt();
+					int larger = in.readInt();
+					getSet(symProp.getSmaller(), smaller).add(larger);
+					getSet(symProp.getSmaller(), larger);
+					getSet(symProp.getLarger(), larger).add(smaller);
+					getSet(symProp.getLarger(), smaller);
+				}
+				return symProp;
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static Set<Integer> getSet(Map<Integer, Set<Integer>> constraints, int motifNode) {
+		Set<Integer> set = constraints.get(motifNode);
+		if (set == null) {
+			set = new HashSet<Integer>();
+			constraints.put(motifNode, set);
+		}
+		return set;
+	}
+
+	private static void writeInts(DataOutputStream out, int[] ints) throws IOException {
+		out.writeInt(ints.length);
+		for (int i : ints) {
+			out.writeInt(i);
+		}
+	}
+
+	private static int[] readInts(DataInputStream in) throws IOException {
+		int[] ints = new int[in.readInt()];
+		for (int i = 0; i < ints.length; i++) {
+			ints[i] = in.readInt();
+		}
+		return ints;
+	}
+}
@@ -21,9 +21,7 @@ package algorithm;
 
 import datastructures.NodeIterator;
 import datastructures.SymProp;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Set;
 //import datastructures.NodeSet;
 import datastructures.PriorityObject;
@@ -33,7 +31,7 @@ import java.util.List;
 import java.util.Map;
 import motifs.Motif;
 import motifs.MotifLink;
-import network.Node;
+import network.CSRGraph;
 
 /**
  * This class is responsible for analysing the motif and providing the
@@ -43,13 +41,22 @@ class SymmetryHandler {
 
     int nrOrbits = 0;
     int[] orbits;
-    Set<Integer> mappedPositions;
+    boolean[] mappedPositions;
     Map<Integer, Set<Integer>> smaller;
     Map<Integer, Set<Integer>> larger;
+    private int[][] smallerNodes;
+    private int[][] largerNodes;
     NodeIterator[] mapping;
-    Node[] mappedNodes;
+    int[] mappedNodes;
     PriorityQueueMap PQmap;
     private Motif motif;
+    private SymProp symProp;
+    private CSRGraph graph;
+    /**
+     * Counters of the search using this handler, null if the search is not
+     * instrumented
+     */
+    SearchCounters counters;
 
     /**
      * Constructs a SymmetryHandler object to deal with the specified motif
@@ -57,64 +64,158 @@ class SymmetryHandler {
      * @param mapping handle to NodeIterators containing constraining neighbour
      * lists
      * @param motif motif to be analysed
-     * @param mappedNodes handle to partial node mapping
+     * @param mappedNodes handle to partial node mapping, -1 for unmapped motif
+     * nodes
+     * @param graph network to be searched
+     */
+    public SymmetryHandler(NodeIterator[] mapping, Motif motif, int[] mappedNodes, CSRGraph graph) {
+        this(mapping, motif, mappedNodes, graph, null);
+    }
+
+    /**
+     * Constructs a SymmetryHandler object for the specified motif, reusing
+     * the symmetric properties of an earlier analysis. The analysis results
+     * are only read, so they can be shared between handlers searching
+     * concurrently.
+     *
+     * @param mapping handle to NodeIterators containing constraining neighbour
+     * lists
+     * @param motif motif to be searched
+     * @param mappedNodes handle to partial node mapping, -1 for unmapped motif
+     * nodes
+     * @param graph network to be searched
+     * @param symProp symmetric properties of the motif, null to take them from
+     * the {@link SymmetryCache}
      */
-    public SymmetryHandler(NodeIterator[] mapping, Motif motif, Node[] mappedNodes) {
+    SymmetryHandler(NodeIterator[] mapping, Motif motif, int[] mappedNodes, CSRGraph graph, SymProp symProp) {
         PQmap = new PriorityQueueMap(mapping.length);
         this.mapping = mapping;
         this.motif = motif;
-        mappedPositions = new HashSet<Integer>(mappedNodes.length);
+        this.graph = graph;
+        mappedPositions = new boolean[mappedNodes.length];
         this.mappedNodes = mappedNodes;
+        if (symProp == null) {
+            symProp = SymmetryCache.getSymProp(motif);
+        }
+        this.symProp = symProp;
+        smaller = symProp.getSmaller();
+        larger = symProp.getLarger();
+        orbits = symProp.getOrbits();
+        smallerNodes = toArrays(smaller, mappedNodes.length);
+        largerNodes = toArrays(larger, mappedNodes.length);
+    }
+
+    /**
+     * Constructs a SymmetryHandler object that only analyses a motif
+     */
+    private SymmetryHandler() {
         smaller = new HashMap<Integer, Set<Integer>>();
         larger = new HashMap<Integer, Set<Integer>>();
-        SymProp sp = analyseMotif(motif);
     }
 
     /**
-     * Determines the next motif nodes and candidates to be mapped
+     * Analyses a motif, without consulting the {@link SymmetryCache}
+     *
+     * @param motif motif to be analysed
+     * @return symmetric properties of the motif
+     */
+    static SymProp analyse(Motif motif) {
+        return new SymmetryHandler().analyseMotif(motif);
+    }
+
+    /**
+     * Converts symmetry-breaking constraints to arrays, so they can be
+     * iterated without allocating iterators
+     *
+     * @param constraints motif nodes constraining each motif node
+     * @param nrMotifNodes number of motif nodes
+     * @return constraining motif nodes, indexed by motif node
+     */
+    private static int[][] toArrays(Map<Integer, Set<Integer>> constraints, int nrMotifNodes) {
+        int[][] arrays = new int[nrMotifNodes][];
+        for (int i = 0; i < nrMotifNodes; i++) {
+            Set<Integer> set = constraints.get(i);
+            arrays[i] = new int[set == null ? 0 : set.size()];
+            if (set != null) {
+                int j = 0;
+                for (Integer motifNode : set) {
+                    arrays[i][j++] = motifNode;
+                }
+            }
+        }
+        return arrays;
+    }
+
+    /**
+     * Returns the symmetric properties of the motif handled by this object
+     *
+     * @return motif analysis results
+     */
+    SymProp getSymProp() {
+        return symProp;
+    }
+
+    /**
+     * Determines the next motif nodes and candidates to be mapped, selecting
+     * from the motif nodes that are not in the mapped positions
      *
-     * @param unmappedMotifNodes unmapped motif nodes from which to select the
-     * next node
      * @return next motif node and graph node candidates
      */
-    NodeIterator getNextBestIterator(Set<Integer> unmappedMotifNodes) {
+    NodeIterator getNextBestIterator() {
         //get next node to be mapped by polling priority map
-        PriorityObject poll = PQmap.poll(unmappedMotifNodes);
+        PriorityObject poll = PQmap.poll(mappedPositions);
         int motifNodeID = poll.getTo();
         NodeIterator r = mapping[motifNodeID];
         //determine lower bound for graph node candidates
-        Set<Integer> minset = larger.get(motifNodeID);
-        Node minNode = null;
-        int min = Integer.MIN_VALUE;
-        if (minset != null) {
-            for (Integer integer : minset) {
-                if (mappedPositions.contains(integer) && min < mappedNodes[integer].getID()) {
-                    min = mappedNodes[integer].getID();
-                    minNode = mappedNodes[integer];
-                }
+        int min = -1;
+        for (int motifNode : largerNodes[motifNodeID]) {
+            if (mappedPositions[motifNode] && min < mappedNodes[motifNode]) {
+                min = mappedNodes[motifNode];
             }
         }
         //determine upper bound for graph node candidates
-        Set<Integer> maxset = smaller.get(motifNodeID);
-        Node maxNode = null;
         int max = Integer.MAX_VALUE;
-        if (maxset != null) {
-            for (Integer integer : maxset) {
-                if (mappedPositions.contains(integer) && max > mappedNodes[integer].getID()) {
-                    max = mappedNodes[integer].getID();
-                    maxNode = mappedNodes[integer];
-                    //abort when bounds conflict
-                    if (min > max) {
-                        return null;
+        for (int motifNode : smallerNodes[motifNodeID]) {
+            if (mappedPositions[motifNode] && max > mappedNodes[motifNode]) {
+                max = mappedNodes[motifNode];
+                //abort when bounds conflict
+                if (min > max) {
+                    if (counters != null) {
+                        counters.boundConflicts[getDepth()]++;
                     }
+                    return null;
                 }
             }
         }
         //determine nodes by intersecting using the bounds
-        NodeIterator intersect = r.intersect(minNode, maxNode);
+        NodeIterator intersect = r.intersect(min, max, mappedNodes);
+        if (counters != null) {
+            int depth = getDepth();
+            counters.intersections[depth]++;
+            counters.intersectionInput[depth] += r.getLastListSize();
+            counters.boundExcluded[depth] += r.getLastListSize() - r.getLastBoundedSize();
+            counters.rejectedUsed[depth] += r.getLastNrMappedRemoved();
+            counters.intersectionOutput[depth] += intersect == null ? 0 : intersect.getNrNodes();
+        }
         return intersect;
     }
 
+    /**
+     * Determines the depth in the search tree of the next motif node to be
+     * mapped
+     *
+     * @return number of motif nodes mapped
+     */
+    private int getDepth() {
+        int depth = 0;
+        for (boolean mapped : mappedPositions) {
+            if (mapped) {
+                depth++;
+            }
+        }
+        return depth;
+    }
+
     /**
      * Maps a graph node to a motif node and updates the neighbour lists used
      * for intersecting
@@ -123,24 +224,61 @@ class SymmetryHandler {
      * @param n graph node to be mapped
      * @return returns true if node is suitable for mapping on the motif node
      */
-    boolean mapNode(int motifNode, Node n) {
+    boolean mapNode(int motifNode, int n) {
         int[] connections = motif.getConnectionsOfMotifNode(motifNode);
         MotifLink[] restrictions = motif.getLinksOfMotifNode(motifNode);
         int nrConnections = connections.length;
         for (int j = 0; j < nrConnections; j++) {
             int i = connections[j];
-            if (mappedNodes[i] != null) {
+            if (mappedNodes[i] != -1) {
                 continue;
             }
-            MotifLink motifLink = restrictions[j];
-//            NodeSet ln = n.neighboursPerType[motifLink.motifLinkID];
-            ArrayList<Node> ln = n.neighboursPerType.get(motifLink.getMotifLinkID());
-            if (ln == null) {
+            int linkID = restrictions[j].getMotifLinkID();
+            int start = graph.getStart(linkID, n);
+            int end = graph.getEnd(linkID, n);
+            if (start == end) {
                 return false;
             } else {
-                mapping[i].addRestrictionList(ln, n);
-                int size = ln.size();
-                PQmap.add(new PriorityObject(n, motifNode, i, size));
+                mapping[i].addRestrictionList(graph.getTargets(linkID, n), start, end, graph.getBitmap(linkID, n), n);
+                PQmap.add(n, motifNode, i, end - start);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a graph node can extend the partial mapping on a motif
+     * node without taking it from the candidate lists: the graph node should
+     * not be mapped yet, meet the symmetry-breaking constraints with the
+     * mapped motif nodes and be linked to the graph nodes mapped on the
+     * neighbours of the motif node
+     *
+     * @param motifNode motif node to be mapped
+     * @param n graph node to be mapped
+     * @return true if the graph node can be mapped on the motif node
+     */
+    boolean canMap(int motifNode, int n) {
+        for (int mapped : mappedNodes) {
+            if (mapped == n) {
+                return false;
+            }
+        }
+        for (int other : largerNodes[motifNode]) {
+            if (mappedPositions[other] && n <= mappedNodes[other]) {
+                return false;
+            }
+        }
+        for (int other : smallerNodes[motifNode]) {
+            if (mappedPositions[other] && n >= mappedNodes[other]) {
+                return false;
+            }
+        }
+        int[] connections = motif.getConnectionsOfMotifNode(motifNode);
+        MotifLink[] restrictions = motif.getLinksOfMotifNode(motifNode);
+        for (int j = 0; j < connections.length; j++) {
+            int mapped = mappedNodes[connections[j]];
+            if (mapped != -1 && !graph.hasLink(restrictions[j].getMotifLinkID(), n, mapped)) {
+                return false;
             }
         }
         return true;
@@ -153,7 +291,7 @@ class SymmetryHandler {
      * @param motifNode motif node mapped to
      * @param graphNode graph node mapped to motif node
      */
-    void removeNodeMapping(int motifNode, Node graphNode) {
+    void removeNodeMapping(int motifNode, int graphNode) {
         int[] neighbours = motif.getConnectionsOfMotifNode(motifNode);
         for (int i : neighbours) {
             mapping[i].removeRestrictionList(graphNode);
@@ -202,120 +340,137 @@ class SymmetryHandler {
         for (int i = 0; i < orbits.length; i++) {
             orbits[i] = -1;
         }
-        mapNodes(sp, orbits, sym, true);
+        mapNodes(sp, orbits, sym);
+        sp.setOrbits(orbits);
         return sp;
     }
 
     /**
-     * Recursive motif analysis
+     * Recursive motif analysis along the path of the search tree on which
+     * every coupled motif node is coupled to itself. Deeper levels are
+     * analysed first, so the orbits only hold permutations fixing the motif
+     * nodes coupled so far when the constraints of a level are exported.
      *
      * @param symmetricProperties stores all permutations and symmetry-breaking
      * constraints for the motif
      * @param orbits orbit partitioning of the motif nodes
      * @param symGraph current state in motif analysis
-     * @param main true if all previously coupled motif nodes are coupled to
-     * themselves
      */
-    private void mapNodes(SymProp symmetricProperties, int[] orbits, SymGraph symGraph, boolean main) {
-        boolean allone = true;
-        int splitcolor = -1;
-        int lowestUnassignedMotifNode = Integer.MAX_VALUE;
-        //determining next motif node to map
-        outfor:
-        for (int i = 0; i < symGraph.colorToTopMotifnode.size(); i++) {
-            List<Integer> listi = symGraph.colorToTopMotifnode.get(i);
-            int sizei = listi.size();
-            if (sizei != 1) {
-                allone = false;
-                for (Integer motifNodeID : listi) {
-                    if (motifNodeID < lowestUnassignedMotifNode) {
-                        splitcolor = i;
-                        lowestUnassignedMotifNode = motifNodeID;
-                        continue outfor;
-                    }
-                }
-            }
-        }
-        //if all nodes are mapped, export permutation
-        if (allone) {
-            int[] perm = new int[symGraph.motif.getNrMotifNodes()];
-            for (int j = 0; j < perm.length; j++) {
-                int bottomcolor = symGraph.colorToBottomMotifnode.get(j).get(0);
-                int topcolor = symGraph.colorToTopMotifnode.get(j).get(0);
-                perm[topcolor] = bottomcolor;
-                mergeOrbits(bottomcolor, topcolor, orbits);
-            }
-            symmetricProperties.addPermutation(perm);
+    private void mapNodes(SymProp symmetricProperties, int[] orbits, SymGraph symGraph) {
+        int splitcolor = getSplitColor(symGraph);
+        //if all nodes are mapped, export the identity permutation
+        if (splitcolor == -1) {
+            symmetricProperties.addPermutation(getPermutation(symGraph));
             return;
         }
-        //map lowest uncoupled node in the upper partition on all motif nodes in the lower partition
-        List<Integer> topsplit = symGraph.colorToTopMotifnode.get(splitcolor);
-        int top = lowestUnassignedMotifNode;
+        int top = symGraph.colorToTopMotifnode.get(splitcolor).get(0);
         List<Integer> bottomsplit = symGraph.colorToBottomMotifnode.get(splitcolor);
-        SymGraph newSymGraph = symGraph;
-        //deal with the initial OPP and the cases for which the OPP has identical subsets
-        if (topsplit.size() != symGraph.motif.getNrMotifNodes() && topsplit.containsAll(bottomsplit)) {
-            int[] perm = new int[symGraph.motif.getNrMotifNodes()];
-            boolean identityPermutation = true;
-            for (int k = 0; k < newSymGraph.colorToBottomMotifnode.size(); k++) {
-                List<Integer> bottomnodes = newSymGraph.colorToBottomMotifnode.get(k);
-                List<Integer> topnodes = newSymGraph.colorToTopMotifnode.get(k);
-                int bottomnode = bottomnodes.get(0);
-                int topnode = topnodes.get(0);
-                if (bottomnode != topnode) {
-                    mergeOrbits(bottomnode, topnode, orbits);
-                }
+        SymGraph main = symGraph.map(top, top, splitcolor);
+        if (main != null) {
+            mapNodes(symmetricProperties, orbits, main);
+        }
+        //couple the lowest uncoupled node to every node not yet known to be
+        //in its orbit, one permutation per coupling suffices
+        for (int j = 0; j < bottomsplit.size(); j++) {
+            int m = bottomsplit.get(j);
+            if (m == top || (orbits[top] != -1 && orbits[top] == orbits[m])) {
+                continue;
             }
-            int j = 0;
-
-            start:
-            for (; j < newSymGraph.colorToBottomMotifnode.size(); j++) {
-                List<Integer> bottomnodes = newSymGraph.colorToBottomMotifnode.get(j);
-                List<Integer> topnodes = newSymGraph.colorToTopMotifnode.get(j);
-                if (bottomnodes.size() > 1) {
-                    int b = bottomnodes.get(0);
-                    int t = topnodes.get(0);
-                    newSymGraph = newSymGraph.map(t, b, j);
-                    if (newSymGraph.colorToBottomMotifnode.size() != symGraph.motif.getNrMotifNodes()) {
-                        j = -1;
-                        continue start;
-                    } else {
-                        break;
+            SymGraph symm = symGraph.map(top, m, splitcolor);
+            int[] perm = symm == null ? null : findPermutation(symm);
+            if (perm != null) {
+                symmetricProperties.addPermutation(perm);
+                for (int i = 0; i < perm.length; i++) {
+                    if (perm[i] != i) {
+                        mergeOrbits(i, perm[i], orbits);
                     }
                 }
             }
-            for (j = 0; j < newSymGraph.colorToBottomMotifnode.size(); j++) {
-                List<Integer> bottomnodes = newSymGraph.colorToBottomMotifnode.get(j);
-                List<Integer> topnodes = newSymGraph.colorToTopMotifnode.get(j);
-                int bottomnode = bottomnodes.get(0);
-                int topnode = topnodes.get(0);
-                perm[topnode] = bottomnode;
-                if (bottomnode != topnode) {
-                    identityPermutation = false;
-                }
-            }
+        }
+        //export partial orbit cells as symmetry-breaking constraints
+        symmetricProperties.fix(top, orbits);
+    }
 
-            if (!identityPermutation) {
-                symmetricProperties.addPermutation(perm);
-                return;
-            }
+    /**
+     * Searches an automorphism extending the couplings of an OPP state
+     *
+     * @param symGraph current state in motif analysis
+     * @return automorphism of the motif, null if the couplings cannot be
+     * extended to one
+     */
+    private int[] findPermutation(SymGraph symGraph) {
+        int splitcolor = getSplitColor(symGraph);
+        if (splitcolor == -1) {
+            int[] perm = getPermutation(symGraph);
+            return isAutomorphism(symGraph.motif, perm) ? perm : null;
         }
-        //iterate over all possible couplings
+        int top = symGraph.colorToTopMotifnode.get(splitcolor).get(0);
+        List<Integer> bottomsplit = symGraph.colorToBottomMotifnode.get(splitcolor);
         for (int j = 0; j < bottomsplit.size(); j++) {
-            int m = bottomsplit.get(j);
-            if (orbits[top] != -1 && orbits[top] == orbits[m]) {
-                continue;
+            SymGraph symm = symGraph.map(top, bottomsplit.get(j), splitcolor);
+            int[] perm = symm == null ? null : findPermutation(symm);
+            if (perm != null) {
+                return perm;
             }
-            SymGraph symm = symGraph.map(top, m, splitcolor);
-            //keep track of couplings and if the first are coupled to themselves
-            boolean nm = main && (m == top);
-            if (symm != null) {
-                mapNodes(symmetricProperties, orbits, symm, nm);
+        }
+        return null;
+    }
+
+    /**
+     * Determines the partition cell holding the lowest uncoupled motif node.
+     * The cells are kept sorted, so this node is the first of its cell.
+     *
+     * @param symGraph current state in motif analysis
+     * @return color of the cell, -1 if all motif nodes are coupled
+     */
+    private static int getSplitColor(SymGraph symGraph) {
+        int splitcolor = -1;
+        int lowestUnassignedMotifNode = Integer.MAX_VALUE;
+        for (int i = 0; i < symGraph.colorToTopMotifnode.size(); i++) {
+            List<Integer> listi = symGraph.colorToTopMotifnode.get(i);
+            if (listi.size() != 1 && listi.get(0) < lowestUnassignedMotifNode) {
+                splitcolor = i;
+                lowestUnassignedMotifNode = listi.get(0);
             }
         }
-        //export partial orbit cells as symmetry-breaking constraints
-        if (main) {
-            symmetricProperties.fix(top, orbits);
+        return splitcolor;
+    }
+
+    /**
+     * Reads the permutation from an OPP state in which all motif nodes are
+     * coupled
+     */
+    private static int[] getPermutation(SymGraph symGraph) {
+        int[] perm = new int[symGraph.motif.getNrMotifNodes()];
+        for (int j = 0; j < perm.length; j++) {
+            perm[symGraph.colorToTopMotifnode.get(j).get(0)] = symGraph.colorToBottomMotifnode.get(j).get(0);
         }
+        return perm;
+    }
+
+    /**
+     * Checks whether a permutation maps every motif link on a motif link with
+     * the same motif link ID
+     */
+    private static boolean isAutomorphism(Motif motif, int[] perm) {
+        for (int a = 0; a < perm.length; a++) {
+            int[] connections = motif.getConnectionsOfMotifNode(a);
+            MotifLink[] links = motif.getLinksOfMotifNode(a);
+            int[] imageConnections = motif.getConnectionsOfMotifNode(perm[a]);
+            MotifLink[] imageLinks = motif.getLinksOfMotifNode(perm[a]);
+            if (connections.length != imageConnections.length) {
+                return false;
+            }
+            outer:
+            for (int j = 0; j < connections.length; j++) {
+                for (int k = 0; k < imageConnections.length; k++) {
+                    if (imageConnections[k] == perm[connections[j]] && imageLinks[k] == links[j]) {
+                        continue outer;
+                    }
+                }
+                return false;
+            }
+        }
+        return true;
     }
 }
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2013 Maarten Houbraken
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Software available at https://github.com/mhoubraken/ISMAGS
+ * Author : Maarten Houbraken (maarten.houbraken@intec.ugent.be)
+ */
+package datastructures;
+
+/**
+ * Intersection of sorted ranges of int arrays without duplicates. Ranges of
+ * similar size are intersected by a linear merge, while a small range is
+ * intersected with a much larger range by galloping through the larger range.
+ */
+public class Intersection {
+
+	/**
+	 * Minimal ratio between the sizes of the larger and the smaller range for
+	 * which galloping is used instead of a linear merge
+	 */
+	static final int GALLOP_RATIO = 16;
+
+	private Intersection() {
+	}
+
+	/**
+	 * Intersects two sorted ranges and writes the result to out, starting at
+	 * position 0. The output array may be the same array as a or b, provided
+	 * the range in that array starts at position 0.
+	 *
+	 * @param a
+	 *            array containing the first range
+	 * @param aFrom
+	 *            start of the first range (inclusive)
+	 * @param aTo
+	 *            end of the first range (exclusive)
+	 * @param b
+	 *            array containing the second range
+	 * @param bFrom
+	 *            start of the second range (inclusive)
+	 * @param bTo
+	 *            end of the second range (exclusive)
+	 * @param out
+	 *            array receiving the intersection, at least as large as the
+	 *            smaller range
+	 * @return size of the intersection
+	 */
+	public static int intersect(int[] a, int aFrom, int aTo, int[] b, int bFrom, int bTo, int[] out) {
+		int aSize = aTo - aFrom;
+		int bSize = bTo - bFrom;
+		if (aSize <= 0 || bSize <= 0) {
+			return 0;
+		}
+		if (aSize > bSize) {
+			if (aSize / bSize >= GALLOP_RATIO) {
+				return gallop(b, bFrom, bTo, a, aFrom, aTo, out);
+			}
+		} else if (bSize / aSize >= GALLOP_RATIO) {
+			return gallop(a, aFrom, aTo, b, bFrom, bTo, out);
+		}
+		return merge(a, aFrom, aTo, b, bFrom, bTo, out);
+	}
+
+	/**
+	 * Intersects two sorted ranges by a linear merge
+	 *
+	 * @see #intersect(int[], int, int, int[], int, int, int[])
+	 */
+	static int merge(int[] a, int aFrom, int aTo, int[] b, int bFrom, int bTo, int[] out) {
+		int i = aFrom;
+		int j = bFrom;
+		int size = 0;
+		while (i < aTo && j < bTo) {
+			int x = a[i];
+			int y = b[j];
+			if (x < y) {
+				i++;
+			} else if (x > y) {
+				j++;
+			} else {
+				out[size++] = x;
+				i++;
+				j++;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Intersects a small sorted range with a large one by searching every
+	 * element of the small range in the remainder of the large range, using
+	 * an exponential search followed by a binary search
+	 *
+	 * @param small
+	 *            array containing the smaller range
+	 * @param large
+	 *            array containing the larger range
+	 * @see #intersect(int[], int, int, int[], int, int, int[])
+	 */
+	static int gallop(int[] small, int smallFrom, int smallTo, int[] large, int largeFrom, int largeTo, int[] out) {
+		int size = 0;
+		int pos = largeFrom;
+		for (int i = smallFrom; i < smallTo && pos < largeTo; i++) {
+			int x = small[i];
+			if (large[pos] < x) {
+				// find a bracket (low, high] containing the first element >= x
+				int low = pos;
+				int step = 1;
+				int high = pos + step;
+				while (high < largeTo && large[high] < x) {
+					low = high;
+					step <<= 1;
+					high = pos + step;
+				}
+				if (high >= largeTo) {
+					high = largeTo - 1;
+					if (large[high] < x) {
+						break;
+					}
+				}
+				// binary search for the first element >= x in (low, high]
+				low++;
+				while (low < high) {
+					int middle = (low + high) >>> 1;
+					if (large[middle] < x) {
+						low = middle + 1;
+					} else {
+						high = middle;
+					}
+				}
+				pos = low;
+			}
+			if (large[pos] == x) {
+				out[size++] = x;
+				pos++;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the position of the first element in a sorted range that is
+	 * larger than the key
+	 *
+	 * @param a
+	 *            array containing the range
+	 * @param from
+	 *            start of the range (inclusive)
+	 * @param to
+	 *            end of the range (exclusive)
+	 * @param key
+	 *            value to compare to
+	 * @return position of the first element larger than key, to if there is
+	 *         none
+	 */
+	public static int upperBound(int[] a, int from, int to, int key) {
+		while (from < to) {
+			int middle = (from + to) >>> 1;
+			if (a[middle] <= key) {
+				from = middle + 1;
+			} else {
+				to = middle;
+			}
+		}
+		return from;
+	}
+
+	/**
+	 * Returns the position of the first element in a sorted range that is not
+	 * smaller than the key
+	 *
+	 * @param a
+	 *            array containing the range
+	 * @param from
+	 *            start of the range (inclusive)
+	 * @param to
+	 *            end of the range (exclusive)
+	 * @param key
+	 *            value to compare to
+	 * @return position of the first element larger than or equal to key, to if
+	 *         there is none
+	 */
+	public static int lowerBound(int[] a, int from, int to, int key) {
+		while (from < to) {
+			int middle = (from + to) >>> 1;
+			if (a[middle] < key) {
+				from = middle + 1;
+			} else {
+				to = middle;
+			}
+		}
+		return from;
+	}
+}
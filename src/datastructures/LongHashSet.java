@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2013 Maarten Houbraken
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Software available at https://github.com/mhoubraken/ISMAGS
+ * Author : Maarten Houbraken (maarten.houbraken@intec.ugent.be)
+ */
+package datastructures;
+
+/**
+ * Set of longs using open addressing with linear probing, without boxing the
+ * elements. The key 0 marks an empty slot and is tracked separately.
+ */
+public class LongHashSet {
+
+	private static final int MIN_CAPACITY = 16;
+
+	private long[] keys;
+	private int mask;
+	private int size;
+	private boolean containsZero;
+
+	/**
+	 * Creates an empty set
+	 */
+	public LongHashSet() {
+		this(MIN_CAPACITY);
+	}
+
+	/**
+	 * Creates an empty set that holds the expected number of elements without
+	 * being resized
+	 *
+	 * @param expectedSize
+	 *            expected number of elements
+	 */
+	public LongHashSet(int expectedSize) {
+		int capacity = MIN_CAPACITY;
+		while (capacity < expectedSize * 2L && capacity < 1 << 30) {
+			capacity <<= 1;
+		}
+		keys = new long[capacity];
+		mask = capacity - 1;
+	}
+
+	/**
+	 * Adds an element to the set
+	 *
+	 * @param key
+	 *            element to be added
+	 * @return true if the element was not yet in the set
+	 */
+	public boolean add(long key) {
+		if (key == 0) {
+			if (containsZero) {
+				return false;
+			}
+			containsZero = true;
+			size++;
+			return true;
+		}
+		int slot = slot(key);
+		while (keys[slot] != 0) {
+			if (keys[slot] == key) {
+				return false;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = key;
+		if (++size * 2L > keys.length) {
+			grow();
+		}
+		return true;
+	}
+
+	/**
+	 * Checks whether an element is in the set
+	 *
+	 * @param key
+	 *            element to be looked up
+	 * @return true if the element is in the set
+	 */
+	public boolean contains(long key) {
+		if (key == 0) {
+			return containsZero;
+		}
+		int slot = slot(key);
+		while (keys[slot] != 0) {
+			if (keys[slot] == key) {
+				return true;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return false;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	private int slot(long key) {
+		long hash = key * 0x9e3779b97f4a7c15L;
+		return (int) (hash ^ (hash >>> 32)) & mask;
+	}
+
+	/**
+	 * Doubles the capacity and reinserts all elements
+	 */
+	private void grow() {
+		long[] old = keys;
+		keys = new long[old.length * 2];
+		mask = keys.length - 1;
+		for (long key : old) {
+			if (key != 0) {
+				int slot = slot(key);
+				while (keys[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = key;
+			}
+		}
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2013 Maarten Houbraken
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Software available at https://github.com/mhoubraken/ISMAGS
+ * Author : Maarten Houbraken (maarten.houbraken@intec.ugent.be)
+ */
+package datastructures;
+
+/**
+ * Compressed bitmap of node indices, used for the neighbour lists of high
+ * degree nodes. The index range is divided in chunks of 2^16 indices (roaring
+ * style): sparse chunks store the low 16 bits of their indices in a sorted
+ * array, dense chunks use a plain bitmap. A chunk never takes more than 2
+ * bytes per index it contains.
+ */
+public class NodeBitmap {
+
+	private static final int CHUNK_BITS = 16;
+	private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+	/**
+	 * Maximal number of indices stored in an array chunk, larger chunks are
+	 * stored as a bitmap of the same memory size
+	 */
+	private static final int ARRAY_LIMIT = 1 << (CHUNK_BITS - 4);
+
+	private int firstChunk;
+	private char[][] arrays;
+	private long[][] bitmaps;
+
+	/**
+	 * Creates a bitmap containing a sorted range of node indices
+	 *
+	 * @param nodes
+	 *            array containing the indices
+	 * @param start
+	 *            start of the range (inclusive)
+	 * @param end
+	 *            end of the range (exclusive), larger than start
+	 */
+	public NodeBitmap(int[] nodes, int start, int end) {
+		firstChunk = nodes[start] >>> CHUNK_BITS;
+		int nrChunks = (nodes[end - 1] >>> CHUNK_BITS) - firstChunk + 1;
+		arrays = new char[nrChunks][];
+		bitmaps = new long[nrChunks][];
+		int i = start;
+		while (i < end) {
+			int chunk = nodes[i] >>> CHUNK_BITS;
+			int j = i;
+			while (j < end && nodes[j] >>> CHUNK_BITS == chunk) {
+				j++;
+			}
+			if (j - i > ARRAY_LIMIT) {
+				long[] bitmap = new long[1 << (CHUNK_BITS - 6)];
+				for (int k = i; k < j; k++) {
+					int low = nodes[k] & CHUNK_MASK;
+					bitmap[low >>> 6] |= 1L << low;
+				}
+				bitmaps[chunk - firstChunk] = bitmap;
+			} else {
+				char[] array = new char[j - i];
+				for (int k = i; k < j; k++) {
+					array[k - i] = (char) (nodes[k] & CHUNK_MASK);
+				}
+				arrays[chunk - firstChunk] = array;
+			}
+			i = j;
+		}
+	}
+
+	/**
+	 * Checks whether the bitmap contains a node index
+	 *
+	 * @param node
+	 *            node index
+	 * @return true if the index is in the bitmap
+	 */
+	public boolean contains(int node) {
+		int chunk = (node >>> CHUNK_BITS) - firstChunk;
+		if (chunk < 0 || chunk >= arrays.length) {
+			return false;
+		}
+		int low = node & CHUNK_MASK;
+		long[] bitmap = bitmaps[chunk];
+		if (bitmap != null) {
+			return (bitmap[low >>> 6] & (1L << low)) != 0;
+		}
+		char[] array = arrays[chunk];
+		if (array == null) {
+			return false;
+		}
+		int from = 0;
+		int to = array.length - 1;
+		while (from <= to) {
+			int middle = (from + to) >>> 1;
+			int value = array[middle];
+			if (value < low) {
+				from = middle + 1;
+			} else if (value > low) {
+				to = middle - 1;
+			} else {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Removes the nodes that are not in the bitmap from the start of an array
+	 * of nodes, keeping their order
+	 *
+	 * @param nodes
+	 *            array of nodes
+	 * @param size
+	 *            number of nodes at the start of the array
+	 * @return number of nodes left at the start of the array
+	 */
+	public int retain(int[] nodes, int size) {
+		int newSize = 0;
+		for (int i = 0; i < size; i++) {
+			int node = nodes[i];
+			if (contains(node)) {
+				nodes[newSize++] = node;
+			}
+		}
+		return newSize;
+	}
+}
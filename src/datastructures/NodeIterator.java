@@ -19,43 +19,55 @@
  */
 package datastructures;
 
-import java.lang.reflect.Array;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
-import java.util.ListIterator;
-import java.util.Stack;
-import network.Node;
 
 /**
  * Keeps track of all lists that need to be intersected to obtain candidates
- * graph nodes. Initial
+ * graph nodes. Graph nodes are identified by their index in the CSR
+ * representation of the network, lists are sorted ranges of int arrays.
+ * <p>
+ * The candidates of an intersection are stored in a child NodeIterator that
+ * is reused by every intersection of its parent. A motif node is mapped at
+ * one depth of the search tree at a time, so the child is no longer in use
+ * when its parent is intersected again, and intersecting allocates nothing
+ * once the candidate buffer has grown large enough.
  */
 public class NodeIterator {
 
     private int motifNodeID;
-//    private NodeSet nodes;
-    private ArrayList<Node> nodes;
-//    private Stack<NodeSet> neighbourLists;
-    private Stack<ArrayList<Node>> neighbourLists;
-    private List<ArrayList<Node>> initialLists;
+    private int[] nodes;
+    private int nrNodes;
+    private int[][] neighbourLists;
+    private int[] listStart;
+    private int[] listEnd;
+    private NodeBitmap[] listBitmaps;
+    private int[] nodeCausingRestriction;
+    private int[] listOrder;
+    private int nrLists;
+    private List<int[]> initialLists;
     private int minSetSize;
     private NodeIterator parent;
-    private Stack<Node> nodeCausingRestriction;
+    private NodeIterator child;
+    /**
+     * Sizes seen by the last intersection, kept for instrumentation: the
+     * smallest list, its part within the bounds and the number of candidates
+     * removed because they were already mapped
+     */
+    private int lastListSize;
+    private int lastBoundedSize;
+    private int lastNrMappedRemoved;
 
     /**
-     * Create a NodeIterator with an initial set of nodes
+     * Create a NodeIterator holding the candidates of intersections
      *
-     * @param nodes node candidates
-     * @param motifNodeID motifnode for which the nodes are candidates
+     * @param parent NodeIterator from which the candidates are derived
      */
-    private NodeIterator(ArrayList<Node> nodes, NodeIterator parent) {
-        this.nodes = nodes;
+    private NodeIterator(NodeIterator parent) {
+        this.nodes = new int[16];
         this.parent = parent;
         this.motifNodeID = parent.motifNodeID;
-        neighbourLists = new Stack<ArrayList<Node>>();
-        nodeCausingRestriction = new Stack<Node>();
-        minSetSize = nodes.size();
     }
 
     /**
@@ -67,109 +79,169 @@ public class NodeIterator {
      */
     public NodeIterator(int motifNodeID) {
         this.motifNodeID = motifNodeID;
-        initialLists = new ArrayList<ArrayList<Node>>();
-        neighbourLists = new Stack<ArrayList<Node>>();
-        nodeCausingRestriction = new Stack<Node>();
+        initialLists = new ArrayList<int[]>();
+        neighbourLists = new int[4][];
+        listStart = new int[4];
+        listEnd = new int[4];
+        listBitmaps = new NodeBitmap[4];
+        nodeCausingRestriction = new int[4];
+        listOrder = new int[4];
         minSetSize = Integer.MAX_VALUE;
     }
 
     /**
-     * Creates a NodeIterator based on the constraint lists
+     * Creates a NodeIterator based on the constraint lists. The lists are
+     * intersected from small to large, starting from the range of the smallest
+     * list within the bounds. Lists of high degree nodes are not searched, but
+     * candidates are probed in their bitmap.
      *
-     * @param min lower bound on the nodes (ID-based)
-     * @param max upper bound on the nodes (ID-based)
-     * @return child NodeIterator object, null if no candidates were found
+     * @param min lower bound on the nodes (exclusive), -1 if there is no bound
+     * @param max upper bound on the nodes (exclusive), Integer.MAX_VALUE if
+     * there is no bound
+     * @param mappedNodes current partial node mapping, its nodes are excluded
+     * from the candidates
+     * @return child NodeIterator object, valid until the next call, null if no
+     * candidates were found
      */
-    public NodeIterator intersect(Node min, Node max) {
-        if (neighbourLists.isEmpty()) {
+    public NodeIterator intersect(int min, int max, int[] mappedNodes) {
+        lastListSize = 0;
+        lastBoundedSize = 0;
+        lastNrMappedRemoved = 0;
+        if (nrLists == 0) {
             return null;
         }
-        ArrayList<Node> result = new ArrayList<Node>();
-        int stacksize = neighbourLists.size();
-        int smallestSet = stacksize - 1;
-        ArrayList<Node> nset = neighbourLists.get(smallestSet);
-        if (nset.size() > minSetSize) {//minsetsize is lazy updated
-            for (int i = 0; i < stacksize - 1; i++) {
-                ArrayList<Node> nodeSet = neighbourLists.get(i);
-                if (nodeSet.size() < minSetSize) {
-                    nset = nodeSet;
-                    minSetSize = nset.size();
-                    smallestSet = i;
-                }
+        // order the lists by size
+        for (int i = 0; i < nrLists; i++) {
+            int size = listEnd[i] - listStart[i];
+            int j = i;
+            while (j > 0 && listEnd[listOrder[j - 1]] - listStart[listOrder[j - 1]] > size) {
+                listOrder[j] = listOrder[j - 1];
+                j--;
             }
+            listOrder[j] = i;
         }
-        List<Node> nodes = nset;
-        int startIndex = 0;
-        if (min != null) {
-            int p = Collections.binarySearch(nodes, min);
-            if (p >= 0) {
-                startIndex = p + 1;
-            } else {
-                startIndex = -p - 1;
-            }
+        int smallestSet = listOrder[0];
+        int[] nset = neighbourLists[smallestSet];
+        int startIndex = Intersection.upperBound(nset, listStart[smallestSet], listEnd[smallestSet], min);
+        int endIndex = Intersection.lowerBound(nset, startIndex, listEnd[smallestSet], max);
+        lastListSize = listEnd[smallestSet] - listStart[smallestSet];
+        lastBoundedSize = endIndex - startIndex;
+        if (startIndex == endIndex) {
+            return null;
+        }
+        if (child == null) {
+            child = new NodeIterator(this);
         }
-        int endIndex = nodes.size();
-        if (max != null) {
-            int p = Collections.binarySearch(nodes, max);
-            if (p >= 0) {
-                endIndex = p;
-            } else {
-                endIndex = -p - 1;
+        if (child.nodes.length < endIndex - startIndex) {
+            child.nodes = new int[Math.max(endIndex - startIndex, 2 * child.nodes.length)];
+        }
+        int[] result = child.nodes;
+        int size;
+        if (nrLists == 1 || listBitmaps[listOrder[1]] != null) {
+            size = endIndex - startIndex;
+            System.arraycopy(nset, startIndex, result, 0, size);
+        } else {
+            int l = listOrder[1];
+            size = Intersection.intersect(nset, startIndex, endIndex, neighbourLists[l], listStart[l], listEnd[l],
+                    result);
+        }
+        for (int i = 1; i < nrLists && size > 0; i++) {
+            int l = listOrder[i];
+            if (listBitmaps[l] != null) {
+                size = listBitmaps[l].retain(result, size);
+            } else if (i > 1) {
+                size = Intersection.intersect(result, 0, size, neighbourLists[l], listStart[l], listEnd[l], result);
             }
         }
-        ListIterator<Node> listIterator = nodes.listIterator(startIndex);
+        // remove the nodes that are already mapped
+        int nrCandidates = 0;
         f:
-        for (int k = startIndex; k < endIndex; k++) {
-            Node node = listIterator.next();
-            if (node.used == true) {
-                continue;
-            }
-
-            int i = 0;
-            for (; i < neighbourLists.size(); i++) {
-                if (i != smallestSet && !neighbourLists.get(i).contains(node)) {
+        for (int k = 0; k < size; k++) {
+            int node = result[k];
+            for (int mappedNode : mappedNodes) {
+                if (mappedNode == node) {
                     continue f;
                 }
             }
-            result.add(node);
+            result[nrCandidates++] = node;
         }
-        if (result.isEmpty()) {
+        lastNrMappedRemoved = size - nrCandidates;
+        if (nrCandidates == 0) {
             return null;
         }
-        NodeIterator newIterator = new NodeIterator(result, this);
-        return newIterator;
+        child.nrNodes = nrCandidates;
+        child.minSetSize = nrCandidates;
+        return child;
+    }
+
+    /**
+     * Returns the size of the smallest constraining list of the last
+     * intersection
+     *
+     * @return number of nodes in the list the intersection started from
+     */
+    public int getLastListSize() {
+        return lastListSize;
+    }
+
+    /**
+     * Returns the size of the part of the smallest constraining list of the
+     * last intersection within the bounds
+     *
+     * @return number of nodes of the list within the bounds
+     */
+    public int getLastBoundedSize() {
+        return lastBoundedSize;
+    }
+
+    /**
+     * Returns the number of nodes in all lists of the last intersection that
+     * were removed because they were already mapped
+     *
+     * @return number of mapped nodes removed
+     */
+    public int getLastNrMappedRemoved() {
+        return lastNrMappedRemoved;
     }
 
     /**
      * Adds a new list of candidate nodes for the motif node to the set of
      * constraining lists
      *
-     * @param list list of candidate nodes
+     * @param list array containing the list of candidate nodes
+     * @param start start of the list in the array (inclusive)
+     * @param end end of the list in the array (exclusive)
+     * @param bitmap the list as bitmap, null if not available
      * @param node graph node causing the constraint
      */
-    public void addRestrictionList(ArrayList<Node> list, Node node) {
-        if (!neighbourLists.contains(list)) {
-            neighbourLists.push(list);
-            if (list.size() < minSetSize) {
-                minSetSize = list.size();
-            }
-            nodeCausingRestriction.push(node);
+    public void addRestrictionList(int[] list, int start, int end, NodeBitmap bitmap, int node) {
+        if (nrLists == neighbourLists.length) {
+            int capacity = 2 * nrLists;
+            neighbourLists = Arrays.copyOf(neighbourLists, capacity);
+            listStart = Arrays.copyOf(listStart, capacity);
+            listEnd = Arrays.copyOf(listEnd, capacity);
+            listBitmaps = Arrays.copyOf(listBitmaps, capacity);
+            nodeCausingRestriction = Arrays.copyOf(nodeCausingRestriction, capacity);
+            listOrder = new int[capacity];
         }
+        neighbourLists[nrLists] = list;
+        listStart[nrLists] = start;
+        listEnd[nrLists] = end;
+        listBitmaps[nrLists] = bitmap;
+        nodeCausingRestriction[nrLists] = node;
+        nrLists++;
     }
 
     /**
      * Adds a new list of candidate nodes for the motif node during the
      * initialisation
      *
-     * @param list list of candidate nodes
+     * @param list sorted list of candidate nodes
      */
-    public void addRestrictionList(ArrayList<Node> list) {
-        if (initialLists == null) {
-            initialLists = new ArrayList<ArrayList<Node>>();
-        }
-        if (list.size() < minSetSize) {
+    public void addRestrictionList(int[] list) {
+        if (list.length < minSetSize) {
             initialLists.add(0, list);
-            minSetSize = list.size();
+            minSetSize = list.length;
         } else {
             initialLists.add(list);
         }
@@ -181,75 +253,62 @@ public class NodeIterator {
      *
      * @param n graph node inducing the constraining list
      */
-    public void removeRestrictionList(Node n) {
-        while (!nodeCausingRestriction.empty() && nodeCausingRestriction.peek() == n) {
-            neighbourLists.pop();
-            nodeCausingRestriction.pop();
+    public void removeRestrictionList(int n) {
+        while (nrLists > 0 && nodeCausingRestriction[nrLists - 1] == n) {
+            nrLists--;
+            neighbourLists[nrLists] = null;
+            listBitmaps[nrLists] = null;
         }
     }
 
     /**
      * Returns the candidate graph nodes. If no set has been calculated
-     * (=initially) a linear sweep is used
+     * (=initially) the initial lists are intersected, starting from the
+     * smallest list
      *
-     * @return list of candidate nodes
+     * @return array starting with the {@link #getNrNodes()} sorted candidate
+     * nodes, should not be modified
      */
-    @SuppressWarnings("unchecked")
-	public ArrayList<Node> getNodeSet() {
+    public int[] getNodeSet() {
         if (nodes != null) {
             return nodes;
-        } else {
-            int size = initialLists.size();
-            if (size == 1) {
-                ArrayList<Node> ns = new ArrayList<Node>(initialLists.get(0));
-                return ns;
-            }
-            ListIterator<Node>[] its = (ListIterator<Node>[]) Array.newInstance(ListIterator.class, size);
-            for (int i = 0; i < size; i++) {
-                its[i] = initialLists.get(i).listIterator();
-            }
-            if (!its[0].hasNext()) {
-                return new ArrayList<Node>();
-            }
-            Node ni = its[0].next();
-            int j = 1;
-            int sim = 1;
-            ArrayList<Node> ret = new ArrayList<Node>();
-            out:
-            while (true) {
-                if (!its[j].hasNext()) {
-                    break out;
-                }
-                Node nj = its[j].next();
-                while (ni.compareTo(nj)>0) {
-                    if (!its[j].hasNext()) {
-                        break out;
-                    }
-                    nj = its[j].next();
-                    sim = 1;
-                }
-                while (ni.compareTo(nj)<0) {
-                    if (!its[0].hasNext()) {
-                        break out;
-                    }
-                    ni = its[0].next();
-                    sim = 1;
-                }
-                if (nj == ni) {
-                    sim++;
-                    if (sim == size) {
-                        ret.add(nj);
-                        sim = 1;
-                    }
-                } else {
-                    sim = 1;
-                }
-                j = ((j) % (size - 1)) + 1;
-            }
-            return ret;
         }
+        int nrInitialLists = initialLists.size();
+        if (nrInitialLists == 0) {
+            nodes = new int[0];
+            return nodes;
+        }
+        int[] ret = initialLists.get(0).clone();
+        int size = ret.length;
+        for (int i = 1; i < nrInitialLists && size > 0; i++) {
+            int[] list = initialLists.get(i);
+            size = Intersection.intersect(ret, 0, size, list, 0, list.length, ret);
+        }
+        nodes = size == ret.length ? ret : Arrays.copyOf(ret, size);
+        nrNodes = size;
+        return nodes;
     }
 
+    /**
+     * Returns the number of candidate graph nodes at the start of
+     * {@link #getNodeSet()}
+     *
+     * @return number of candidates
+     */
+    public int getNrNodes() {
+        getNodeSet();
+        return nrNodes;
+    }
+
+	/**
+	 * Returns the size of the smallest constraining list
+	 *
+	 * @return upper bound on the number of candidates
+	 */
+	public int getMinSetSize() {
+		return minSetSize;
+	}
+
 	public NodeIterator getParent() {
 		return parent;
 	}
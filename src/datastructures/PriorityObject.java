@@ -19,24 +19,34 @@
  */
 package datastructures;
 
-import network.*;
-
 public class PriorityObject implements Comparable<PriorityObject> {
 
-    private Node start;
+    private int start;
     private int fromPosition;
     private int toPosition;
     private int numberOfNeighbours;
     public int qpos;
 
-    public PriorityObject(Node start, int fromPosition, int toPosition, int numberOfNeighbours) {
+    public PriorityObject(int start, int fromPosition, int toPosition, int numberOfNeighbours) {
         this.start = start;
         this.fromPosition = fromPosition;
         this.toPosition = toPosition;
         this.numberOfNeighbours = numberOfNeighbours;
     }
 
-    public Node getNode() {
+    /**
+     * Reuses this object for a new constraining list between the same motif
+     * nodes
+     *
+     * @param start graph node causing the constraint
+     * @param numberOfNeighbours size of the constraining list
+     */
+    void set(int start, int numberOfNeighbours) {
+        this.start = start;
+        this.numberOfNeighbours = numberOfNeighbours;
+    }
+
+    public int getNode() {
         return start;
     }
 
@@ -19,47 +19,73 @@
  */
 package datastructures;
 
-import java.util.*;
-import network.*;
-
+/**
+ * Keeps, for every motif node, the constraining lists imposed by the mapped
+ * motif nodes in a priority queue. A motif node constrains another motif node
+ * by at most one list at a time, so one PriorityObject per pair of motif nodes
+ * is allocated up front and reused for every list.
+ */
 public class PriorityQueueMap {
 
     private MPQ[] map;
+    private PriorityObject[][] objects;
 
     public PriorityQueueMap(int n) {
         map = new MPQ[n];
+        objects = new PriorityObject[n][n];
         for (int i = 0; i < n; i++) {
             map[i] = new MPQ(n);
+            for (int j = 0; j < n; j++) {
+                objects[i][j] = new PriorityObject(-1, i, j, 0);
+            }
         }
     }
 
-    public void add(Node node, int from, int to, int nbs) {
-        map[to].add(new PriorityObject(node, from, to, nbs));
+    /**
+     * Adds a constraining list, reusing the PriorityObject of the pair of
+     * motif nodes
+     *
+     * @param node graph node causing the constraint
+     * @param from motif node the graph node is mapped on
+     * @param to motif node being constrained
+     * @param nbs size of the constraining list
+     */
+    public void add(int node, int from, int to, int nbs) {
+        PriorityObject po = objects[from][to];
+        po.set(node, nbs);
+        map[to].add(po);
     }
 
     public void add(PriorityObject ro) {
         map[ro.getTo()].add(ro);
     }
 
-    public PriorityObject poll(Set<Integer> indices) {
-        Iterator<Integer> iterator = indices.iterator();
-
-        int element = (int) iterator.next();
-        MPQ minpq = map[element];
-        if (iterator.hasNext()) {
-            PriorityObject po = minpq.peek();
-            int minScore = po == null ? Integer.MAX_VALUE : po.getScore();
-            do {
-                element = iterator.next();
-                MPQ pq = map[element];
-                if (!pq.isEmpty()) {
-                    int score = pq.peek().getScore();
-                    if (score < minScore) {
-                        minScore = score;
-                        minpq = pq;
-                    }
+    /**
+     * Returns the smallest constraining list of the motif nodes that are not
+     * excluded. Ties are resolved in favour of the lowest motif node.
+     *
+     * @param excluded motif nodes to be skipped, indexed by motif node
+     * @return smallest constraining list, remains in its queue
+     */
+    public PriorityObject poll(boolean[] excluded) {
+        MPQ minpq = null;
+        int minScore = Integer.MAX_VALUE;
+        for (int element = 0; element < map.length; element++) {
+            if (excluded[element]) {
+                continue;
+            }
+            MPQ pq = map[element];
+            if (minpq == null) {
+                minpq = pq;
+                PriorityObject po = pq.peek();
+                minScore = po == null ? Integer.MAX_VALUE : po.getScore();
+            } else if (!pq.isEmpty()) {
+                int score = pq.peek().getScore();
+                if (score < minScore) {
+                    minScore = score;
+                    minpq = pq;
                 }
-            } while (iterator.hasNext());
+            }
         }
         return minpq.peek();
     }
@@ -34,6 +34,7 @@ public class SymProp {
     List<int[]> perms;
     Map<Integer, Set<Integer>> smaller;
     Map<Integer, Set<Integer>> larger;
+    int[] orbits;
 
     public SymProp(int nrMotifNodes, Map<Integer, Set<Integer>> smaller, Map<Integer, Set<Integer>> larger) {
         this.nrMotifNodes = nrMotifNodes;
@@ -46,6 +47,26 @@ public class SymProp {
         perms.add(perm);
     }
 
+    public List<int[]> getPermutations() {
+        return perms;
+    }
+
+    public Map<Integer, Set<Integer>> getSmaller() {
+        return smaller;
+    }
+
+    public Map<Integer, Set<Integer>> getLarger() {
+        return larger;
+    }
+
+    public int[] getOrbits() {
+        return orbits;
+    }
+
+    public void setOrbits(int[] orbits) {
+        this.orbits = orbits;
+    }
+
     /**
      * Extracts symmetry-breaking constraints from the orbit of the specified
      * motif node
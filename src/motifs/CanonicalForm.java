@@ -0,0 +1,342 @@
+/*
+ * Copyright (C) 2013 Maarten Houbraken
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Software available at https://github.com/mhoubraken/ISMAGS
+ * Author : Maarten Houbraken (maarten.houbraken@intec.ugent.be)
+ */
+package motifs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Canonical form of a motif: the matrix of motif link IDs between the motif
+ * nodes, taken in a canonical order. Two motifs have equal canonical forms if
+ * and only if they are isomorphic, taking the types and directions of the
+ * links into account.
+ * <p>
+ * The canonical order is found by individualisation and refinement. The motif
+ * nodes are coloured by their links to the other colours until the colouring
+ * is stable, after which every node of the first colour with more than one
+ * node is given a colour of its own in turn. Every colouring in which all
+ * nodes have distinct colours orders the motif nodes, and the order with the
+ * lexicographically smallest matrix is canonical. A branch is abandoned as
+ * soon as it reaches the matrix of the first branch, since it is then the
+ * image of an explored branch under an automorphism of the motif. The
+ * automorphisms found this way are also used to skip branches along the first
+ * path that are images of explored branches.
+ */
+public class CanonicalForm {
+
+	private int nrMotifNodes;
+	private int[] code;
+	private int[] positions;
+
+	private CanonicalForm(int nrMotifNodes, int[] code, int[] positions) {
+		this.nrMotifNodes = nrMotifNodes;
+		this.code = code;
+		this.positions = positions;
+	}
+
+	/**
+	 * Computes the canonical form of a finalised motif
+	 *
+	 * @param motif
+	 *            motif to be labelled
+	 * @return canonical form of the motif
+	 */
+	public static CanonicalForm of(Motif motif) {
+		int nrMotifNodes = motif.getNrMotifNodes();
+		int[][] adjacency = new int[nrMotifNodes][nrMotifNodes];
+		for (int i = 0; i < nrMotifNodes; i++) {
+			Arrays.fill(adjacency[i], -1);
+			int[] connections = motif.getConnectionsOfMotifNode(i);
+			MotifLink[] links = motif.getLinksOfMotifNode(i);
+			for (int j = 0; j < connections.length; j++) {
+				adjacency[i][connections[j]] = links[j].getMotifLinkID();
+			}
+		}
+		Labelling labelling = new Labelling(adjacency);
+		labelling.search(new int[nrMotifNodes], 0);
+		return new CanonicalForm(nrMotifNodes, labelling.bestCode, labelling.bestPositions);
+	}
+
+	public int getNrMotifNodes() {
+		return nrMotifNodes;
+	}
+
+	/**
+	 * Returns the motif link IDs between the motif nodes in canonical order,
+	 * row by row, -1 if two motif nodes are not linked
+	 *
+	 * @return matrix of motif link IDs, must not be modified
+	 */
+	public int[] getCode() {
+		return code;
+	}
+
+	/**
+	 * Returns the position of every motif node in the canonical order
+	 *
+	 * @return canonical position, indexed by motif node, must not be modified
+	 */
+	public int[] getPositions() {
+		return positions;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof CanonicalForm && Arrays.equals(code, ((CanonicalForm) o).code);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(code);
+	}
+
+	/**
+	 * Search tree of the individualisation and refinement procedure
+	 */
+	private static class Labelling {
+
+		private int nrMotifNodes;
+		private int[][] adjacency;
+		private int[][] neighbours;
+		private int[] path;
+		private int[] firstPath;
+		private int[] firstNodes;
+		private int[] firstCode;
+		private int[] bestCode;
+		private int[] bestPositions;
+		/**
+		 * Automorphisms found by comparing leaves with the first leaf
+		 */
+		private List<int[]> automorphisms = new ArrayList<int[]>();
+
+		Labelling(int[][] adjacency) {
+			this.adjacency = adjacency;
+			nrMotifNodes = adjacency.length;
+			neighbours = new int[nrMotifNodes][];
+			for (int v = 0; v < nrMotifNodes; v++) {
+				int degree = 0;
+				for (int u = 0; u < nrMotifNodes; u++) {
+					if (adjacency[v][u] != -1) {
+						degree++;
+					}
+				}
+				neighbours[v] = new int[degree];
+				degree = 0;
+				for (int u = 0; u < nrMotifNodes; u++) {
+					if (adjacency[v][u] != -1) {
+						neighbours[v][degree++] = u;
+					}
+				}
+			}
+			path = new int[nrMotifNodes];
+		}
+
+		/**
+		 * Explores the subtree below a colouring
+		 *
+		 * @param colours
+		 *            colour of every motif node, refined in place
+		 * @param depth
+		 *            number of motif nodes individualised
+		 * @return depth at which the search continues with the next branch
+		 */
+		int search(int[] colours, int depth) {
+			refine(colours);
+			int[] sizes = new int[nrMotifNodes];
+			for (int colour : colours) {
+				sizes[colour]++;
+			}
+			int target = 0;
+			while (target < nrMotifNodes && sizes[target] <= 1) {
+				target++;
+			}
+			if (target == nrMotifNodes) {
+				return leaf(colours, depth);
+			}
+			boolean onFirstPath = firstPath == null || Arrays.equals(Arrays.copyOf(path, depth),
+					Arrays.copyOf(firstPath, depth));
+			boolean[] explored = new boolean[nrMotifNodes];
+			for (int v = 0; v < nrMotifNodes; v++) {
+				if (colours[v] != target || (onFirstPath && isEquivalent(v, explored, depth))) {
+					continue;
+				}
+				explored[v] = true;
+				path[depth] = v;
+				int[] individualised = new int[nrMotifNodes];
+				for (int u = 0; u < nrMotifNodes; u++) {
+					individualised[u] = 2 * colours[u] + (u == v ? 0 : 1);
+				}
+				int level = search(individualised, depth + 1);
+				if (level < depth) {
+					return level;
+				}
+			}
+			return depth - 1;
+		}
+
+		/**
+		 * Checks whether an automorphism that fixes the first motif nodes of
+		 * the path maps an explored branch onto a motif node
+		 */
+		private boolean isEquivalent(int v, boolean[] explored, int depth) {
+			int[] orbits = new int[nrMotifNodes];
+			for (int u = 0; u < nrMotifNodes; u++) {
+				orbits[u] = u;
+			}
+			for (int[] automorphism : automorphisms) {
+				boolean fixesPath = true;
+				for (int i = 0; i < depth && fixesPath; i++) {
+					fixesPath = automorphism[path[i]] == path[i];
+				}
+				if (fixesPath) {
+					for (int u = 0; u < nrMotifNodes; u++) {
+						int a = find(orbits, u);
+						int b = find(orbits, automorphism[u]);
+						orbits[Math.max(a, b)] = Math.min(a, b);
+					}
+				}
+			}
+			int orbit = find(orbits, v);
+			for (int u = 0; u < nrMotifNodes; u++) {
+				if (explored[u] && find(orbits, u) == orbit) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private static int find(int[] orbits, int u) {
+			while (orbits[u] != u) {
+				u = orbits[u];
+			}
+			return u;
+		}
+
+		/**
+		 * Compares the order given by a discrete colouring with the best order
+		 * found so far
+		 *
+		 * @return depth at which the search continues with the next branch
+		 */
+		private int leaf(int[] colours, int depth) {
+			int[] nodes = new int[nrMotifNodes];
+			for (int v = 0; v < nrMotifNodes; v++) {
+				nodes[colours[v]] = v;
+			}
+			int[] code = new int[nrMotifNodes * nrMotifNodes];
+			for (int a = 0; a < nrMotifNodes; a++) {
+				for (int b = 0; b < nrMotifNodes; b++) {
+					code[a * nrMotifNodes + b] = adjacency[nodes[a]][nodes[b]];
+				}
+			}
+			if (firstCode == null) {
+				firstCode = code;
+				firstPath = Arrays.copyOf(path, depth);
+				firstNodes = nodes;
+				bestCode = code;
+				bestPositions = colours;
+				return depth - 1;
+			}
+			if (compare(code, bestCode) < 0) {
+				bestCode = code;
+				bestPositions = colours;
+			}
+			if (Arrays.equals(code, firstCode)) {
+				// the leaves differ by an automorphism, which maps the branch
+				// of the first path at the branch point onto this branch
+				int[] automorphism = new int[nrMotifNodes];
+				for (int position = 0; position < nrMotifNodes; position++) {
+					automorphism[firstNodes[position]] = nodes[position];
+				}
+				automorphisms.add(automorphism);
+				int level = 0;
+				while (path[level] == firstPath[level]) {
+					level++;
+				}
+				return level;
+			}
+			return depth - 1;
+		}
+
+		/**
+		 * Refines a colouring until it is stable. Motif nodes keep their
+		 * relative order, nodes of the same colour are split by the motif link
+		 * IDs and colours of their neighbours. The colours are renumbered
+		 * from 0.
+		 */
+		private void refine(int[] colours) {
+			long[][] signatures = new long[nrMotifNodes][];
+			int[] order = new int[nrMotifNodes];
+			int nrColours = -1;
+			while (true) {
+				for (int v = 0; v < nrMotifNodes; v++) {
+					int[] neighboursOfNode = neighbours[v];
+					long[] signature = new long[neighboursOfNode.length + 1];
+					signature[0] = colours[v];
+					for (int k = 0; k < neighboursOfNode.length; k++) {
+						int u = neighboursOfNode[k];
+						signature[k + 1] = ((long) adjacency[v][u] << 32) | colours[u];
+					}
+					Arrays.sort(signature, 1, signature.length);
+					signatures[v] = signature;
+				}
+				// insertion sort, motifs are small
+				for (int i = 0; i < nrMotifNodes; i++) {
+					int j = i;
+					while (j > 0 && compareSignatures(signatures[order[j - 1]], signatures[i]) > 0) {
+						order[j] = order[j - 1];
+						j--;
+					}
+					order[j] = i;
+				}
+				int colour = 0;
+				for (int i = 0; i < nrMotifNodes; i++) {
+					if (i > 0 && compareSignatures(signatures[order[i - 1]], signatures[order[i]]) != 0) {
+						colour++;
+					}
+					colours[order[i]] = colour;
+				}
+				if (colour + 1 == nrColours) {
+					return;
+				}
+				nrColours = colour + 1;
+			}
+		}
+
+		private static int compareSignatures(long[] a, long[] b) {
+			for (int i = 0; i < a.length && i < b.length; i++) {
+				if (a[i] != b[i]) {
+					return a[i] < b[i] ? -1 : 1;
+				}
+			}
+			return a.length - b.length;
+		}
+
+		private static int compare(int[] a, int[] b) {
+			for (int i = 0; i < a.length; i++) {
+				if (a[i] != b[i]) {
+					return a[i] < b[i] ? -1 : 1;
+				}
+			}
+			return 0;
+		}
+	}
+}
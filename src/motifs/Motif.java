@@ -33,6 +33,7 @@ public class Motif {
     private MotifLink[][] links;
     private Map<Integer, ArrayList<Integer>> initialConnections;
     private int[][] finalConnections;
+    private CanonicalForm canonicalForm;
 
     /**
      * Creates a new motif without any edges
@@ -93,4 +94,17 @@ public class Motif {
     public MotifLink[] getLinksOfMotifNode(int motifNodeID) {
         return links[motifNodeID];
     }
+
+    /**
+     * Returns the canonical form of the finalised motif, which is shared by
+     * all motifs isomorphic to it
+     *
+     * @return canonical form, computed on the first call
+     */
+    public CanonicalForm getCanonicalForm() {
+        if (canonicalForm == null) {
+            canonicalForm = CanonicalForm.of(this);
+        }
+        return canonicalForm;
+    }
 }
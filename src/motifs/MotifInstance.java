@@ -23,10 +23,17 @@ import java.util.Arrays;
 import network.Node;
 
 /**
- * Represents a motif instance in the graph
+ * Represents a motif instance in the graph. Instances are equal if they map
+ * the motif nodes on the same graph nodes. Large numbers of instances are
+ * best kept in a {@link MotifInstanceSet}, which stores them as node indices.
  */
 public class MotifInstance {
 
+    /**
+     * Separator between the node descriptions of an instance
+     */
+    public static final char SEPARATOR = ';';
+
     private Node[] nodeMapping;
 
     public MotifInstance(Node[] mapping) {
@@ -41,15 +48,40 @@ public class MotifInstance {
 		return nodeMapping;
 	}
 
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof MotifInstance && Arrays.equals(nodeMapping, ((MotifInstance) o).nodeMapping);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 1;
+        for (Node node : nodeMapping) {
+            hash = 31 * hash + node.getID();
+        }
+        return hash;
+    }
+
 	@Override
     public String toString() {
-        String r = "";
-        for (int i = 0; i < nodeMapping.length; i++) {
-            Node node = nodeMapping[i];
-            r += node.getDescription();
-            if (i < nodeMapping.length - 1) {
-                r += ";";
+        return format(new StringBuilder(), nodeMapping).toString();
+    }
+
+    /**
+     * Appends the description of an instance, as written to output files:
+     * the descriptions of the graph nodes in motif node order, separated by
+     * {@link #SEPARATOR}
+     *
+     * @param r builder to append to
+     * @param mapping graph node of every motif node
+     * @return the builder
+     */
+    public static StringBuilder format(StringBuilder r, Node[] mapping) {
+        for (int i = 0; i < mapping.length; i++) {
+            if (i > 0) {
+                r.append(SEPARATOR);
             }
+            r.append(mapping[i].getDescription());
         }
         return r;
     }
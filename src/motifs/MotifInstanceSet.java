@@ -0,0 +1,441 @@
+/*
+ * Copyright (C) 2013 Maarten Houbraken
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Software available at https://github.com/mhoubraken/ISMAGS
+ * Author : Maarten Houbraken (maarten.houbraken@intec.ugent.be)
+ */
+package motifs;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import network.Network;
+import network.Node;
+
+/**
+ * Set of motif instances of one motif in a finalised network, storing every
+ * instance as the indices of its graph nodes rather than as objects. If the
+ * indices of all motif nodes fit in 64 bits, an instance is packed in a long,
+ * otherwise it takes a row of ints in a growable slab. The instances are kept
+ * in insertion order, and {@link MotifInstance} objects are only created when
+ * the set is iterated.
+ * <p>
+ * Looking up instances requires a hash table on the rows, which is built the
+ * first time an instance is looked up. Instances found by a search are
+ * distinct, so they can be added by {@link #addDistinct(Node[])} without the
+ * table. The table uses open addressing with linear probing and holds row
+ * numbers, so it takes 4 to 8 bytes per instance. Removing an instance moves
+ * the last instance into its row.
+ * <p>
+ * The set is not thread-safe.
+ */
+public class MotifInstanceSet extends AbstractSet<MotifInstance> {
+
+	private static final int MIN_CAPACITY = 16;
+
+	private Network network;
+	private int nrNodes;
+	private int nrMotifNodes;
+	/**
+	 * Number of bits per node index in a packed instance, 0 if instances are
+	 * stored as rows of ints
+	 */
+	private int bitsPerNode;
+	private long[] packed;
+	private int[] rows;
+	private int size = 0;
+	/**
+	 * Row number + 1 of the instances by hash, 0 for empty slots, null until
+	 * an instance is looked up
+	 */
+	private int[] table;
+	private int mask;
+	/**
+	 * Node indices of the instance being looked up
+	 */
+	private int[] lookup;
+	private long lookupKey;
+	private int modCount = 0;
+
+	/**
+	 * Creates an empty set
+	 *
+	 * @param network
+	 *            finalised network the instances are found in
+	 * @param nrMotifNodes
+	 *            number of nodes of the motif
+	 */
+	public MotifInstanceSet(Network network, int nrMotifNodes) {
+		this.network = network;
+		this.nrMotifNodes = nrMotifNodes;
+		nrNodes = network.getnNodes();
+		int bits = 32 - Integer.numberOfLeadingZeros(Math.max(1, nrNodes - 1));
+		if (bits * nrMotifNodes <= 64) {
+			bitsPerNode = bits;
+			packed = new long[MIN_CAPACITY];
+		} else {
+			rows = new int[MIN_CAPACITY * nrMotifNodes];
+		}
+		lookup = new int[nrMotifNodes];
+	}
+
+	/**
+	 * Adds an instance that is known not to be in the set, without looking
+	 * it up
+	 *
+	 * @param mapping
+	 *            graph nodes of the instance, indexed by motif node
+	 */
+	public void addDistinct(Node[] mapping) {
+		if (!setLookup(mapping)) {
+			throw new IllegalArgumentException("Instance is not in the network of the set");
+		}
+		append();
+		if (table != null) {
+			insert(size - 1);
+		}
+	}
+
+	/**
+	 * Adds an instance if it is not in the set yet
+	 *
+	 * @param mapping
+	 *            graph nodes of the instance, indexed by motif node
+	 * @return true if the instance was added
+	 */
+	public boolean add(Node[] mapping) {
+		if (!setLookup(mapping)) {
+			throw new IllegalArgumentException("Instance is not in the network of the set");
+		}
+		if (findSlot() >= 0) {
+			return false;
+		}
+		append();
+		insert(size - 1);
+		return true;
+	}
+
+	@Override
+	public boolean add(MotifInstance instance) {
+		return add(instance.getNodeArray());
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return o instanceof MotifInstance && setLookup(((MotifInstance) o).getNodeArray()) && findSlot() >= 0;
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		if (!(o instanceof MotifInstance) || !setLookup(((MotifInstance) o).getNodeArray())) {
+			return false;
+		}
+		int slot = findSlot();
+		if (slot < 0) {
+			return false;
+		}
+		removeRow(table[slot] - 1, slot);
+		return true;
+	}
+
+	@Override
+	public void clear() {
+		size = 0;
+		table = null;
+		modCount++;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	public int getNrMotifNodes() {
+		return nrMotifNodes;
+	}
+
+	/**
+	 * Returns the index of the graph node mapped on a motif node by an
+	 * instance, without creating the instance
+	 *
+	 * @param row
+	 *            position of the instance in insertion order, after removals
+	 *            the last instance takes the position of a removed instance
+	 * @param motifNode
+	 *            motif node
+	 * @return node index
+	 */
+	public int getNodeIndex(int row, int motifNode) {
+		if (row < 0 || row >= size) {
+			throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+		}
+		if (bitsPerNode == 0) {
+			return rows[row * nrMotifNodes + motifNode];
+		}
+		return (int) (packed[row] >>> (bitsPerNode * motifNode)) & ((1 << bitsPerNode) - 1);
+	}
+
+	@Override
+	public Iterator<MotifInstance> iterator() {
+		return new Iterator<MotifInstance>() {
+
+			private int next = 0;
+			private int last = -1;
+			private int expectedModCount = modCount;
+
+			@Override
+			public boolean hasNext() {
+				return next < size;
+			}
+
+			@Override
+			public MotifInstance next() {
+				if (expectedModCount != modCount) {
+					throw new ConcurrentModificationException();
+				}
+				if (next >= size) {
+					throw new NoSuchElementException();
+				}
+				Node[] mapping = new Node[nrMotifNodes];
+				for (int i = 0; i < nrMotifNodes; i++) {
+					mapping[i] = network.getNodeByIndex(getNodeIndex(next, i));
+				}
+				last = next++;
+				return new MotifInstance(mapping);
+			}
+
+			@Override
+			public void remove() {
+				if (last < 0) {
+					throw new IllegalStateException();
+				}
+				if (expectedModCount != modCount) {
+					throw new ConcurrentModificationException();
+				}
+				setLookup(last);
+				removeRow(last, findSlot());
+				// the last instance moved into the removed row
+				next = last;
+				last = -1;
+				expectedModCount = modCount;
+			}
+		};
+	}
+
+	/**
+	 * Sets the instance to be looked up
+	 *
+	 * @return false if a node does not belong to the network
+	 */
+	private boolean setLookup(Node[] mapping) {
+		if (mapping.length != nrMotifNodes) {
+			return false;
+		}
+		long key = 0;
+		for (int i = 0; i < nrMotifNodes; i++) {
+			Node node = mapping[i];
+			int index = node.getIndex();
+			if (index < 0 || index >= nrNodes || network.getNodeByIndex(index) != node) {
+				return false;
+			}
+			lookup[i] = index;
+			if (bitsPerNode != 0) {
+				key |= (long) index << (bitsPerNode * i);
+			}
+		}
+		lookupKey = key;
+		return true;
+	}
+
+	private void setLookup(int row) {
+		for (int i = 0; i < nrMotifNodes; i++) {
+			lookup[i] = getNodeIndex(row, i);
+		}
+		if (bitsPerNode != 0) {
+			lookupKey = packed[row];
+		}
+	}
+
+	/**
+	 * Appends the instance being looked up to the rows
+	 */
+	private void append() {
+		if (bitsPerNode != 0) {
+			if (size == packed.length) {
+				packed = Arrays.copyOf(packed, grow(packed.length));
+			}
+			packed[size] = lookupKey;
+		} else {
+			if ((size + 1) * (long) nrMotifNodes > rows.length) {
+				rows = Arrays.copyOf(rows, grow(rows.length));
+			}
+			System.arraycopy(lookup, 0, rows, size * nrMotifNodes, nrMotifNodes);
+		}
+		size++;
+		modCount++;
+	}
+
+	private static int grow(int length) {
+		if (length == Integer.MAX_VALUE - 8) {
+			throw new IllegalStateException("Too many motif instances for one set");
+		}
+		return (int) Math.min(2L * length, Integer.MAX_VALUE - 8);
+	}
+
+	/**
+	 * Removes a row, moving the last row into its place
+	 *
+	 * @param row
+	 *            row to be removed
+	 * @param slot
+	 *            slot of the row in the table
+	 */
+	private void removeRow(int row, int slot) {
+		delete(slot);
+		int last = size - 1;
+		if (row != last) {
+			table[findRowSlot(last)] = row + 1;
+			if (bitsPerNode != 0) {
+				packed[row] = packed[last];
+			} else {
+				System.arraycopy(rows, last * nrMotifNodes, rows, row * nrMotifNodes, nrMotifNodes);
+			}
+		}
+		size--;
+		modCount++;
+	}
+
+	/**
+	 * Looks up the instance set by {@link #setLookup(Node[])}, building the
+	 * table if needed
+	 *
+	 * @return slot of the instance, or the complement of the empty slot at
+	 *         which it would be inserted
+	 */
+	private int findSlot() {
+		if (table == null) {
+			buildTable();
+		}
+		int slot = lookupHash() & mask;
+		while (table[slot] != 0) {
+			if (matches(table[slot] - 1)) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return ~slot;
+	}
+
+	private int findRowSlot(int row) {
+		int slot = rowHash(row) & mask;
+		while (table[slot] != row + 1) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void buildTable() {
+		int capacity = MIN_CAPACITY;
+		while (capacity < size * 2L + 2 && capacity < 1 << 30) {
+			capacity <<= 1;
+		}
+		table = new int[capacity];
+		mask = capacity - 1;
+		for (int row = 0; row < size; row++) {
+			place(row);
+		}
+	}
+
+	/**
+	 * Adds a row to the table, growing the table if it is half full
+	 */
+	private void insert(int row) {
+		if (size * 2L > table.length && table.length < 1 << 30) {
+			table = null;
+			buildTable();
+		} else {
+			place(row);
+		}
+	}
+
+	private void place(int row) {
+		int slot = rowHash(row) & mask;
+		while (table[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		table[slot] = row + 1;
+	}
+
+	/**
+	 * Empties a slot, shifting back the rows that were probed past it
+	 */
+	private void delete(int slot) {
+		int hole = slot;
+		int next = (hole + 1) & mask;
+		while (table[next] != 0) {
+			int home = rowHash(table[next] - 1) & mask;
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				table[hole] = table[next];
+				hole = next;
+			}
+			next = (next + 1) & mask;
+		}
+		table[hole] = 0;
+	}
+
+	private boolean matches(int row) {
+		if (bitsPerNode != 0) {
+			return packed[row] == lookupKey;
+		}
+		int offset = row * nrMotifNodes;
+		for (int i = 0; i < nrMotifNodes; i++) {
+			if (rows[offset + i] != lookup[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int lookupHash() {
+		if (bitsPerNode != 0) {
+			return hash(lookupKey);
+		}
+		return hash(lookup, 0, nrMotifNodes);
+	}
+
+	private int rowHash(int row) {
+		if (bitsPerNode != 0) {
+			return hash(packed[row]);
+		}
+		return hash(rows, row * nrMotifNodes, nrMotifNodes);
+	}
+
+	private static int hash(long key) {
+		long hash = key * 0x9e3779b97f4a7c15L;
+		return (int) (hash ^ (hash >>> 32));
+	}
+
+	private static int hash(int[] indices, int from, int length) {
+		long hash = 0;
+		for (int i = from; i < from + length; i++) {
+			hash = (hash + indices[i]) * 0x9e3779b97f4a7c15L;
+		}
+		return (int) (hash ^ (hash >>> 32));
+	}
+}
@@ -58,6 +58,16 @@ public class MotifLink {
         return nrLinkIDs;
     }
 
+    /**
+     * Returns the motif link with a motif link ID
+     *
+     * @param motifLinkID motif link ID
+     * @return the motif link, null if no motif link has the ID
+     */
+    public static MotifLink getMotifLink(int motifLinkID) {
+        return linkIDToMotifLink.get(motifLinkID);
+    }
+
     public LinkType getLinkType() {
         return linkType;
     }
@@ -0,0 +1,544 @@
+/*
+ * Copyright (C) 2013 Maarten Houbraken
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Software available at https://github.com/mhoubraken/ISMAGS
+ * Author : Maarten Houbraken (maarten.houbraken@intec.ugent.be)
+ */
+package network;
+
+import java.util.Arrays;
+
+import datastructures.NodeBitmap;
+
+/**
+ * Compressed-sparse-row representation of the adjacency of a network. Nodes
+ * are identified by their index, which follows the order of the node IDs. For
+ * every motif link ID, the neighbours of node i are stored in
+ * targets[offsets[i]] up to targets[offsets[i + 1]], sorted by index.
+ * <p>
+ * The neighbours of nodes having at least a threshold number of neighbours
+ * for a motif link ID are also stored as {@link NodeBitmap}, so membership in
+ * these large lists can be tested without searching them.
+ * <p>
+ * Links can be added and removed one by one. The neighbours of a node that
+ * was updated move to an array of their own, so an update only copies the
+ * neighbours of the nodes of the link. The neighbours of a node should
+ * therefore be looked up through {@link #getTargets(int, int)} with the
+ * positions of {@link #getStart(int, int)} and {@link #getEnd(int, int)}.
+ * Updates should not run concurrently with searches.
+ * <p>
+ * The offsets and targets of a graph read from a snapshot stay mapped from
+ * the file, so processes opening the same snapshot share them. The
+ * neighbours of a node are then copied to an array of their own when they
+ * are requested, like the neighbours of an updated node.
+ */
+public class CSRGraph {
+
+	private static final int[] EMPTY = new int[0];
+
+	private int nrNodes;
+	private int[][] offsets;
+	private int[][] targets;
+	/**
+	 * For every motif link ID, the offsets and targets mapped from a snapshot,
+	 * null if the arrays are held in the heap
+	 */
+	private MappedIntArray[] mappedOffsets;
+	private MappedIntArray[] mappedTargets;
+	private int[][] nodesWithLink;
+	private int[][] hubNodes;
+	private NodeBitmap[][] hubBitmaps;
+	private int hubDegreeThreshold;
+	/**
+	 * For every motif link ID, the neighbours of the nodes that were updated,
+	 * null if no node was updated
+	 */
+	private int[][][] updatedTargets;
+
+	/**
+	 * Creates a CSR graph from the arrays of each motif link ID, without
+	 * bitmaps for high degree nodes
+	 *
+	 * @see #CSRGraph(int, int[][], int[][], int)
+	 */
+	public CSRGraph(int nrNodes, int[][] offsets, int[][] targets) {
+		this(nrNodes, offsets, targets, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Creates a CSR graph from the arrays of each motif link ID. The arrays
+	 * are used as is and should no longer be modified.
+	 *
+	 * @param nrNodes
+	 *            number of nodes in the network
+	 * @param offsets
+	 *            for each motif link ID, the start of the neighbours of every
+	 *            node followed by the total number of neighbours, null if there
+	 *            are no links with that ID
+	 * @param targets
+	 *            for each motif link ID, the concatenated sorted neighbours of
+	 *            all nodes, null if there are no links with that ID
+	 * @param hubDegreeThreshold
+	 *            minimal number of neighbours for which the neighbours of a
+	 *            node are also stored as bitmap
+	 */
+	public CSRGraph(int nrNodes, int[][] offsets, int[][] targets, int hubDegreeThreshold) {
+		this(nrNodes, offsets, targets, new MappedIntArray[offsets.length], new MappedIntArray[offsets.length],
+				null, hubDegreeThreshold);
+	}
+
+	/**
+	 * Creates a CSR graph from the arrays of each motif link ID mapped from a
+	 * snapshot
+	 *
+	 * @param nrNodes
+	 *            number of nodes in the network
+	 * @param offsets
+	 *            for each motif link ID, the mapped offsets, null if there are
+	 *            no links with that ID
+	 * @param targets
+	 *            for each motif link ID, the mapped targets, null if there are
+	 *            no links with that ID
+	 * @param hubDegreeThreshold
+	 *            minimal number of neighbours for which the neighbours of a
+	 *            node are also stored as bitmap
+	 */
+	CSRGraph(int nrNodes, MappedIntArray[] offsets, MappedIntArray[] targets, int hubDegreeThreshold) {
+		this(nrNodes, new int[offsets.length][], new int[offsets.length][], offsets, targets, null,
+				hubDegreeThreshold);
+	}
+
+	/**
+	 * Creates a CSR graph from the heap or mapped arrays of each motif link ID
+	 * and the nodes having links with each ID, null to find these nodes
+	 *
+	 * @see #CSRGraph(int, int[][], int[][], int)
+	 */
+	private CSRGraph(int nrNodes, int[][] offsets, int[][] targets, MappedIntArray[] mappedOffsets,
+			MappedIntArray[] mappedTargets, int[][] nodesWithLink, int hubDegreeThreshold) {
+		this.nrNodes = nrNodes;
+		this.offsets = offsets;
+		this.targets = targets;
+		this.mappedOffsets = mappedOffsets;
+		this.mappedTargets = mappedTargets;
+		this.hubDegreeThreshold = hubDegreeThreshold;
+		updatedTargets = new int[offsets.length][][];
+		this.nodesWithLink = nodesWithLink != null ? nodesWithLink : findNodesWithLink();
+		hubNodes = new int[offsets.length][];
+		hubBitmaps = new NodeBitmap[offsets.length][];
+		for (int linkID = 0; linkID < offsets.length; linkID++) {
+			if (!hasLinks(linkID)) {
+				hubNodes[linkID] = EMPTY;
+				continue;
+			}
+			int nrHubs = 0;
+			for (int i : this.nodesWithLink[linkID]) {
+				if (getDegree(linkID, i) >= hubDegreeThreshold) {
+					nrHubs++;
+				}
+			}
+			int[] hubs = new int[nrHubs];
+			NodeBitmap[] bitmaps = new NodeBitmap[nrHubs];
+			nrHubs = 0;
+			for (int i : this.nodesWithLink[linkID]) {
+				if (nrHubs == hubs.length) {
+					break;
+				}
+				if (getDegree(linkID, i) >= hubDegreeThreshold) {
+					hubs[nrHubs] = i;
+					bitmaps[nrHubs++] = new NodeBitmap(getTargets(linkID, i), getStart(linkID, i), getEnd(linkID, i));
+				}
+			}
+			hubNodes[linkID] = hubs;
+			hubBitmaps[linkID] = bitmaps;
+		}
+	}
+
+	/**
+	 * Creates a CSR graph from the links of each motif link ID. Each link is
+	 * packed in a long by {@link #edge(int, int)}. The links of every motif
+	 * link ID are sorted once, in parallel, after which duplicates are dropped
+	 * and the offsets, targets and nodes having links are filled in a single
+	 * pass.
+	 *
+	 * @param nrNodes
+	 *            number of nodes in the network
+	 * @param edges
+	 *            for each motif link ID, the packed links, null if there are
+	 *            no links with that ID; the arrays are sorted in place
+	 * @param nrEdges
+	 *            for each motif link ID, the number of links in the array
+	 * @param hubDegreeThreshold
+	 *            minimal number of neighbours for which the neighbours of a
+	 *            node are also stored as bitmap
+	 * @return the CSR graph
+	 */
+	static CSRGraph fromEdges(int nrNodes, long[][] edges, int[] nrEdges, int hubDegreeThreshold) {
+		int nrLinkIDs = edges.length;
+		int[][] offsets = new int[nrLinkIDs][];
+		int[][] targets = new int[nrLinkIDs][];
+		int[][] nodesWithLink = new int[nrLinkIDs][];
+		for (int linkID = 0; linkID < nrLinkIDs; linkID++) {
+			long[] edge = edges[linkID];
+			int n = nrEdges[linkID];
+			if (edge == null || n == 0) {
+				nodesWithLink[linkID] = EMPTY;
+				continue;
+			}
+			Arrays.parallelSort(edge, 0, n);
+			int[] offset = new int[nrNodes + 1];
+			int[] target = new int[n];
+			int[] nodes = new int[Math.min(n, nrNodes)];
+			int nrTargets = 0;
+			int nrSources = 0;
+			long previous = -1;
+			for (int i = 0; i < n; i++) {
+				if (edge[i] == previous) {
+					continue;
+				}
+				previous = edge[i];
+				int source = (int) (previous >>> 32);
+				if (nrSources == 0 || nodes[nrSources - 1] != source) {
+					nodes[nrSources++] = source;
+				}
+				offset[source + 1]++;
+				target[nrTargets++] = (int) previous;
+			}
+			for (int i = 0; i < nrNodes; i++) {
+				offset[i + 1] += offset[i];
+			}
+			offsets[linkID] = offset;
+			targets[linkID] = nrTargets == n ? target : Arrays.copyOf(target, nrTargets);
+			nodesWithLink[linkID] = Arrays.copyOf(nodes, nrSources);
+		}
+		return new CSRGraph(nrNodes, offsets, targets, new MappedIntArray[nrLinkIDs], new MappedIntArray[nrLinkIDs],
+				nodesWithLink, hubDegreeThreshold);
+	}
+
+	/**
+	 * Packs a link in a long, ordered by source and then by target
+	 *
+	 * @param source
+	 *            index of the source node
+	 * @param target
+	 *            index of the target node
+	 * @return packed link
+	 */
+	static long edge(int source, int target) {
+		return ((long) source << 32) | target;
+	}
+
+	/**
+	 * Finds the nodes having at least one link with each motif link ID
+	 */
+	private int[][] findNodesWithLink() {
+		int[][] nodesWithLink = new int[offsets.length][];
+		for (int linkID = 0; linkID < offsets.length; linkID++) {
+			if (!hasLinks(linkID)) {
+				nodesWithLink[linkID] = EMPTY;
+				continue;
+			}
+			int count = 0;
+			for (int i = 0; i < nrNodes; i++) {
+				if (getDegree(linkID, i) > 0) {
+					count++;
+				}
+			}
+			int[] nodes = new int[count];
+			count = 0;
+			for (int i = 0; i < nrNodes; i++) {
+				if (getDegree(linkID, i) > 0) {
+					nodes[count++] = i;
+				}
+			}
+			nodesWithLink[linkID] = nodes;
+		}
+		return nodesWithLink;
+	}
+
+	/**
+	 * Checks whether arrays are stored for a motif link ID, in the heap or
+	 * mapped
+	 */
+	private boolean hasLinks(int linkID) {
+		return offsets[linkID] != null || mappedOffsets[linkID] != null;
+	}
+
+	public int getNrNodes() {
+		return nrNodes;
+	}
+
+	/**
+	 * Returns the array holding the neighbours of a node for a motif link ID,
+	 * from {@link #getStart(int, int)} up to {@link #getEnd(int, int)}
+	 *
+	 * @param linkID
+	 *            motif link ID
+	 * @param node
+	 *            node index
+	 * @return array holding the neighbour list, should not be modified
+	 */
+	public int[] getTargets(int linkID, int node) {
+		if (linkID >= targets.length) {
+			return EMPTY;
+		}
+		int[][] updated = updatedTargets[linkID];
+		if (updated != null && updated[node] != null) {
+			return updated[node];
+		}
+		int[] target = targets[linkID];
+		if (target != null) {
+			return target;
+		}
+		MappedIntArray offset = mappedOffsets[linkID];
+		if (offset == null) {
+			return EMPTY;
+		}
+		return mappedTargets[linkID].get(offset.get(node), offset.get(node + 1));
+	}
+
+	/**
+	 * Returns the position of the first neighbour of a node in
+	 * {@link #getTargets(int, int)}
+	 *
+	 * @param linkID
+	 *            motif link ID
+	 * @param node
+	 *            node index
+	 * @return start of the neighbour list (inclusive)
+	 */
+	public int getStart(int linkID, int node) {
+		if (linkID >= offsets.length) {
+			return 0;
+		}
+		int[][] updated = updatedTargets[linkID];
+		if (updated != null && updated[node] != null) {
+			return 0;
+		}
+		int[] offset = offsets[linkID];
+		// mapped neighbours are copied to an array of their own
+		return offset != null ? offset[node] : 0;
+	}
+
+	/**
+	 * Returns the position after the last neighbour of a node in
+	 * {@link #getTargets(int, int)}
+	 *
+	 * @param linkID
+	 *            motif link ID
+	 * @param node
+	 *            node index
+	 * @return end of the neighbour list (exclusive)
+	 */
+	public int getEnd(int linkID, int node) {
+		if (linkID >= offsets.length) {
+			return 0;
+		}
+		int[][] updated = updatedTargets[linkID];
+		if (updated != null && updated[node] != null) {
+			return updated[node].length;
+		}
+		int[] offset = offsets[linkID];
+		if (offset != null) {
+			return offset[node + 1];
+		}
+		MappedIntArray mapped = mappedOffsets[linkID];
+		return mapped != null ? mapped.get(node + 1) - mapped.get(node) : 0;
+	}
+
+	/**
+	 * Checks whether a node is a neighbour of another node
+	 *
+	 * @param linkID
+	 *            motif link ID
+	 * @param node
+	 *            node index
+	 * @param neighbour
+	 *            index of the possible neighbour
+	 * @return true if there is a link with the motif link ID from the node to
+	 *         the neighbour
+	 */
+	public boolean hasLink(int linkID, int node, int neighbour) {
+		if (linkID < offsets.length && mappedOffsets[linkID] != null
+				&& (updatedTargets[linkID] == null || updatedTargets[linkID][node] == null)) {
+			// search the mapping without copying the neighbours
+			MappedIntArray offset = mappedOffsets[linkID];
+			return mappedTargets[linkID].binarySearch(offset.get(node), offset.get(node + 1), neighbour) >= 0;
+		}
+		return Arrays.binarySearch(getTargets(linkID, node), getStart(linkID, node), getEnd(linkID, node),
+				neighbour) >= 0;
+	}
+
+	/**
+	 * Adds a neighbour to the neighbours of a node
+	 *
+	 * @param linkID
+	 *            motif link ID
+	 * @param node
+	 *            node index
+	 * @param neighbour
+	 *            index of the new neighbour
+	 * @return false if the node already had the neighbour
+	 */
+	boolean addLink(int linkID, int node, int neighbour) {
+		int[] list = getTargets(linkID, node);
+		int start = getStart(linkID, node);
+		int end = getEnd(linkID, node);
+		int position = Arrays.binarySearch(list, start, end, neighbour);
+		if (position >= 0) {
+			return false;
+		}
+		position = -position - 1;
+		int[] neighbours = new int[end - start + 1];
+		System.arraycopy(list, start, neighbours, 0, position - start);
+		neighbours[position - start] = neighbour;
+		System.arraycopy(list, position, neighbours, position - start + 1, end - position);
+		setNeighbours(linkID, node, neighbours);
+		return true;
+	}
+
+	/**
+	 * Removes a neighbour from the neighbours of a node
+	 *
+	 * @param linkID
+	 *            motif link ID
+	 * @param node
+	 *            node index
+	 * @param neighbour
+	 *            index of the neighbour to be removed
+	 * @return false if the neighbour was not a neighbour of the node
+	 */
+	boolean removeLink(int linkID, int node, int neighbour) {
+		int[] list = getTargets(linkID, node);
+		int start = getStart(linkID, node);
+		int end = getEnd(linkID, node);
+		int position = Arrays.binarySearch(list, start, end, neighbour);
+		if (position < 0) {
+			return false;
+		}
+		int[] neighbours = new int[end - start - 1];
+		System.arraycopy(list, start, neighbours, 0, position - start);
+		System.arraycopy(list, position + 1, neighbours, position - start, end - position - 1);
+		setNeighbours(linkID, node, neighbours);
+		return true;
+	}
+
+	/**
+	 * Replaces the neighbours of a node and updates its bitmap and the nodes
+	 * having links with the motif link ID
+	 */
+	private void setNeighbours(int linkID, int node, int[] neighbours) {
+		if (!hasLinks(linkID)) {
+			// first link with this ID
+			offsets[linkID] = new int[nrNodes + 1];
+			targets[linkID] = EMPTY;
+			hubBitmaps[linkID] = new NodeBitmap[0];
+		}
+		if (updatedTargets[linkID] == null) {
+			updatedTargets[linkID] = new int[nrNodes][];
+		}
+		int oldDegree = getDegree(linkID, node);
+		updatedTargets[linkID][node] = neighbours;
+		int[] nodes = nodesWithLink[linkID];
+		int i = Arrays.binarySearch(nodes, node);
+		if (oldDegree == 0 && neighbours.length > 0) {
+			nodesWithLink[linkID] = insert(nodes, -i - 1, node);
+		} else if (oldDegree > 0 && neighbours.length == 0) {
+			int[] remaining = new int[nodes.length - 1];
+			System.arraycopy(nodes, 0, remaining, 0, i);
+			System.arraycopy(nodes, i + 1, remaining, i, remaining.length - i);
+			nodesWithLink[linkID] = remaining;
+		}
+		if (neighbours.length >= hubDegreeThreshold) {
+			NodeBitmap bitmap = new NodeBitmap(neighbours, 0, neighbours.length);
+			int hub = Arrays.binarySearch(hubNodes[linkID], node);
+			if (hub >= 0) {
+				hubBitmaps[linkID][hub] = bitmap;
+			} else {
+				hub = -hub - 1;
+				hubNodes[linkID] = insert(hubNodes[linkID], hub, node);
+				NodeBitmap[] bitmaps = new NodeBitmap[hubNodes[linkID].length];
+				System.arraycopy(hubBitmaps[linkID], 0, bitmaps, 0, hub);
+				bitmaps[hub] = bitmap;
+				System.arraycopy(hubBitmaps[linkID], hub, bitmaps, hub + 1, bitmaps.length - hub - 1);
+				hubBitmaps[linkID] = bitmaps;
+			}
+		}
+	}
+
+	private static int[] insert(int[] array, int position, int value) {
+		int[] inserted = new int[array.length + 1];
+		System.arraycopy(array, 0, inserted, 0, position);
+		inserted[position] = value;
+		System.arraycopy(array, position, inserted, position + 1, array.length - position);
+		return inserted;
+	}
+
+	/**
+	 * Returns the number of neighbours of a node for a motif link ID
+	 *
+	 * @param linkID
+	 *            motif link ID
+	 * @param node
+	 *            node index
+	 * @return number of neighbours
+	 */
+	public int getDegree(int linkID, int node) {
+		return getEnd(linkID, node) - getStart(linkID, node);
+	}
+
+	/**
+	 * Returns the neighbours of a node as bitmap, if the node has at least the
+	 * hub degree threshold number of neighbours
+	 *
+	 * @param linkID
+	 *            motif link ID
+	 * @param node
+	 *            node index
+	 * @return neighbours of the node, null if they are not stored as bitmap
+	 */
+	public NodeBitmap getBitmap(int linkID, int node) {
+		if (linkID >= hubNodes.length || getDegree(linkID, node) < hubDegreeThreshold) {
+			return null;
+		}
+		int i = Arrays.binarySearch(hubNodes[linkID], node);
+		return i >= 0 ? hubBitmaps[linkID][i] : null;
+	}
+
+	/**
+	 * Returns the sorted indices of all nodes having at least one link with
+	 * the motif link ID
+	 *
+	 * @param linkID
+	 *            motif link ID
+	 * @return node indices, should not be modified
+	 */
+	public int[] getNodesWithLink(int linkID) {
+		if (linkID >= nodesWithLink.length) {
+			return EMPTY;
+		}
+		return nodesWithLink[linkID];
+	}
+
+	/**
+	 * Returns the number of motif link IDs for which arrays are stored
+	 *
+	 * @return number of motif link IDs
+	 */
+	public int getNrLinkIDs() {
+		return offsets.length;
+	}
+}
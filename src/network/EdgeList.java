@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2013 Maarten Houbraken
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Software available at https://github.com/mhoubraken/ISMAGS
+ * Author : Maarten Houbraken (maarten.houbraken@intec.ugent.be)
+ */
+package network;
+
+/**
+ * Links read from a part of a link file, before they are added to a network.
+ * The nodes of the part are numbered in order of their first appearance, and
+ * the links are stored as pairs of these numbers in a primitive buffer, so
+ * parts can be parsed independently of each other and of the network.
+ */
+class EdgeList {
+
+	private String[] descriptions;
+	private int[] edges;
+	private int nrEdges;
+
+	/**
+	 * Creates an edge list
+	 *
+	 * @param descriptions
+	 *            descriptions of the nodes, in order of their numbers
+	 * @param edges
+	 *            origin and destination of every link
+	 * @param nrEdges
+	 *            number of links, including duplicates
+	 */
+	EdgeList(String[] descriptions, int[] edges, int nrEdges) {
+		this.descriptions = descriptions;
+		this.edges = edges;
+		this.nrEdges = nrEdges;
+	}
+
+	/**
+	 * Returns the number of nodes in the part
+	 *
+	 * @return number of nodes
+	 */
+	int getNrNodes() {
+		return descriptions.length;
+	}
+
+	/**
+	 * Returns the description of a node
+	 *
+	 * @param node
+	 *            number of the node in this part
+	 * @return description of the node, including the network of the link type
+	 */
+	String getDescription(int node) {
+		return descriptions[node];
+	}
+
+	/**
+	 * Returns the number of links in the part
+	 *
+	 * @return number of links, including duplicates
+	 */
+	int getNrEdges() {
+		return nrEdges;
+	}
+
+	/**
+	 * Returns the origin of a link
+	 *
+	 * @param edge
+	 *            position of the link in the part
+	 * @return number of the origin in this part
+	 */
+	int getOrigin(int edge) {
+		return edges[2 * edge];
+	}
+
+	/**
+	 * Returns the destination of a link
+	 *
+	 * @param edge
+	 *            position of the link in the part
+	 * @return number of the destination in this part
+	 */
+	int getDestination(int edge) {
+		return edges[2 * edge + 1];
+	}
+}
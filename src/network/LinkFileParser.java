@@ -0,0 +1,416 @@
+/*
+ * Copyright (C) 2013 Maarten Houbraken
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Software available at https://github.com/mhoubraken/ISMAGS
+ * Author : Maarten Houbraken (maarten.houbraken@intec.ugent.be)
+ */
+package network;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Parses a chunk of a memory-mapped link file into an {@link EdgeList}. Link
+ * files are split into chunks at line ends, so the chunks can be parsed in
+ * parallel. A chunk is scanned as bytes: every line holds the origin and the
+ * destination of a link, separated by the first tab, and lines without a tab
+ * at a position after the start, or containing #, are skipped. The source
+ * and destination networks of the link type are appended to the descriptions
+ * of the origin and the destination, and links from a node to itself are
+ * skipped.
+ * <p>
+ * Node tokens are looked up in a dictionary by hashing their bytes in the
+ * mapping, and tokens that are decimal numbers without leading zeros are
+ * looked up by their value. A String is only created for the description of
+ * every distinct node of the chunk, once the chunk is parsed. Lines end at
+ * '\n' or '\r', as for BufferedReader, and the default charset should encode
+ * tabs, line ends and # as single bytes, as ASCII-compatible charsets do.
+ */
+class LinkFileParser implements Callable<EdgeList> {
+
+	/**
+	 * Default number of bytes in a chunk
+	 */
+	static final int CHUNK_SIZE = 1 << 24;
+	/**
+	 * Number of bytes mapped at once while looking for a line end
+	 */
+	private static final int WINDOW_SIZE = 1 << 16;
+	/**
+	 * Maximal number of digits of a token looked up by its value
+	 */
+	private static final int MAX_DIGITS = 18;
+
+	private ByteBuffer chunk;
+	private Charset charset;
+	private String sourceNetwork;
+	private String destinationNetwork;
+	private byte[] sourceBytes;
+	private byte[] destinationBytes;
+	/**
+	 * True if the same network is appended to origins and destinations, so a
+	 * token describes the same node on both sides of a link
+	 */
+	private boolean sameNetwork;
+
+	/**
+	 * Byte range of the token of every node and the side of the link it
+	 * appeared on: 0 for an origin, 1 for a destination
+	 */
+	private int[] nodeStart;
+	private int[] nodeEnd;
+	private byte[] nodeSide;
+	private int nrNodes;
+
+	/**
+	 * Open addressing table of the nodes with a textual token: node number
+	 * plus one, 0 for a free slot, and the hash of the token
+	 */
+	private int[] tokenNodes;
+	private int[] tokenHashes;
+	private int nrTokens;
+	/**
+	 * Open addressing table of the nodes with a numeric token: twice the
+	 * value plus the side plus one, 0 for a free slot, and the node number
+	 */
+	private long[] numberKeys;
+	private int[] numberNodes;
+	private int nrNumbers;
+
+	private int[] edges;
+	private int nrEdges;
+	private byte[] token = new byte[64];
+
+	/**
+	 * Creates a parser of a chunk
+	 *
+	 * @param chunk
+	 *            bytes of the chunk, holding complete lines
+	 * @param linkType
+	 *            type of the links in the file
+	 */
+	LinkFileParser(ByteBuffer chunk, LinkType linkType) {
+		this.chunk = chunk;
+		charset = Charset.defaultCharset();
+		sourceNetwork = linkType.getSourceNetwork();
+		destinationNetwork = linkType.getDestinationNetwork();
+		sourceBytes = sourceNetwork.getBytes(charset);
+		destinationBytes = destinationNetwork.getBytes(charset);
+		sameNetwork = sourceNetwork.equals(destinationNetwork);
+		// a line takes at least four bytes
+		int capacity = Integer.highestOneBit(Math.max(16, Math.min(1024, chunk.limit() / 4)));
+		nodeStart = new int[capacity];
+		nodeEnd = new int[capacity];
+		nodeSide = new byte[capacity];
+		tokenNodes = new int[capacity];
+		tokenHashes = new int[capacity];
+		numberKeys = new long[capacity];
+		numberNodes = new int[capacity];
+		edges = new int[capacity];
+	}
+
+	/**
+	 * Maps a link file and submits a parser for every chunk of the file
+	 *
+	 * @param pool
+	 *            executor running the parsers
+	 * @param filename
+	 *            link file
+	 * @param linkType
+	 *            type of the links in the file
+	 * @param chunkSize
+	 *            number of bytes after which a chunk ends at the next line end
+	 * @return links of the chunks, in the order of the file
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	static List<Future<EdgeList>> submit(ExecutorService pool, String filename, LinkType linkType, int chunkSize)
+			throws IOException {
+		List<Future<EdgeList>> chunks = new ArrayList<Future<EdgeList>>();
+		RandomAccessFile file = new RandomAccessFile(filename, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			long size = channel.size();
+			long start = 0;
+			while (start < size) {
+				long end = size - start <= chunkSize ? size : findLineEnd(channel, start + chunkSize, size);
+				if (end - start > Integer.MAX_VALUE) {
+					throw new IOException("Line too long in " + filename);
+				}
+				// the mapping remains valid after the file is closed
+				ByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+				chunks.add(pool.submit(new LinkFileParser(chunk, linkType)));
+				start = end;
+			}
+		} finally {
+			file.close();
+		}
+		return chunks;
+	}
+
+	/**
+	 * Finds the first line end at or after a position
+	 *
+	 * @return position after the '\n', the size of the file if there is none
+	 */
+	private static long findLineEnd(FileChannel channel, long position, long size) throws IOException {
+		while (position < size) {
+			ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+					Math.min(WINDOW_SIZE, size - position));
+			for (int i = 0; i < window.limit(); i++) {
+				if (window.get(i) == '\n') {
+					return position + i + 1;
+				}
+			}
+			position += window.limit();
+		}
+		return size;
+	}
+
+	@Override
+	public EdgeList call() {
+		int limit = chunk.limit();
+		int position = 0;
+		while (position < limit) {
+			int lineStart = position;
+			int tab = -1;
+			boolean comment = false;
+			boolean ascii = true;
+			byte b;
+			while (position < limit && (b = chunk.get(position)) != '\n' && b != '\r') {
+				if (b == '\t') {
+					if (tab < 0) {
+						tab = position;
+					}
+				} else if (b == '#') {
+					comment = true;
+				} else if (b < 0) {
+					ascii = false;
+				}
+				position++;
+			}
+			int lineEnd = position++;
+			if (tab <= lineStart || comment || isLoop(lineStart, tab, tab + 1, lineEnd, ascii)) {
+				continue;
+			}
+			int origin = getNode(lineStart, tab, 0);
+			int destination = getNode(tab + 1, lineEnd, sameNetwork ? 0 : 1);
+			if (2 * nrEdges == edges.length) {
+				edges = Arrays.copyOf(edges, 2 * edges.length);
+			}
+			edges[2 * nrEdges] = origin;
+			edges[2 * nrEdges + 1] = destination;
+			nrEdges++;
+		}
+		return new EdgeList(createDescriptions(), edges, nrEdges);
+	}
+
+	/**
+	 * Checks whether the origin and destination of a link have the same
+	 * description, comparing the tokens followed by their networks. Tokens
+	 * with non-ASCII bytes are decoded first, since different bytes may
+	 * decode to the same characters.
+	 */
+	private boolean isLoop(int originStart, int originEnd, int destinationStart, int destinationEnd, boolean ascii) {
+		if (!ascii) {
+			return (decode(originStart, originEnd) + sourceNetwork)
+					.equals(decode(destinationStart, destinationEnd) + destinationNetwork);
+		}
+		int originLength = originEnd - originStart;
+		int destinationLength = destinationEnd - destinationStart;
+		int length = originLength + sourceBytes.length;
+		if (length != destinationLength + destinationBytes.length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			byte o = i < originLength ? chunk.get(originStart + i) : sourceBytes[i - originLength];
+			byte d = i < destinationLength ? chunk.get(destinationStart + i) : destinationBytes[i - destinationLength];
+			if (o != d) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the number of the node described by a token, numbering it if it
+	 * was not seen before
+	 *
+	 * @param start
+	 *            start of the token in the chunk
+	 * @param end
+	 *            end of the token in the chunk (exclusive)
+	 * @param side
+	 *            0 for an origin, 1 for a destination with another network
+	 * @return node number
+	 */
+	private int getNode(int start, int end, int side) {
+		int length = end - start;
+		if (length > 0 && length <= MAX_DIGITS && (length == 1 || chunk.get(start) != '0')) {
+			long value = 0;
+			int i = start;
+			for (; i < end; i++) {
+				int digit = chunk.get(i) - '0';
+				if (digit < 0 || digit > 9) {
+					break;
+				}
+				value = 10 * value + digit;
+			}
+			if (i == end) {
+				return getNumberNode(2 * value + side + 1, start, end, side);
+			}
+		}
+		return getTokenNode(start, end, side);
+	}
+
+	private int getNumberNode(long key, int start, int end, int side) {
+		int mask = numberKeys.length - 1;
+		int slot = mix(key) & mask;
+		while (numberKeys[slot] != 0) {
+			if (numberKeys[slot] == key) {
+				return numberNodes[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+		int node = addNode(start, end, side);
+		numberKeys[slot] = key;
+		numberNodes[slot] = node;
+		if (++nrNumbers * 2 > numberKeys.length) {
+			long[] oldKeys = numberKeys;
+			int[] oldNodes = numberNodes;
+			numberKeys = new long[2 * oldKeys.length];
+			numberNodes = new int[2 * oldKeys.length];
+			mask = numberKeys.length - 1;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != 0) {
+					slot = mix(oldKeys[i]) & mask;
+					while (numberKeys[slot] != 0) {
+						slot = (slot + 1) & mask;
+					}
+					numberKeys[slot] = oldKeys[i];
+					numberNodes[slot] = oldNodes[i];
+				}
+			}
+		}
+		return node;
+	}
+
+	private int getTokenNode(int start, int end, int side) {
+		int hash = side;
+		for (int i = start; i < end; i++) {
+			hash = 31 * hash + chunk.get(i);
+		}
+		int mask = tokenNodes.length - 1;
+		int slot = mix(hash) & mask;
+		while (tokenNodes[slot] != 0) {
+			int node = tokenNodes[slot] - 1;
+			if (tokenHashes[slot] == hash && nodeSide[node] == side && isToken(node, start, end)) {
+				return node;
+			}
+			slot = (slot + 1) & mask;
+		}
+		int node = addNode(start, end, side);
+		tokenNodes[slot] = node + 1;
+		tokenHashes[slot] = hash;
+		if (++nrTokens * 2 > tokenNodes.length) {
+			int[] oldNodes = tokenNodes;
+			int[] oldHashes = tokenHashes;
+			tokenNodes = new int[2 * oldNodes.length];
+			tokenHashes = new int[2 * oldNodes.length];
+			mask = tokenNodes.length - 1;
+			for (int i = 0; i < oldNodes.length; i++) {
+				if (oldNodes[i] != 0) {
+					slot = mix(oldHashes[i]) & mask;
+					while (tokenNodes[slot] != 0) {
+						slot = (slot + 1) & mask;
+					}
+					tokenNodes[slot] = oldNodes[i];
+					tokenHashes[slot] = oldHashes[i];
+				}
+			}
+		}
+		return node;
+	}
+
+	/**
+	 * Checks whether the token of a node has the same bytes as a token
+	 */
+	private boolean isToken(int node, int start, int end) {
+		int nodeStart = this.nodeStart[node];
+		if (nodeEnd[node] - nodeStart != end - start) {
+			return false;
+		}
+		for (int i = 0; i < end - start; i++) {
+			if (chunk.get(nodeStart + i) != chunk.get(start + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int addNode(int start, int end, int side) {
+		if (nrNodes == nodeStart.length) {
+			nodeStart = Arrays.copyOf(nodeStart, 2 * nrNodes);
+			nodeEnd = Arrays.copyOf(nodeEnd, 2 * nrNodes);
+			nodeSide = Arrays.copyOf(nodeSide, 2 * nrNodes);
+		}
+		nodeStart[nrNodes] = start;
+		nodeEnd[nrNodes] = end;
+		nodeSide[nrNodes] = (byte) side;
+		return nrNodes++;
+	}
+
+	/**
+	 * Decodes the descriptions of all nodes of the chunk
+	 *
+	 * @return descriptions, in order of the node numbers
+	 */
+	private String[] createDescriptions() {
+		String[] descriptions = new String[nrNodes];
+		for (int node = 0; node < nrNodes; node++) {
+			descriptions[node] = decode(nodeStart[node], nodeEnd[node])
+					+ (nodeSide[node] == 0 ? sourceNetwork : destinationNetwork);
+		}
+		return descriptions;
+	}
+
+	/**
+	 * Decodes a token with the default charset
+	 */
+	private String decode(int start, int end) {
+		if (end - start > token.length) {
+			token = new byte[Math.max(end - start, 2 * token.length)];
+		}
+		for (int i = start; i < end; i++) {
+			token[i - start] = chunk.get(i);
+		}
+		return new String(token, 0, end - start, charset);
+	}
+
+	private static int mix(long key) {
+		long hash = key * 0x9e3779b97f4a7c15L;
+		return (int) (hash ^ (hash >>> 32));
+	}
+}
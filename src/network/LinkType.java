@@ -32,7 +32,7 @@ public class LinkType {
     private MotifLink inverseMotifLink;
     private static Map<Integer, LinkType> linkTypes = new HashMap<Integer, LinkType>();
     private boolean directed;
-//    private String description;
+    private String description;
     private int linkTypeID;
 //    private char abr;
     private String sourceNetwork;
@@ -40,7 +40,7 @@ public class LinkType {
 
     public LinkType(boolean directed, String description, int linkTypeID, char abr, String sourceNetwork, String destinationNetwork) {
         this.directed = directed;
-//        this.description = description;
+        this.description = description;
         this.linkTypeID = linkTypeID;
 //        this.abr = abr;
         this.sourceNetwork = sourceNetwork;
@@ -67,9 +67,9 @@ public class LinkType {
         return directed;
     }
 
-//    public String getDescription() {
-//        return description;
-//    }
+    public String getDescription() {
+        return description;
+    }
 
     public int getLinkTypeID() {
         return linkTypeID;
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2013 Maarten Houbraken
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Software available at https://github.com/mhoubraken/ISMAGS
+ * Author : Maarten Houbraken (maarten.houbraken@intec.ugent.be)
+ */
+package network;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only array of little-endian ints mapped from a file. A single mapping
+ * holds at most 2 GiB, so the array is mapped in chunks of 2^28 ints. The
+ * mapped pages belong to the page cache, so processes mapping the same file
+ * share them, and the mapping stays valid after the channel is closed.
+ */
+class MappedIntArray {
+
+	private static final int CHUNK_BITS = 28;
+	private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+
+	private final IntBuffer[] chunks;
+	private final int length;
+
+	private MappedIntArray(IntBuffer[] chunks, int length) {
+		this.chunks = chunks;
+		this.length = length;
+	}
+
+	/**
+	 * Maps ints from a file
+	 *
+	 * @param channel
+	 *            channel of the file, opened for reading
+	 * @param position
+	 *            position of the first int in the file
+	 * @param length
+	 *            number of ints
+	 * @return the mapped ints
+	 * @throws IOException
+	 *             if the file cannot be mapped
+	 */
+	static MappedIntArray map(FileChannel channel, long position, int length) throws IOException {
+		IntBuffer[] chunks = new IntBuffer[(int) ((length + (long) CHUNK_MASK) >>> CHUNK_BITS)];
+		for (int c = 0; c < chunks.length; c++) {
+			long from = (long) c << CHUNK_BITS;
+			long n = Math.min(1L << CHUNK_BITS, length - from);
+			chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, position + 4 * from, 4 * n)
+					.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+		}
+		return new MappedIntArray(chunks, length);
+	}
+
+	int length() {
+		return length;
+	}
+
+	int get(int i) {
+		return chunks[i >>> CHUNK_BITS].get(i & CHUNK_MASK);
+	}
+
+	/**
+	 * Copies a range of the array to the heap
+	 *
+	 * @param from
+	 *            start of the range (inclusive)
+	 * @param to
+	 *            end of the range (exclusive)
+	 * @return the ints in the range
+	 */
+	int[] get(int from, int to) {
+		int[] ints = new int[to - from];
+		int copied = 0;
+		while (from + copied < to) {
+			int i = from + copied;
+			IntBuffer view = chunks[i >>> CHUNK_BITS].duplicate();
+			((Buffer) view).position(i & CHUNK_MASK);
+			int n = Math.min(ints.length - copied, view.remaining());
+			view.get(ints, copied, n);
+			copied += n;
+		}
+		return ints;
+	}
+
+	/**
+	 * Searches a sorted range of the array, like
+	 * {@link java.util.Arrays#binarySearch(int[], int, int, int)}
+	 *
+	 * @param from
+	 *            start of the range (inclusive)
+	 * @param to
+	 *            end of the range (exclusive)
+	 * @param key
+	 *            value to search for
+	 * @return position of the key if it is in the range, otherwise (-(insertion
+	 *         point) - 1)
+	 */
+	int binarySearch(int from, int to, int key) {
+		int low = from;
+		int high = to - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int value = get(middle);
+			if (value < key) {
+				low = middle + 1;
+			} else if (value > key) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -(low + 1);
+	}
+}
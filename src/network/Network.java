@@ -19,30 +19,42 @@
  */
 package network;
 
-import java.io.BufferedReader;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Set;
 import motifs.MotifLink;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  *
  * @author mhoubraken
  */
 public class Network {
+
+    /**
+     * Default minimal number of neighbours of a node for which its neighbour
+     * list is also stored as bitmap
+     */
+    public static final int DEFAULT_HUB_DEGREE_THRESHOLD = 1024;
+    private static int hubDegreeThreshold = DEFAULT_HUB_DEGREE_THRESHOLD;
 //    Map<Integer,Link> links;
     private Map<Integer,Node> nodesByID;
 
     private Map<String, Node> nodesByDescription;
     private int nrLinks = 0;
-    private Map<MotifLink, Set<Node>> nodeSetsDepartingFromLink;
-    private Map<MotifLink, ArrayList<Node>> nodesWithLink;
+    /**
+     * Nodes in index order. Nodes of a network read from a snapshot are
+     * created when they are first requested, possibly by several search
+     * threads at once, so the array publishes them safely.
+     */
+    private AtomicReferenceArray<Node> nodesByIndex;
+    private CSRGraph csrGraph;
+    private long fingerprint;
+    private NetworkSnapshot snapshot;
     private int nNodes;
     
     
@@ -53,11 +65,66 @@ public class Network {
         nodesByID=new HashMap<Integer,Node>();
         nodesByDescription = new HashMap<String, Node>();
 //        links=new HashMap<Integer,Link>();
-        nodeSetsDepartingFromLink = new HashMap<MotifLink, Set<Node>>();
         nNodes=0;
 
     }
 
+    /**
+     * Creates a finalised network read from a snapshot. The nodes are only
+     * created when they are requested.
+     *
+     * @param csrGraph adjacency of the network
+     * @param snapshot node dictionary of the snapshot
+     * @param nrLinks number of links in the network
+     */
+    Network(CSRGraph csrGraph, NetworkSnapshot snapshot, int nrLinks) {
+        this.csrGraph = csrGraph;
+        this.nodesByIndex = new AtomicReferenceArray<Node>(csrGraph.getNrNodes());
+        this.snapshot = snapshot;
+        this.nrLinks = nrLinks;
+        nNodes = nodesByIndex.length();
+    }
+
+    /**
+     * Creates a finalised network from its nodes and adjacency
+     *
+     * @param csrGraph adjacency of the network
+     * @param nodesByIndex nodes in index order, which is also their ID
+     * @param nodesByDescription nodes by description, null to create the map
+     * when it is requested
+     * @param nrLinks number of links in the network
+     */
+    Network(CSRGraph csrGraph, Node[] nodesByIndex, Map<String, Node> nodesByDescription, int nrLinks) {
+        this.csrGraph = csrGraph;
+        this.nodesByIndex = new AtomicReferenceArray<Node>(nodesByIndex);
+        this.nodesByDescription = nodesByDescription;
+        this.nrLinks = nrLinks;
+        nNodes = nodesByIndex.length;
+    }
+
+    /**
+     * Creates the maps of the nodes by ID and by description of a network read
+     * from a snapshot or link files
+     */
+    private synchronized void createNodeMaps() {
+        if (nodesByID != null) {
+            return;
+        }
+        Map<Integer, Node> byID = new HashMap<Integer, Node>();
+        Map<String, Node> byDescription = nodesByDescription == null ? new HashMap<String, Node>() : null;
+        for (int i = 0; i < nNodes; i++) {
+            Node node = getNodeByIndex(i);
+            byID.put(node.getID(), node);
+            if (byDescription != null) {
+                byDescription.put(node.getDescription(), node);
+            }
+        }
+        if (byDescription != null) {
+            nodesByDescription = byDescription;
+        }
+        nodesByID = byID;
+    }
+
     public void addNode(Node n) {
         nodesByID.put(n.getID(), n);
         nodesByDescription.put(n.getDescription(), n);
@@ -65,22 +132,89 @@ public class Network {
     }
 
     public Node getNodeByDescription(String s) {
+        createNodeMaps();
         return nodesByDescription.get(s);
     }
 
     
     
     public Map<String, Node> getNodesByDescription() {
+        createNodeMaps();
 		return nodesByDescription;
 	}
     
     public Node getNodeByID(int id){
+        createNodeMaps();
     	return nodesByID.get(id);
     }
 
+    /**
+     * Returns the node with the specified index in the CSR representation of
+     * the network
+     *
+     * @param index node index, only available after the network construction
+     * is finalised
+     * @return node with the index
+     */
+    public Node getNodeByIndex(int index) {
+        Node node = nodesByIndex.get(index);
+        if (node == null) {
+            node = createNode(index);
+        }
+        return node;
+    }
+
+    /**
+     * Creates a node of a network read from a snapshot. When several threads
+     * create the same node, all of them return the node stored first.
+     *
+     * @param index node index
+     * @return the node with the index
+     */
+    private Node createNode(int index) {
+        Node node = new Node(snapshot.getDescription(index), index);
+        if (nodesByIndex.compareAndSet(index, null, node)) {
+            return node;
+        }
+        return nodesByIndex.get(index);
+    }
+
+    /**
+     * Returns the description of the node with the specified index, without
+     * creating the node for a network read from a snapshot
+     *
+     * @param index node index
+     * @return description of the node
+     */
+    String getDescription(int index) {
+        Node node = nodesByIndex.get(index);
+        return node != null ? node.getDescription() : snapshot.getDescription(index);
+    }
+
+    /**
+     * Returns the number of links added to the network. An undirected link is
+     * counted once.
+     *
+     * @return number of links
+     */
+    public int getNrLinks() {
+        return nrLinks;
+    }
+
+    /**
+     * Returns the CSR representation of the network, on which the search runs
+     *
+     * @return adjacency of the network, null if the network construction is
+     * not finalised
+     */
+    public CSRGraph getCSRGraph() {
+        return csrGraph;
+    }
+
 	/**
      * Adds a link to the network and updates the sets of nodes with edges of
-     * the related type
+     * the related type. Duplicate links are kept until the network
+     * construction is finalised.
      *
      * @param link
      */
@@ -88,25 +222,13 @@ public class Network {
 //        links.put(l.getID(), l);
         nrLinks++;
         int typeID = link.getType().getMotifLink().getMotifLinkID();
-        Set<Node> setOfLink = getSetOfType(link.getType().getMotifLink());
-        setOfLink.add(link.getStart());
-
-        if (link.getType().isDirected()) {
-            Set<Node> reverseSet = getSetOfType(link.getType().getInverseMotifLink());
-            reverseSet.add(link.getEnd());
-        } else {
-            setOfLink.add(link.getEnd());
-        }
         //adding to nodes
         ArrayList<Node> nodeList = link.getStart().neighboursPerType.get(typeID);
         if (nodeList == null) {
             nodeList = new ArrayList<Node>();
             link.getStart().neighboursPerType.set(typeID,nodeList);
         }
-        if (!nodeList.contains(link.getEnd())) {
-            nodeList.add(link.getEnd());
-//            link.getStart().nrNeighboursPerType[typeID]++;
-        }
+        nodeList.add(link.getEnd());
         if (link.getType().isDirected()) {
             typeID = link.getType().getInverseMotifLink().getMotifLinkID();
         }
@@ -115,113 +237,257 @@ public class Network {
             nodeList = new ArrayList<Node>();
             link.getEnd().neighboursPerType.set(typeID,nodeList);
         }
-        if (!nodeList.contains(link.getStart())) {
-            nodeList.add(link.getStart());
-//            link.getEnd().nrNeighboursPerType[typeID]++;
-        }
+        nodeList.add(link.getStart());
     }
 
-    private Set<Node> getSetOfType(MotifLink type) {
-        Set<Node> set = nodeSetsDepartingFromLink.get(type);
-        if (set == null) {
-            set = new HashSet<Node>();
-            nodeSetsDepartingFromLink.put(type, set);
+    /**
+     * Adds a link to a finalised network. Searches on the network should not
+     * run while links are added.
+     *
+     * @param start start node of the link
+     * @param end end node of the link
+     * @param type type of the link
+     * @return false if the network already had the link
+     * @throws IllegalArgumentException if the nodes are the same or do not
+     * belong to the network
+     */
+    public boolean addEdge(Node start, Node end, LinkType type) {
+        checkEdge(start, end);
+        int forward = type.getMotifLink().getMotifLinkID();
+        if (!csrGraph.addLink(forward, start.getIndex(), end.getIndex())) {
+            return false;
         }
-        return set;
+        csrGraph.addLink(getBackwardID(type), end.getIndex(), start.getIndex());
+        nrLinks++;
+        fingerprint = 0;
+        return true;
     }
+
     /**
-     * Optimises network structure for further processing
+     * Removes a link from a finalised network. Searches on the network should
+     * not run while links are removed.
+     *
+     * @param start start node of the link
+     * @param end end node of the link
+     * @param type type of the link
+     * @return false if the network did not have the link
+     * @throws IllegalArgumentException if the nodes are the same or do not
+     * belong to the network
      */
-    public void finalizeNetworkConstruction() {
-        Set<MotifLink> keySet = nodeSetsDepartingFromLink.keySet();
-        nodesWithLink = new HashMap<MotifLink, ArrayList<Node>>(keySet.size());
-        for (MotifLink motifLink : keySet) {
-            Set<Node> nodes = nodeSetsDepartingFromLink.get(motifLink);
-            ArrayList<Node> n = new ArrayList<Node>(nodes);
-            Collections.sort(n);
-            nodesWithLink.put(motifLink, n);
+    public boolean removeEdge(Node start, Node end, LinkType type) {
+        checkEdge(start, end);
+        int forward = type.getMotifLink().getMotifLinkID();
+        if (!csrGraph.removeLink(forward, start.getIndex(), end.getIndex())) {
+            return false;
         }
-        nodeSetsDepartingFromLink = null;
+        csrGraph.removeLink(getBackwardID(type), end.getIndex(), start.getIndex());
+        nrLinks--;
+        fingerprint = 0;
+        return true;
     }
 
-    public ArrayList<Node> getNodesOfType(MotifLink m) {
-    	ArrayList<Node> nodeList = nodesWithLink.get(m);
-    	return nodeList!=null? nodeList : new ArrayList<Node>();
-    }
-    
     /**
-     * Reads a network
+     * Checks whether a finalised network has a link
      *
-     * @param filenames list of files containing edges and nodes
-     * @param linkTypes for each filename, a linktype is specified
-     * @return
-     * @throws FileNotFoundException
-     * @throws IOException
+     * @param start start node of the link
+     * @param end end node of the link
+     * @param type type of the link
+     * @return true if the network has the link
      */
-    public static Network readNetworkFromFiles(ArrayList<String> filenames, ArrayList<LinkType> linkTypes) throws FileNotFoundException, IOException {
-        Network network = new Network();
-        int nodeID = 0;
-        int linkID = 0;
-        for (int i = 0; i < filenames.size(); i++) {
-            String filename = filenames.get(i);
-            LinkType linkType = linkTypes.get(i);
-
-            BufferedReader in = new BufferedReader(new FileReader(filename));
-
-            String line = in.readLine();
-            int linksi = 0;
-            while (line != null) {
-                int t = line.indexOf('\t');
-                if (t <= 0 || line.contains("#")) {
-                    line = in.readLine();
-                    continue;
-                }
-                String n1 = line.substring(0, t) + linkType.getSourceNetwork();
-                String n2 = line.substring(t + 1) + linkType.getDestinationNetwork();
+    public boolean hasEdge(Node start, Node end, LinkType type) {
+        return csrGraph.hasLink(type.getMotifLink().getMotifLinkID(), start.getIndex(), end.getIndex());
+    }
 
-                if (n1.equals(n2)) {
-//                if(n1.equalsIgnoreCase(n2)){
-                    line = in.readLine();
+    /**
+     * Returns the motif link ID under which the start node of a link is stored
+     * as neighbour of the end node
+     */
+    private static int getBackwardID(LinkType type) {
+        MotifLink link = type.isDirected() ? type.getInverseMotifLink() : type.getMotifLink();
+        return link.getMotifLinkID();
+    }
+
+    private void checkEdge(Node start, Node end) {
+        if (csrGraph == null) {
+            throw new IllegalStateException("Network construction is not finalised");
+        }
+        for (Node node : new Node[]{start, end}) {
+            int index = node.getIndex();
+            if (index < 0 || index >= nNodes || getNodeByIndex(index) != node) {
+                throw new IllegalArgumentException("Node " + node.getDescription() + " is not in the network");
+            }
+        }
+        if (start == end) {
+            throw new IllegalArgumentException("Self-loops are not supported: " + start.getDescription());
+        }
+    }
+
+    /**
+     * Optimises network structure for further processing: the nodes are
+     * indexed in order of their IDs and the neighbour lists of the nodes are
+     * converted to a CSR representation, from which duplicate links are
+     * removed. Afterwards, the neighbour lists of the nodes are released and
+     * links can only be changed through {@link #addEdge(Node, Node, LinkType)}
+     * and {@link #removeEdge(Node, Node, LinkType)}. Neighbour lists of nodes with at
+     * least {@link #getHubDegreeThreshold()} neighbours are also stored as
+     * bitmap.
+     */
+    public void finalizeNetworkConstruction() {
+        Node[] nodes = nodesByID.values().toArray(new Node[nodesByID.size()]);
+        Arrays.sort(nodes);
+        int nrNodes = nodes.length;
+        for (int i = 0; i < nrNodes; i++) {
+            nodes[i].setIndex(i);
+        }
+        int nrLinkIDs = MotifLink.getNrLinkIDs();
+        long[][] edges = new long[nrLinkIDs][];
+        int[] nrEdges = new int[nrLinkIDs];
+        for (int linkID = 0; linkID < nrLinkIDs; linkID++) {
+            for (int i = 0; i < nrNodes; i++) {
+                ArrayList<Node> neighbours = getNeighbours(nodes[i], linkID);
+                nrEdges[linkID] += neighbours == null ? 0 : neighbours.size();
+            }
+            if (nrEdges[linkID] == 0) {
+                continue;
+            }
+            long[] edge = new long[nrEdges[linkID]];
+            int pos = 0;
+            for (int i = 0; i < nrNodes; i++) {
+                ArrayList<Node> neighbours = getNeighbours(nodes[i], linkID);
+                if (neighbours == null) {
                     continue;
                 }
-                Node origin = network.getNodeByDescription(n1);
-                if (origin == null) {
-                    origin = new Node(nodeID++, n1);
-                    network.addNode(origin);
-                }
-                Node destination = network.getNodeByDescription(n2);
-                if (destination == null) {
-                    destination = new Node(nodeID++, n2);
-                    network.addNode(destination);
+                for (Node neighbour : neighbours) {
+                    edge[pos++] = CSRGraph.edge(i, neighbour.getIndex());
                 }
+            }
+            edges[linkID] = edge;
+        }
+        csrGraph = CSRGraph.fromEdges(nrNodes, edges, nrEdges, hubDegreeThreshold);
+        for (Node node : nodes) {
+            node.neighboursPerType = null;
+        }
+        nodesByIndex = new AtomicReferenceArray<Node>(nodes);
+    }
 
-                ArrayList<Node> nodes = origin.neighboursPerType.get(linkType.getMotifLink().getMotifLinkID());
-                line = in.readLine();
-                if (nodes != null && nodes.contains(destination)) {
-                    continue;
+    /**
+     * Returns a 64 bit hash of the node descriptions, in index order, and of
+     * the CSR representation of the network. Networks read from the same
+     * files have the same fingerprint, so results computed on one network,
+     * such as search checkpoints, can be checked to belong to another.
+     *
+     * @return fingerprint of the network, only available after the network
+     * construction is finalised
+     */
+    public long getFingerprint() {
+        if (fingerprint == 0) {
+            // FNV-1a
+            long hash = 0xcbf29ce484222325L;
+            hash = (hash ^ nodesByIndex.length()) * 0x100000001b3L;
+            for (int index = 0; index < nodesByIndex.length(); index++) {
+                String description = getDescription(index);
+                for (int i = 0; i < description.length(); i++) {
+                    hash = (hash ^ description.charAt(i)) * 0x100000001b3L;
                 }
-                Link l = new Link(linkID++, origin, destination, linkType);
-                linksi++;
-                network.addLink(l);
+                hash = (hash ^ 0xffff) * 0x100000001b3L;
             }
-            for (Node node : network.nodesByDescription.values()) {
-                for (ArrayList<Node> nodeSet : node.neighboursPerType) {
-                    if (nodeSet != null) {
-                        Collections.sort(nodeSet);
-                        nodeSet.trimToSize();
+            for (int linkID = 0; linkID < csrGraph.getNrLinkIDs(); linkID++) {
+                hash = (hash ^ linkID) * 0x100000001b3L;
+                for (int i = 0; i < nodesByIndex.length(); i++) {
+                    hash = (hash ^ csrGraph.getDegree(linkID, i)) * 0x100000001b3L;
+                }
+                for (int i = 0; i < nodesByIndex.length(); i++) {
+                    int[] targets = csrGraph.getTargets(linkID, i);
+                    for (int j = csrGraph.getStart(linkID, i); j < csrGraph.getEnd(linkID, i); j++) {
+                        hash = (hash ^ targets[j]) * 0x100000001b3L;
                     }
                 }
             }
-            System.out.println("Read: " + filename + " : links: " + linksi);
-            in.close();
+            fingerprint = hash == 0 ? 1 : hash;
         }
-        network.finalizeNetworkConstruction();
-        System.out.println("Nodes: " + network.nodesByDescription.size());
+        return fingerprint;
+    }
+
+    private static ArrayList<Node> getNeighbours(Node node, int linkID) {
+        if (linkID >= node.neighboursPerType.size()) {
+            return null;
+        }
+        return node.neighboursPerType.get(linkID);
+    }
+
+    public ArrayList<Node> getNodesOfType(MotifLink m) {
+        int[] nodes = csrGraph.getNodesWithLink(m.getMotifLinkID());
+        ArrayList<Node> nodeList = new ArrayList<Node>(nodes.length);
+        for (int node : nodes) {
+            nodeList.add(getNodeByIndex(node));
+        }
+        return nodeList;
+    }
+    
+    /**
+     * Reads a network. The files are parsed concurrently and the network is
+     * finalised once all links are read, so the adjacency is sorted only once.
+     *
+     * @param filenames list of files containing edges and nodes
+     * @param linkTypes for each filename, a linktype is specified
+     * @return
+     * @throws FileNotFoundException
+     * @throws IOException
+     */
+    public static Network readNetworkFromFiles(ArrayList<String> filenames, ArrayList<LinkType> linkTypes) throws FileNotFoundException, IOException {
+        Network network = NetworkReader.read(filenames, linkTypes);
+        System.out.println("Nodes: " + network.nNodes);
 //        System.out.println("Links: "+network.links.size());
         System.out.println("Links: " + network.nrLinks);
         return network;
     }
 
+    /**
+     * Writes the finalised network to a binary snapshot file, from which it
+     * can be opened without parsing the link files. The snapshot holds the CSR
+     * representation and the node descriptions.
+     *
+     * @param path file to write to, replaced if it exists
+     * @throws IOException if the file cannot be written
+     */
+    public void writeSnapshot(Path path) throws IOException {
+        NetworkSnapshot.write(this, path);
+    }
+
+    /**
+     * Opens a network from a snapshot file written by
+     * {@link #writeSnapshot(Path)}. The file is memory mapped: the adjacency
+     * arrays and the node dictionary are read from the mapping, so processes
+     * opening the same snapshot share them in the page cache. Node
+     * descriptions are decoded when a node is first requested. The link types
+     * must have been created in the same order as for the network that was
+     * written, and the network is finalised, so no links can be added.
+     *
+     * @param path snapshot file
+     * @return network stored in the snapshot
+     * @throws IOException if the file cannot be read or does not match the
+     * link types
+     */
+    public static Network openSnapshot(Path path) throws IOException {
+        return NetworkSnapshot.open(path);
+    }
+
+    public static int getHubDegreeThreshold() {
+        return hubDegreeThreshold;
+    }
+
+    /**
+     * Sets the minimal number of neighbours of a node for which its neighbour
+     * list is stored as bitmap in networks finalised afterwards. Every bitmap
+     * takes at most 2 bytes per neighbour.
+     *
+     * @param threshold minimal number of neighbours, Integer.MAX_VALUE to
+     * disable the bitmaps
+     */
+    public static void setHubDegreeThreshold(int threshold) {
+        hubDegreeThreshold = threshold;
+    }
+
 	public int getnNodes() {
 		return nNodes;
 	}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2013 Maarten Houbraken
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Software available at https://github.com/mhoubraken/ISMAGS
+ * Author : Maarten Houbraken (maarten.houbraken@intec.ugent.be)
+ */
+package network;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import datastructures.LongHashSet;
+import motifs.MotifLink;
+
+/**
+ * Builds a network from link files. The files are split into chunks that are
+ * parsed concurrently into {@link EdgeList}s by {@link LinkFileParser}s. The
+ * edge lists are merged in the order of the files and chunks: nodes get
+ * their IDs in order of first appearance and links already read are dropped
+ * by looking them up in a hash set of packed node pairs. The remaining links
+ * are collected in primitive buffers per motif link ID, which are sorted once
+ * to form the CSR representation of the network.
+ */
+class NetworkReader {
+
+	private int nrLinkIDs = MotifLink.getNrLinkIDs();
+	private HashMap<String, Node> nodesByDescription = new HashMap<String, Node>();
+	private ArrayList<Node> nodesByIndex = new ArrayList<Node>();
+	/**
+	 * Links added for the motif link ID of each link type, an undirected link
+	 * is stored once with the smallest node index first
+	 */
+	private LongHashSet[] links = new LongHashSet[nrLinkIDs];
+	private long[][] edges = new long[nrLinkIDs][];
+	private int[] nrEdges = new int[nrLinkIDs];
+	private int nrLinks;
+
+	/**
+	 * Reads a network
+	 *
+	 * @param filenames
+	 *            list of files containing edges and nodes
+	 * @param linkTypes
+	 *            for each filename, a linktype is specified
+	 * @return the finalised network
+	 * @throws IOException
+	 *             if a file cannot be read
+	 */
+	static Network read(List<String> filenames, List<LinkType> linkTypes) throws IOException {
+		return read(filenames, linkTypes, LinkFileParser.CHUNK_SIZE);
+	}
+
+	/**
+	 * Reads a network
+	 *
+	 * @param filenames
+	 *            list of files containing edges and nodes
+	 * @param linkTypes
+	 *            for each filename, a linktype is specified
+	 * @param chunkSize
+	 *            number of bytes after which a chunk of a file ends at the
+	 *            next line end
+	 * @return the finalised network
+	 * @throws IOException
+	 *             if a file cannot be read
+	 */
+	static Network read(List<String> filenames, List<LinkType> linkTypes, int chunkSize) throws IOException {
+		ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		try {
+			List<List<Future<EdgeList>>> parsed = new ArrayList<List<Future<EdgeList>>>();
+			for (int i = 0; i < filenames.size(); i++) {
+				parsed.add(LinkFileParser.submit(pool, filenames.get(i), linkTypes.get(i), chunkSize));
+			}
+			NetworkReader reader = new NetworkReader();
+			for (int i = 0; i < filenames.size(); i++) {
+				int added = 0;
+				for (Future<EdgeList> chunk : parsed.get(i)) {
+					added += reader.add(get(chunk), linkTypes.get(i));
+				}
+				System.out.println("Read: " + filenames.get(i) + " : links: " + added);
+			}
+			return reader.createNetwork();
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Waits for a file to be parsed
+	 */
+	private static EdgeList get(Future<EdgeList> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading the network", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * Adds the links of a chunk of a file that were not yet added to the network
+	 *
+	 * @param list
+	 *            links of a chunk of the file
+	 * @param linkType
+	 *            type of the links in the file
+	 * @return number of links added
+	 */
+	private int add(EdgeList list, LinkType linkType) {
+		int[] index = new int[list.getNrNodes()];
+		for (int i = 0; i < index.length; i++) {
+			String description = list.getDescription(i);
+			Node node = nodesByDescription.get(description);
+			if (node == null) {
+				node = new Node(description, nodesByIndex.size());
+				nodesByDescription.put(description, node);
+				nodesByIndex.add(node);
+			}
+			index[i] = node.getIndex();
+		}
+		int linkID = linkType.getMotifLink().getMotifLinkID();
+		int inverseLinkID = linkType.getInverseMotifLink().getMotifLinkID();
+		boolean directed = linkType.isDirected();
+		if (links[linkID] == null) {
+			links[linkID] = new LongHashSet(list.getNrEdges());
+		}
+		LongHashSet added = links[linkID];
+		int nrAdded = 0;
+		for (int edge = 0; edge < list.getNrEdges(); edge++) {
+			int origin = index[list.getOrigin(edge)];
+			int destination = index[list.getDestination(edge)];
+			if (origin == destination) {
+				// tokens with different bytes decoded to the same description
+				continue;
+			}
+			long key = directed || origin < destination ? CSRGraph.edge(origin, destination)
+					: CSRGraph.edge(destination, origin);
+			if (!added.add(key)) {
+				continue;
+			}
+			append(linkID, CSRGraph.edge(origin, destination));
+			append(inverseLinkID, CSRGraph.edge(destination, origin));
+			nrAdded++;
+		}
+		nrLinks += nrAdded;
+		return nrAdded;
+	}
+
+	private void append(int linkID, long edge) {
+		long[] buffer = edges[linkID];
+		if (buffer == null) {
+			buffer = new long[1024];
+			edges[linkID] = buffer;
+		} else if (nrEdges[linkID] == buffer.length) {
+			buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+			edges[linkID] = buffer;
+		}
+		buffer[nrEdges[linkID]++] = edge;
+	}
+
+	/**
+	 * Sorts the collected links into the CSR representation of the network
+	 *
+	 * @return the finalised network
+	 */
+	private Network createNetwork() {
+		links = null;
+		Node[] nodes = nodesByIndex.toArray(new Node[nodesByIndex.size()]);
+		CSRGraph graph = CSRGraph.fromEdges(nodes.length, edges, nrEdges, Network.getHubDegreeThreshold());
+		edges = null;
+		return new Network(graph, nodes, nodesByDescription, nrLinks);
+	}
+}
@@ -0,0 +1,384 @@
+/*
+ * Copyright (C) 2013 Maarten Houbraken
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Software available at https://github.com/mhoubraken/ISMAGS
+ * Author : Maarten Houbraken (maarten.houbraken@intec.ugent.be)
+ */
+package network;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import motifs.MotifLink;
+
+/**
+ * Binary snapshot of a finalised network. The file holds, in little-endian
+ * byte order:
+ * <ul>
+ * <li>a header: magic number, version, number of nodes, number of motif link
+ * IDs, number of links and the size of the node dictionary in bytes</li>
+ * <li>the size in bytes of the link type descriptions, followed for every
+ * motif link ID by whether its link type is directed and whether the ID is
+ * the inverse direction, and by the description, source and destination of
+ * the link type, each as length and UTF-8 bytes; the descriptions are padded
+ * to a multiple of 4 bytes, so the arrays that follow are aligned</li>
+ * <li>the start of the description of every node in the dictionary, followed
+ * by the size of the dictionary</li>
+ * <li>for every motif link ID, the number of targets (-1 if there are no links
+ * with that ID) followed by the CSR offsets and targets</li>
+ * <li>the node dictionary: the UTF-8 encoded descriptions of all nodes, in
+ * index order</li>
+ * </ul>
+ * Opening a snapshot maps the file with {@link FileChannel#map}: the
+ * description offsets, the CSR arrays and the dictionary are read from the
+ * mapping, so processes opening the same snapshot share its pages in the page
+ * cache instead of each holding a copy. Descriptions are only decoded when a
+ * node is requested, and the neighbours of a node are only copied to the heap
+ * when the search requests them.
+ */
+class NetworkSnapshot {
+
+	private static final int MAGIC = 0x49534e53;
+	private static final int VERSION = 3;
+	private static final int DIRECTED = 1;
+	private static final int INVERSE = 2;
+	private static final int HEADER_SIZE = 32;
+
+	private MappedIntArray descriptionOffsets;
+	private ByteBuffer dictionary;
+
+	private NetworkSnapshot(MappedIntArray descriptionOffsets, ByteBuffer dictionary) {
+		this.descriptionOffsets = descriptionOffsets;
+		this.dictionary = dictionary;
+	}
+
+	/**
+	 * Decodes the description of a node from the dictionary
+	 *
+	 * @param index
+	 *            node index
+	 * @return description of the node
+	 */
+	String getDescription(int index) {
+		int start = descriptionOffsets.get(index);
+		byte[] bytes = new byte[descriptionOffsets.get(index + 1) - start];
+		ByteBuffer view = dictionary.duplicate();
+		((Buffer) view).position(start);
+		view.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Writes a finalised network to a snapshot file
+	 *
+	 * @param network
+	 *            network to be written
+	 * @param path
+	 *            file to write to, replaced if it exists
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	static void write(Network network, Path path) throws IOException {
+		CSRGraph graph = network.getCSRGraph();
+		int nrNodes = graph.getNrNodes();
+		byte[][] descriptions = new byte[nrNodes][];
+		int[] descriptionOffsets = new int[nrNodes + 1];
+		for (int i = 0; i < nrNodes; i++) {
+			descriptions[i] = network.getDescription(i).getBytes(StandardCharsets.UTF_8);
+			descriptionOffsets[i + 1] = descriptionOffsets[i] + descriptions[i].length;
+		}
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putInt(nrNodes);
+			buffer.putInt(graph.getNrLinkIDs());
+			buffer.putLong(network.getNrLinks());
+			buffer.putLong(descriptionOffsets[nrNodes]);
+			byte[] linkTypes = describeLinkTypes(graph.getNrLinkIDs());
+			putInts(channel, buffer, new int[] { linkTypes.length }, 0, 1);
+			putBytes(channel, buffer, linkTypes);
+			putBytes(channel, buffer, new byte[getPadding(linkTypes.length)]);
+			putInts(channel, buffer, descriptionOffsets, 0, descriptionOffsets.length);
+			for (int linkID = 0; linkID < graph.getNrLinkIDs(); linkID++) {
+				int[] offsets = new int[nrNodes + 1];
+				for (int i = 0; i < nrNodes; i++) {
+					offsets[i + 1] = offsets[i] + graph.getDegree(linkID, i);
+				}
+				if (offsets[nrNodes] == 0) {
+					putInts(channel, buffer, new int[] { -1 }, 0, 1);
+					continue;
+				}
+				putInts(channel, buffer, new int[] { offsets[nrNodes] }, 0, 1);
+				putInts(channel, buffer, offsets, 0, offsets.length);
+				for (int i = 0; i < nrNodes; i++) {
+					putInts(channel, buffer, graph.getTargets(linkID, i), graph.getStart(linkID, i),
+							graph.getEnd(linkID, i));
+				}
+			}
+			for (byte[] description : descriptions) {
+				putBytes(channel, buffer, description);
+			}
+			flush(channel, buffer);
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Opens a snapshot file. The link types of the network must have been
+	 * created, with the same descriptions, source and destination networks
+	 * and directedness and in the same order as for the network that was
+	 * written.
+	 *
+	 * @param path
+	 *            snapshot file
+	 * @return the network stored in the snapshot
+	 * @throws IOException
+	 *             if the file cannot be read or is not a snapshot of a network
+	 *             with the current link types
+	 */
+	static Network open(Path path) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			if (channel.size() < HEADER_SIZE) {
+				throw new IOException("Not a network snapshot: " + path);
+			}
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+				throw new IOException("Not a network snapshot: " + path);
+			}
+			int nrNodes = header.getInt();
+			int nrLinkIDs = header.getInt();
+			long nrLinks = header.getLong();
+			long dictionarySize = header.getLong();
+			if (nrLinkIDs != MotifLink.getNrLinkIDs()) {
+				throw new IOException("Snapshot " + path + " has " + nrLinkIDs + " motif link IDs, but "
+						+ MotifLink.getNrLinkIDs() + " are defined by the link types");
+			}
+			if (dictionarySize > Integer.MAX_VALUE) {
+				throw new IOException("Node dictionary of snapshot " + path + " is too large");
+			}
+			long position = HEADER_SIZE;
+			int linkTypesSize = getInt(path, channel, position);
+			position += 4;
+			if (linkTypesSize < 0 || position + linkTypesSize + getPadding(linkTypesSize) > channel.size()) {
+				throw new IOException("Snapshot " + path + " is truncated or corrupt");
+			}
+			ByteBuffer linkTypes = channel.map(FileChannel.MapMode.READ_ONLY, position, linkTypesSize)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			checkLinkTypes(path, linkTypes, nrLinkIDs);
+			position += linkTypesSize + getPadding(linkTypesSize);
+			MappedIntArray descriptionOffsets = map(path, channel, position, nrNodes + 1);
+			position += 4L * (nrNodes + 1);
+			MappedIntArray[] offsets = new MappedIntArray[nrLinkIDs];
+			MappedIntArray[] targets = new MappedIntArray[nrLinkIDs];
+			for (int linkID = 0; linkID < nrLinkIDs; linkID++) {
+				int nrTargets = getInt(path, channel, position);
+				position += 4;
+				if (nrTargets < 0) {
+					continue;
+				}
+				offsets[linkID] = map(path, channel, position, nrNodes + 1);
+				position += 4L * (nrNodes + 1);
+				targets[linkID] = map(path, channel, position, nrTargets);
+				position += 4L * nrTargets;
+			}
+			if (position + dictionarySize != channel.size()) {
+				throw new IOException("Snapshot " + path + " is truncated or corrupt");
+			}
+			ByteBuffer dictionary = channel.map(FileChannel.MapMode.READ_ONLY, position, dictionarySize);
+			NetworkSnapshot snapshot = new NetworkSnapshot(descriptionOffsets, dictionary);
+			CSRGraph graph = new CSRGraph(nrNodes, offsets, targets, Network.getHubDegreeThreshold());
+			return new Network(graph, snapshot, (int) nrLinks);
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Encodes the link type of every motif link ID
+	 *
+	 * @param nrLinkIDs
+	 *            number of motif link IDs
+	 * @return link type descriptions in the snapshot format
+	 */
+	private static byte[] describeLinkTypes(int nrLinkIDs) {
+		byte[][][] strings = new byte[nrLinkIDs][][];
+		int size = 0;
+		for (int linkID = 0; linkID < nrLinkIDs; linkID++) {
+			LinkType type = MotifLink.getMotifLink(linkID).getLinkType();
+			strings[linkID] = new byte[][] { encode(type.getDescription()), encode(type.getSourceNetwork()),
+					encode(type.getDestinationNetwork()) };
+			size += 16;
+			for (byte[] string : strings[linkID]) {
+				size += string == null ? 0 : string.length;
+			}
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+		for (int linkID = 0; linkID < nrLinkIDs; linkID++) {
+			buffer.putInt(getFlags(MotifLink.getMotifLink(linkID)));
+			for (byte[] string : strings[linkID]) {
+				buffer.putInt(string == null ? -1 : string.length);
+				if (string != null) {
+					buffer.put(string);
+				}
+			}
+		}
+		return buffer.array();
+	}
+
+	/**
+	 * Checks that the link types stored in a snapshot are the link types of
+	 * the current motif link IDs
+	 *
+	 * @throws IOException
+	 *             if a link type differs or the descriptions are corrupt
+	 */
+	private static void checkLinkTypes(Path path, ByteBuffer linkTypes, int nrLinkIDs) throws IOException {
+		try {
+			for (int linkID = 0; linkID < nrLinkIDs; linkID++) {
+				int flags = linkTypes.getInt();
+				String description = getString(linkTypes);
+				String source = getString(linkTypes);
+				String destination = getString(linkTypes);
+				MotifLink link = MotifLink.getMotifLink(linkID);
+				LinkType type = link.getLinkType();
+				if (flags != getFlags(link) || !equal(description, type.getDescription())
+						|| !equal(source, type.getSourceNetwork())
+						|| !equal(destination, type.getDestinationNetwork())) {
+					throw new IOException("Snapshot " + path + " was written with link type "
+							+ describe(description, flags, source, destination) + " for motif link ID " + linkID
+							+ ", but the current link type is " + describe(type.getDescription(), getFlags(link),
+									type.getSourceNetwork(), type.getDestinationNetwork()));
+				}
+			}
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Snapshot " + path + " is truncated or corrupt", e);
+		}
+		if (linkTypes.hasRemaining()) {
+			throw new IOException("Snapshot " + path + " is truncated or corrupt");
+		}
+	}
+
+	private static int getFlags(MotifLink link) {
+		return (link.getLinkType().isDirected() ? DIRECTED : 0) | (link.isDirection() ? 0 : INVERSE);
+	}
+
+	private static String describe(String description, int flags, String source, String destination) {
+		return description + " (" + ((flags & DIRECTED) != 0 ? "directed" : "undirected") + ", " + source + " to "
+				+ destination + ((flags & INVERSE) != 0 ? ", inverse" : "") + ")";
+	}
+
+	private static byte[] encode(String string) {
+		return string == null ? null : string.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static String getString(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		if (length < 0) {
+			return null;
+		}
+		if (length > buffer.remaining()) {
+			throw new BufferUnderflowException();
+		}
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static boolean equal(String a, String b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	/**
+	 * Returns the number of bytes padding a section to a multiple of 4 bytes
+	 */
+	private static int getPadding(int size) {
+		return -size & 3;
+	}
+
+	/**
+	 * Reads an int from a file
+	 */
+	private static int getInt(Path path, FileChannel channel, long position) throws IOException {
+		if (position + 4 > channel.size()) {
+			throw new IOException("Snapshot " + path + " is truncated or corrupt");
+		}
+		return channel.map(FileChannel.MapMode.READ_ONLY, position, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+	}
+
+	/**
+	 * Maps ints from a snapshot file
+	 *
+	 * @throws IOException
+	 *             if the ints are not in the file
+	 */
+	private static MappedIntArray map(Path path, FileChannel channel, long position, int count) throws IOException {
+		if (count < 0 || position + 4L * count > channel.size()) {
+			throw new IOException("Snapshot " + path + " is truncated or corrupt");
+		}
+		return MappedIntArray.map(channel, position, count);
+	}
+
+	/**
+	 * Writes ints through the buffer, flushing it to the channel when full
+	 */
+	private static void putInts(FileChannel channel, ByteBuffer buffer, int[] ints, int from, int to)
+			throws IOException {
+		while (from < to) {
+			if (buffer.remaining() < 4) {
+				flush(channel, buffer);
+			}
+			int n = Math.min(to - from, buffer.remaining() / 4);
+			buffer.asIntBuffer().put(ints, from, n);
+			((Buffer) buffer).position(buffer.position() + 4 * n);
+			from += n;
+		}
+	}
+
+	/**
+	 * Writes bytes through the buffer, flushing it to the channel when full
+	 */
+	private static void putBytes(FileChannel channel, ByteBuffer buffer, byte[] bytes) throws IOException {
+		if (buffer.remaining() < bytes.length) {
+			flush(channel, buffer);
+		}
+		if (bytes.length > buffer.capacity()) {
+			channel.write(ByteBuffer.wrap(bytes));
+		} else {
+			buffer.put(bytes);
+		}
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+		((Buffer) buffer).flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		((Buffer) buffer).clear();
+	}
+}
@@ -28,12 +28,29 @@ import motifs.MotifLink;
  */
 public class Node implements Comparable<Node> {
 
-    public boolean used = false;
-    private int ID;
+    private final int ID;
+    private int index = -1;
 //    int[] nrNeighboursPerType;
 //    public NodeSet[] neighboursPerType;
+    /**
+     * Neighbour lists used while constructing the network, released when the
+     * network construction is finalised
+     */
     public ArrayList<ArrayList<Node>> neighboursPerType;
-    private String description;
+    private final String description;
+
+    /**
+     * Creates a node of a network read from a snapshot, which has no neighbour
+     * lists
+     *
+     * @param description description of the node
+     * @param index index of the node, also used as ID
+     */
+    Node(String description, int index) {
+        this.ID = index;
+        this.index = index;
+        this.description = description;
+    }
 
     public Node(int ID, String description) {
         this.ID = ID;
@@ -68,4 +85,16 @@ public class Node implements Comparable<Node> {
     public int getID(){
     	return ID;
     }
+
+    /**
+     * Get the index of this node in the CSR representation of the network
+     * @return index of this node, -1 if the network is not finalised
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    void setIndex(int index) {
+        this.index = index;
+    }
 }
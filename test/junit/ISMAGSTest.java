@@ -1,23 +1,65 @@
 package junit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 import org.junit.Test;
 
 import ISMAGS.CommandLineInterface;
+import ISMAGS.InstanceWriter;
+import ISMAGS.QueryServer;
+import algorithm.CountEstimate;
+import algorithm.IncrementalMotifIndex;
+import algorithm.MotifCensus;
 import algorithm.MotifFinder;
+import algorithm.MotifInstanceSink;
+import algorithm.SearchCheckpoint;
+import algorithm.SearchLimits;
+import algorithm.SearchResult;
+import algorithm.SearchStatistics;
+import algorithm.SymmetryCache;
+import motifs.CanonicalForm;
 import motifs.Motif;
 import motifs.MotifInstance;
+import motifs.MotifInstanceSet;
+import motifs.MotifLink;
+import network.Link;
 import network.LinkType;
 import network.Network;
 import network.Node;
@@ -52,11 +94,23 @@ public class ISMAGSTest {
 	 */
 	private MotifFinder mf;
 
+	/**
+	 * Network searched in this test run
+	 */
+	private Network network;
+
+	/**
+	 * Files and link types the network is read from
+	 */
+	private ArrayList<String> linkfiles;
+	private ArrayList<LinkType> allLinkTypes;
+	private HashMap<Character, LinkType> typeTranslation;
+
 	/**
 	 * Run a sample test on included data.
 	 */
 	private void doTestRun() {
-		ArrayList<String> linkfiles = new ArrayList<String>();
+		linkfiles = new ArrayList<String>();
 		ArrayList<String> linkTypes = new ArrayList<String>();
 		ArrayList<String> sourcenetworks = new ArrayList<String>();
 		ArrayList<String> destinationnetworks = new ArrayList<String>();
@@ -69,8 +123,8 @@ public class ISMAGSTest {
 			destinationnetworks.add(st.nextToken());
 			linkfiles.add(dataFolder + st.nextToken());
 		}
-		ArrayList<LinkType> allLinkTypes = new ArrayList<LinkType>();
-		HashMap<Character, LinkType> typeTranslation = new HashMap<Character, LinkType>();
+		allLinkTypes = new ArrayList<LinkType>();
+		typeTranslation = new HashMap<Character, LinkType>();
 		for (int i = 0; i < linkTypes.size(); i++) {
 			String n = linkTypes.get(i);
 			char nn = n.charAt(0);
@@ -83,7 +137,7 @@ public class ISMAGSTest {
 		}
 
 		try {
-			Network network = Network.readNetworkFromFiles(linkfiles, allLinkTypes);
+			this.network = Network.readNetworkFromFiles(linkfiles, allLinkTypes);
 			this.motif = CommandLineInterface.getMotif(motifspec, typeTranslation);
 
 			this.mf = new MotifFinder(network);
@@ -106,6 +160,675 @@ public class ISMAGSTest {
 		assertEquals(expectedNumberOfInstances, this.motifInstances.size());		
 	}
 	
+	/**
+	 * Checks if a parallel search finds the same instances as the sequential
+	 * search
+	 */
+	@Test
+	public void testParallelRun() {
+		Set<MotifInstance> parallelInstances = new MotifFinder(network).findMotif(motif, 4);
+		assertEquals(toStrings(motifInstances), toStrings(parallelInstances));
+	}
+
+	/**
+	 * Checks if counting the instances agrees with finding them
+	 */
+	@Test
+	public void testCountRun() {
+		assertEquals(expectedNumberOfInstances, new MotifFinder(network).countMotif(motif));
+		assertEquals(expectedNumberOfInstances, new MotifFinder(network).countMotif(motif, 4));
+	}
+
+	/**
+	 * Checks if a search using bitmaps for nearly all neighbour lists finds the
+	 * same instances
+	 */
+	@Test
+	public void testHubBitmapRun() throws IOException {
+		Network.setHubDegreeThreshold(2);
+		Network bitmapNetwork;
+		try {
+			bitmapNetwork = Network.readNetworkFromFiles(linkfiles, allLinkTypes);
+		} finally {
+			Network.setHubDegreeThreshold(Network.DEFAULT_HUB_DEGREE_THRESHOLD);
+		}
+		Set<MotifInstance> bitmapInstances = new MotifFinder(bitmapNetwork).findMotif(motif);
+		assertEquals(toStrings(motifInstances), toStrings(bitmapInstances));
+		assertEquals(expectedNumberOfInstances, new MotifFinder(bitmapNetwork).countMotif(motif, 4));
+	}
+
+	/**
+	 * Checks if streaming the instances to a sink passes every instance once
+	 */
+	@Test
+	public void testSinkRun() {
+		final Set<String> streamed = new HashSet<String>();
+		new MotifFinder(network).findMotif(motif, new MotifInstanceSink() {
+			@Override
+			public void instanceFound(Node[] mapping) {
+				assertTrue("instances should be passed once", streamed.add(new MotifInstance(mapping).toString()));
+			}
+		});
+		assertEquals(toStrings(motifInstances), streamed);
+	}
+
+	/**
+	 * Checks if the lazy iterator produces every instance once, and can be
+	 * abandoned halfway
+	 */
+	@Test
+	public void testIterateRun() {
+		Set<String> iterated = new HashSet<String>();
+		Iterator<MotifInstance> it = new MotifFinder(network).iterate(motif);
+		while (it.hasNext()) {
+			assertTrue("instances should be produced once", iterated.add(it.next().toString()));
+		}
+		assertEquals(toStrings(motifInstances), iterated);
+
+		it = new MotifFinder(network).iterate(motif);
+		for (int i = 0; i < 10; i++) {
+			assertTrue(motifInstances.size() > i && it.hasNext());
+			assertTrue(iterated.contains(it.next().toString()));
+		}
+	}
+
+	/**
+	 * Checks if a search interrupted after a checkpoint and resumed from it
+	 * finds every instance once
+	 */
+	@Test
+	public void testCheckpointResume() throws IOException {
+		File checkpointFile = File.createTempFile("ismags", ".checkpoint");
+		try {
+			final MotifFinder finder = new MotifFinder(network);
+			final List<String> interrupted = new ArrayList<String>();
+			finder.findMotif(motif, new MotifInstanceSink() {
+				@Override
+				public void instanceFound(Node[] mapping) {
+					interrupted.add(new MotifInstance(mapping).toString());
+					if (interrupted.size() == expectedNumberOfInstances / 2) {
+						finder.cancel();
+					}
+				}
+			}, null, checkpointFile, 0);
+			SearchCheckpoint checkpoint = SearchCheckpoint.read(checkpointFile);
+			assertTrue(checkpoint.matches(network, motif));
+			assertTrue(checkpoint.getNrInstances() > 0 && checkpoint.getNrInstances() <= interrupted.size());
+
+			final List<String> resumed = new ArrayList<String>(interrupted.subList(0,
+					(int) checkpoint.getNrInstances()));
+			long nrInstances = new MotifFinder(network).findMotif(motif, new MotifInstanceSink() {
+				@Override
+				public void instanceFound(Node[] mapping) {
+					resumed.add(new MotifInstance(mapping).toString());
+				}
+			}, checkpoint, checkpointFile, 0);
+			assertEquals(expectedNumberOfInstances, nrInstances);
+			assertEquals(expectedNumberOfInstances, resumed.size());
+			assertEquals(toStrings(motifInstances), new HashSet<String>(resumed));
+			assertTrue("checkpoint should be removed after completion", !checkpointFile.exists());
+		} finally {
+			checkpointFile.delete();
+		}
+	}
+
+	/**
+	 * Checks if a network built link by link, including duplicate links, is
+	 * the same as the network read from the link files
+	 */
+	@Test
+	public void testNetworkConstruction() throws IOException {
+		Network built = new Network();
+		int linkID = 0;
+		for (int i = 0; i < linkfiles.size(); i++) {
+			LinkType linkType = allLinkTypes.get(i);
+			BufferedReader in = new BufferedReader(new FileReader(linkfiles.get(i)));
+			String line;
+			while ((line = in.readLine()) != null) {
+				int t = line.indexOf('\t');
+				if (t <= 0 || line.contains("#")) {
+					continue;
+				}
+				Node origin = getOrAddNode(built, line.substring(0, t) + linkType.getSourceNetwork());
+				Node destination = getOrAddNode(built, line.substring(t + 1) + linkType.getDestinationNetwork());
+				if (origin != destination) {
+					built.addLink(new Link(linkID++, origin, destination, linkType));
+					built.addLink(new Link(linkID++, origin, destination, linkType));
+				}
+			}
+			in.close();
+		}
+		built.finalizeNetworkConstruction();
+		assertEquals(network.getnNodes(), built.getnNodes());
+		assertEquals(network.getFingerprint(), built.getFingerprint());
+		assertEquals(expectedNumberOfInstances, new MotifFinder(built).countMotif(motif));
+	}
+
+	private Node getOrAddNode(Network network, String description) {
+		Node node = network.getNodeByDescription(description);
+		if (node == null) {
+			node = new Node(network.getnNodes(), description);
+			network.addNode(node);
+		}
+		return node;
+	}
+
+	/**
+	 * Checks if a network opened from a snapshot is the same as the network it
+	 * was written from
+	 */
+	@Test
+	public void testSnapshot() throws IOException {
+		File snapshotFile = File.createTempFile("ismags", ".snapshot");
+		try {
+			network.writeSnapshot(snapshotFile.toPath());
+			Network snapshot = Network.openSnapshot(snapshotFile.toPath());
+			assertEquals(network.getFingerprint(), snapshot.getFingerprint());
+			assertEquals(network.getNrLinks(), snapshot.getNrLinks());
+			assertEquals(toStrings(motifInstances), toStrings(new MotifFinder(snapshot).findMotif(motif, false)));
+			assertEquals(expectedNumberOfInstances, new MotifFinder(snapshot).countMotif(motif, 4));
+			Node node = network.getNodeByIndex(0);
+			assertEquals(node.getDescription(), snapshot.getNodeByDescription(node.getDescription()).getDescription());
+			// the mapped neighbour lists are searched in place and copied on update
+			LinkType type = allLinkTypes.get(0);
+			Node linked = null;
+			for (int i = 0; i < network.getnNodes(); i++) {
+				Node other = network.getNodeByIndex(i);
+				boolean hasEdge = other != node && network.hasEdge(node, other, type);
+				assertEquals(hasEdge, other != node && snapshot.hasEdge(snapshot.getNodeByIndex(0),
+						snapshot.getNodeByIndex(i), type));
+				if (hasEdge) {
+					linked = snapshot.getNodeByIndex(i);
+				}
+			}
+			assertTrue("node " + node + " has no " + type + " links", linked != null);
+			Node start = snapshot.getNodeByIndex(0);
+			assertTrue(snapshot.removeEdge(start, linked, type));
+			assertFalse(snapshot.hasEdge(start, linked, type));
+			assertTrue(snapshot.addEdge(start, linked, type));
+			assertTrue(snapshot.hasEdge(start, linked, type));
+			assertEquals(network.getFingerprint(), snapshot.getFingerprint());
+			Network.setHubDegreeThreshold(2);
+			Network bitmapSnapshot;
+			try {
+				bitmapSnapshot = Network.openSnapshot(snapshotFile.toPath());
+			} finally {
+				Network.setHubDegreeThreshold(Network.DEFAULT_HUB_DEGREE_THRESHOLD);
+			}
+			assertEquals(expectedNumberOfInstances, new MotifFinder(bitmapSnapshot).countMotif(motif, 4));
+		} finally {
+			snapshotFile.delete();
+		}
+	}
+
+	/**
+	 * Checks that the nodes of a snapshot, which are created when they are
+	 * first requested, are the same for threads requesting them at once
+	 */
+	@Test
+	public void testSnapshotNodes() throws Exception {
+		File snapshotFile = File.createTempFile("ismags", ".snapshot");
+		ExecutorService threads = Executors.newFixedThreadPool(4);
+		try {
+			network.writeSnapshot(snapshotFile.toPath());
+			final Network snapshot = Network.openSnapshot(snapshotFile.toPath());
+			final int nrNodes = snapshot.getnNodes();
+			List<Future<Node[]>> results = new ArrayList<Future<Node[]>>();
+			for (int t = 0; t < 4; t++) {
+				results.add(threads.submit(new Callable<Node[]>() {
+					@Override
+					public Node[] call() {
+						Node[] nodes = new Node[nrNodes];
+						for (int i = 0; i < nrNodes; i++) {
+							nodes[i] = snapshot.getNodeByIndex(i);
+						}
+						return nodes;
+					}
+				}));
+			}
+			Node[] first = results.get(0).get();
+			for (Future<Node[]> result : results) {
+				Node[] nodes = result.get();
+				for (int i = 0; i < nrNodes; i++) {
+					assertTrue(nodes[i] == first[i]);
+					assertEquals(i, nodes[i].getIndex());
+				}
+			}
+		} finally {
+			threads.shutdown();
+			snapshotFile.delete();
+		}
+	}
+
+	/**
+	 * Checks that a snapshot is only opened with the link types it was
+	 * written with
+	 */
+	@Test
+	public void testSnapshotLinkTypes() throws IOException {
+		File snapshotFile = File.createTempFile("ismags", ".snapshot");
+		try {
+			MotifLink.clear();
+			LinkType.clear();
+			Network original = Network.readNetworkFromFiles(linkfiles, createLinkTypes("X u A A Y u B B Z d A B"));
+			original.writeSnapshot(snapshotFile.toPath());
+			// same number of motif link IDs, but other directedness or order
+			for (String linkTypes : new String[] { "X d A A Y u B B Z u A B", "Y u B B X u A A Z d A B",
+					"X u A A Y u B B Z d B A" }) {
+				MotifLink.clear();
+				LinkType.clear();
+				createLinkTypes(linkTypes);
+				try {
+					Network.openSnapshot(snapshotFile.toPath());
+					fail("Snapshot opened with link types " + linkTypes);
+				} catch (IOException e) {
+					assertTrue(e.getMessage().contains("link type"));
+				}
+			}
+			MotifLink.clear();
+			LinkType.clear();
+			createLinkTypes("X u A A Y u B B Z d A B");
+			assertEquals(original.getFingerprint(), Network.openSnapshot(snapshotFile.toPath()).getFingerprint());
+		} finally {
+			snapshotFile.delete();
+		}
+	}
+
+	/**
+	 * Creates link types
+	 *
+	 * @param linkTypes
+	 *            name, u or d, source and destination network of every link
+	 *            type, separated by spaces
+	 * @return the link types in the order given
+	 */
+	private ArrayList<LinkType> createLinkTypes(String linkTypes) {
+		ArrayList<LinkType> types = new ArrayList<LinkType>();
+		StringTokenizer st = new StringTokenizer(linkTypes, " ");
+		for (int i = 0; st.hasMoreTokens(); i++) {
+			String name = st.nextToken();
+			boolean directed = st.nextToken().equals("d");
+			types.add(new LinkType(directed, name, i, name.charAt(0), st.nextToken(), st.nextToken()));
+		}
+		return types;
+	}
+
+	/**
+	 * Checks if a batch search for a family of motifs finds, for every motif,
+	 * the same instances as a separate search
+	 */
+	@Test
+	public void testFindMotifs() {
+		String[] specs = { motifspec, "XXXZ000Z0Y00ZY0", "XXXZ000Z0Y", "XXXZ00", "XXX", "X0XZ00", "XZ0", "Z0Y" };
+		List<Motif> motifs = new ArrayList<Motif>();
+		for (String spec : specs) {
+			motifs.add(CommandLineInterface.getMotif(spec, typeTranslation));
+		}
+		List<Set<MotifInstance>> instances = new MotifFinder(network).findMotifs(motifs);
+		long[] counts = new MotifFinder(network).countMotifs(motifs);
+		assertEquals(specs.length, instances.size());
+		assertEquals(toStrings(motifInstances), toStrings(instances.get(0)));
+		for (int i = 0; i < specs.length; i++) {
+			Set<MotifInstance> separate = new MotifFinder(network).findMotif(motifs.get(i));
+			assertEquals(specs[i], toStrings(separate), toStrings(instances.get(i)));
+			assertEquals(specs[i], separate.size(), counts[i]);
+		}
+	}
+
+	/**
+	 * Checks if a census enumerates every connected motif of 3 nodes once and
+	 * counts the same instances as separate searches
+	 */
+	@Test
+	public void testCensus() {
+		MotifCensus census = new MotifCensus(3, typeTranslation);
+		// paths and triangles within the A and B networks and across them
+		assertEquals(10, census.getNrMotifs());
+		long[] counts = census.count(mf, 2);
+		Set<CanonicalForm> forms = new HashSet<CanonicalForm>();
+		for (int i = 0; i < census.getNrMotifs(); i++) {
+			Motif censusMotif = CommandLineInterface.getMotif(census.getSpec(i), typeTranslation);
+			assertTrue(census.getSpec(i), forms.add(censusMotif.getCanonicalForm()));
+			assertEquals(census.getSpec(i), mf.countMotif(censusMotif), counts[i]);
+		}
+	}
+
+	/**
+	 * Checks if searches stop at their limits with a subset of the instances,
+	 * and if a search within its limits finds all instances
+	 */
+	@Test
+	public void testSearchLimits() {
+		for (int parallelism = 1; parallelism <= 2; parallelism++) {
+			SearchResult limited = new MotifFinder(network).findMotif(motif, new SearchLimits(0, 100, 0),
+					parallelism);
+			assertEquals(SearchResult.Status.INSTANCE_LIMIT_REACHED, limited.getStatus());
+			assertEquals(100, limited.getNrInstances());
+			assertEquals(100, limited.getInstances().size());
+			assertTrue(toStrings(motifInstances).containsAll(toStrings(limited.getInstances())));
+
+			limited = new MotifFinder(network).findMotif(motif, new SearchLimits(0, 0, 1000), parallelism);
+			assertEquals(SearchResult.Status.SEARCH_NODE_LIMIT_REACHED, limited.getStatus());
+			assertEquals(1000, limited.getNrSearchNodes());
+			assertTrue(limited.getNrFinishedRootCandidates() < limited.getNrRootCandidates());
+			assertTrue(toStrings(motifInstances).containsAll(toStrings(limited.getInstances())));
+
+			SearchResult result = new MotifFinder(network).findMotif(motif, new SearchLimits(600000,
+					expectedNumberOfInstances, 0), parallelism);
+			assertTrue(result.toString(), result.isComplete());
+			assertEquals(result.getNrRootCandidates(), result.getNrFinishedRootCandidates());
+			assertEquals(toStrings(motifInstances), toStrings(result.getInstances()));
+		}
+	}
+
+	/**
+	 * Checks if the statistics count the instances at the last depth, and if
+	 * they are available through JMX
+	 */
+	@Test
+	public void testStatistics() throws JMException {
+		SearchStatistics statistics = new SearchStatistics();
+		statistics.register();
+		try {
+			for (int parallelism = 1; parallelism <= 2; parallelism++) {
+				statistics.reset();
+				MotifFinder finder = new MotifFinder(network);
+				finder.setStatistics(statistics);
+				assertEquals(expectedNumberOfInstances, finder.countMotif(motif, parallelism));
+				long[] searchNodes = (long[]) ManagementFactory.getPlatformMBeanServer()
+						.getAttribute(new ObjectName(SearchStatistics.OBJECT_NAME), "SearchNodes");
+				assertEquals(motif.getNrMotifNodes(), searchNodes.length);
+				assertEquals(expectedNumberOfInstances, searchNodes[searchNodes.length - 1]);
+				long[] intersections = statistics.getIntersections();
+				for (int depth = 1; depth < searchNodes.length; depth++) {
+					assertTrue(intersections[depth] <= searchNodes[depth - 1]);
+				}
+			}
+		} finally {
+			statistics.unregister();
+		}
+	}
+
+	/**
+	 * Checks if the estimate of the number of instances reaches the requested
+	 * relative error and if its confidence interval holds the exact number
+	 */
+	@Test
+	public void testEstimate() {
+		CountEstimate estimate = mf.estimateMotifCount(motif, 0.05, 60000, 1, 42);
+		assertTrue(estimate.toString(), estimate.getRelativeError() <= 0.05);
+		assertTrue(estimate.toString(), estimate.getLowerBound() <= expectedNumberOfInstances
+				&& expectedNumberOfInstances <= estimate.getUpperBound());
+	}
+
+	/**
+	 * Checks that an incremental index agrees with a full search after links
+	 * are removed and added
+	 */
+	@Test
+	public void testIncrementalIndex() {
+		IncrementalMotifIndex index = new IncrementalMotifIndex(network, motif, true);
+		assertEquals(expectedNumberOfInstances, index.getNrInstances());
+		LinkType x = typeTranslation.get('X');
+		LinkType z = typeTranslation.get('Z');
+		Node[] first = motifInstances.iterator().next().getNodeArray();
+		Node[] other = null;
+		for (MotifInstance instance : motifInstances) {
+			Node node = instance.getNodeArray()[0];
+			if (node != first[0] && !network.hasEdge(first[0], node, x)) {
+				other = instance.getNodeArray();
+			}
+		}
+		assertTrue("no instance starts at a node not linked to " + first[0], other != null);
+		Node zStart = network.hasEdge(first[3], first[0], z) ? first[3] : first[0];
+		Node zEnd = zStart == first[0] ? first[3] : first[0];
+		assertTrue(index.removeEdge(first[1], first[0], x) > 0);
+		assertEquals(0, index.removeEdge(first[1], first[0], x));
+		checkIndex(index);
+		assertTrue(index.removeEdge(zStart, zEnd, z) > 0);
+		checkIndex(index);
+		index.addEdge(first[0], other[0], x);
+		checkIndex(index);
+		assertEquals(0, index.addEdge(first[0], other[0], x));
+		// only maintain the number of instances while undoing the changes
+		IncrementalMotifIndex counter = new IncrementalMotifIndex(network, motif, false);
+		assertEquals(index.getNrInstances(), counter.getNrInstances());
+		counter.removeEdge(first[0], other[0], x);
+		counter.addEdge(zStart, zEnd, z);
+		counter.addEdge(first[0], first[1], x);
+		assertEquals(expectedNumberOfInstances, counter.getNrInstances());
+		assertEquals(expectedNumberOfInstances, new MotifFinder(network).countMotif(motif));
+	}
+
+	/**
+	 * Checks that the instances containing a node or two nodes are the
+	 * instances of a full search containing them
+	 */
+	@Test
+	public void testFindMotifContaining() {
+		Node[] nodes = motifInstances.iterator().next().getNodeArray();
+		for (int i = 0; i < nodes.length; i++) {
+			Set<MotifInstance> expected = new HashSet<MotifInstance>();
+			Set<MotifInstance> expectedPair = new HashSet<MotifInstance>();
+			Node other = nodes[(i + 2) % nodes.length];
+			for (MotifInstance instance : motifInstances) {
+				List<Node> instanceNodes = Arrays.asList(instance.getNodeArray());
+				if (instanceNodes.contains(nodes[i])) {
+					expected.add(instance);
+					if (instanceNodes.contains(other)) {
+						expectedPair.add(instance);
+					}
+				}
+			}
+			assertEquals(toStrings(expected), toStrings(mf.findMotifContaining(motif, nodes[i])));
+			assertEquals(toStrings(expectedPair), toStrings(mf.findMotifContaining(motif, nodes[i], other)));
+		}
+	}
+
+	/**
+	 * Checks that a {@link MotifInstanceSet} behaves as a set of instances,
+	 * both with packed rows and with rows too wide to be packed
+	 */
+	@Test
+	public void testInstanceSet() {
+		Set<MotifInstance> expected = new HashSet<MotifInstance>(motifInstances);
+		assertEquals(expectedNumberOfInstances, expected.size());
+		assertEquals(expected, motifInstances);
+		assertEquals(motifInstances, expected);
+		assertEquals(expected.hashCode(), motifInstances.hashCode());
+		for (int nrMotifNodes : new int[] { motif.getNrMotifNodes(), 4 * motif.getNrMotifNodes() }) {
+			MotifInstanceSet instances = new MotifInstanceSet(network, nrMotifNodes);
+			List<MotifInstance> all = new ArrayList<MotifInstance>();
+			for (MotifInstance instance : motifInstances) {
+				Node[] nodes = new Node[nrMotifNodes];
+				for (int i = 0; i < nrMotifNodes; i++) {
+					nodes[i] = instance.getNodeArray()[i % instance.getNodeArray().length];
+				}
+				all.add(new MotifInstance(nodes));
+				assertTrue(instances.add(nodes));
+				assertFalse(instances.add(nodes));
+			}
+			assertEquals(new HashSet<MotifInstance>(all), instances);
+			Iterator<MotifInstance> it = instances.iterator();
+			for (int i = 0; it.hasNext(); i++) {
+				MotifInstance instance = it.next();
+				if (i % 3 == 0) {
+					it.remove();
+					assertFalse(instances.contains(instance));
+				}
+			}
+			for (int i = 0; i < all.size(); i++) {
+				assertEquals(instances.contains(all.get(i)), instances.remove(all.get(i)));
+				assertFalse(instances.contains(all.get(i)));
+			}
+			assertTrue(instances.isEmpty());
+		}
+	}
+
+	/**
+	 * Checks the answers of a query server to counting and anchored queries
+	 */
+	@Test
+	public void testQueryServer() throws IOException {
+		QueryServer server = new QueryServer(network, typeTranslation, 2, SearchLimits.NONE);
+		server.start(0);
+		Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+		try {
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+			PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), "UTF-8"), true);
+			out.println("COUNT " + motifspec);
+			assertEquals("OK " + expectedNumberOfInstances, in.readLine());
+			Node node = motifInstances.iterator().next().getNodeArray()[0];
+			out.println("CONTAINING " + motifspec + " " + node.getDescription());
+			Set<String> instances = new HashSet<String>();
+			String line;
+			while (!(line = in.readLine()).startsWith("OK")) {
+				instances.add(line);
+			}
+			assertEquals("OK " + instances.size(), line);
+			assertEquals(toStrings(mf.findMotifContaining(motif, node)), instances);
+			out.println("COUNT XX");
+			assertTrue(in.readLine().startsWith("ERROR"));
+			out.println("COUNT X00");
+			assertTrue(in.readLine().startsWith("ERROR"));
+			out.println("COUNT " + motifspec);
+			assertEquals("OK " + expectedNumberOfInstances, in.readLine());
+			out.println("QUIT");
+			assertEquals(null, in.readLine());
+		} finally {
+			socket.close();
+			server.close();
+		}
+	}
+
+	/**
+	 * Checks that the asynchronous writer writes every instance, with and
+	 * without compression
+	 */
+	@Test
+	public void testInstanceWriter() throws IOException {
+		File file = File.createTempFile("instances", ".txt");
+		try {
+			for (int threads = 1; threads <= 2; threads++) {
+				for (boolean gzip : new boolean[] { false, true }) {
+					InstanceWriter writer = new InstanceWriter(file.getPath(), false, gzip, threads);
+					try {
+						mf.findMotif(motif, writer, false, threads);
+					} finally {
+						writer.close();
+					}
+					assertEquals(expectedNumberOfInstances, writer.getNrInstances());
+					InputStream in = new FileInputStream(file);
+					if (gzip) {
+						in = new GZIPInputStream(in);
+					}
+					BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+					Set<String> lines = new HashSet<String>();
+					String line;
+					while ((line = reader.readLine()) != null) {
+						lines.add(line);
+					}
+					reader.close();
+					assertEquals(toStrings(motifInstances), lines);
+				}
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Checks that an incremental index holds the instances of a full search
+	 *
+	 * @param index index of the motif in the network
+	 */
+	private void checkIndex(IncrementalMotifIndex index) {
+		Set<MotifInstance> instances = new MotifFinder(network).findMotif(motif);
+		assertEquals(instances.size(), index.getNrInstances());
+		assertEquals(toStrings(instances), toStrings(index.getInstances()));
+	}
+
+	/**
+	 * Checks if isomorphic motifs share their canonical form, and if the
+	 * analysis results kept in the store give the same instances
+	 */
+	@Test
+	public void testSymmetryCache() throws IOException {
+		Motif reversed = CommandLineInterface.getMotif("YYYz000z0X00zXX", typeTranslation);
+		Motif other = CommandLineInterface.getMotif("XXXZ000Z0Y00ZY0", typeTranslation);
+		assertEquals(motif.getCanonicalForm(), reversed.getCanonicalForm());
+		assertFalse(motif.getCanonicalForm().equals(other.getCanonicalForm()));
+		File store = Files.createTempDirectory("ismags").toFile();
+		SymmetryCache.setStore(store);
+		try {
+			SymmetryCache.clear();
+			assertEquals(expectedNumberOfInstances, new MotifFinder(network).countMotif(reversed));
+			assertEquals(1, store.listFiles().length);
+			SymmetryCache.clear();
+			assertEquals(toStrings(motifInstances), toStrings(new MotifFinder(network).findMotif(motif)));
+		} finally {
+			SymmetryCache.setStore(null);
+			for (File file : store.listFiles()) {
+				file.delete();
+			}
+			store.delete();
+		}
+	}
+
+	/**
+	 * Checks that the symmetry-breaking constraints keep exactly one mapping
+	 * of every subgraph. The analysis used to miss automorphisms of some
+	 * labellings, reporting every diamond twice, and to add constraints
+	 * without an automorphism, dropping instances.
+	 */
+	@Test
+	public void testSymmetryAnalysis() {
+		SymmetryCache.clear();
+		assertEquals(5210714, mf.countMotif(CommandLineInterface.getMotif("XXXX0X", typeTranslation)));
+		String[] specs = { "XXXX0X", "XXX0XX", "0XX0X000000X00X", "X0Zz0ZX0Z0000zz", "zzXz0zz000X0X00",
+				"zY0z000zY0", "XXXXXXX00XX0XX0" };
+		Random random = new Random(42);
+		for (String spec : specs) {
+			Motif m = CommandLineInterface.getMotif(spec, typeTranslation);
+			int nrMotifNodes = m.getNrMotifNodes();
+			List<Integer> order = new ArrayList<Integer>();
+			for (int i = 0; i < nrMotifNodes; i++) {
+				order.add(i);
+			}
+			// the motif is the only instance in a network consisting of it,
+			// whatever the order of the network nodes
+			for (int k = 0; k < 10; k++) {
+				Collections.shuffle(order, random);
+				Network self = new Network();
+				Node[] nodes = new Node[nrMotifNodes];
+				for (int i = 0; i < nrMotifNodes; i++) {
+					self.addNode(new Node(i, "n" + i));
+				}
+				for (int i = 0; i < nrMotifNodes; i++) {
+					nodes[i] = self.getNodeByID(order.get(i));
+				}
+				int linkID = 0;
+				int position = 0;
+				for (int i = 1; i < nrMotifNodes; i++) {
+					for (int j = 0; j < i; j++) {
+						char c = spec.charAt(position++);
+						if (c == '0') {
+							continue;
+						}
+						LinkType type = typeTranslation.get(Character.toUpperCase(c));
+						if (Character.isUpperCase(c)) {
+							self.addLink(new Link(linkID++, nodes[j], nodes[i], type));
+						} else {
+							self.addLink(new Link(linkID++, nodes[i], nodes[j], type));
+						}
+					}
+				}
+				self.finalizeNetworkConstruction();
+				assertEquals(spec + " in order " + order, 1, new MotifFinder(self).countMotif(m));
+			}
+		}
+	}
+
 	/**
 	 * Checks if the list of edges stored in {@link MotifFinder.usedLinks} are
 	 * the same edges as used by the instances from
@@ -164,6 +887,21 @@ public class ISMAGSTest {
 		}
 	}
 	
+	/**
+	 * Converts {@link MotifInstance}s to their string representation, so
+	 * instances found by different runs can be compared
+	 * 
+	 * @param instances motif instances to convert
+	 * @return set of string representations
+	 */
+	private Set<String> toStrings(Collection<MotifInstance> instances) {
+		HashSet<String> strings = new HashSet<String>();
+		for (MotifInstance mi : instances) {
+			strings.add(mi.toString());
+		}
+		return strings;
+	}
+
 	/**
 	 * Iterate the {@link MotifInstance}s from a run and list all edges as node sets.
 	 * 
@@ -0,0 +1,119 @@
+package junit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import datastructures.Intersection;
+import datastructures.NodeBitmap;
+
+public class IntersectionTest {
+
+	private final Random random = new Random(42);
+
+	/**
+	 * Creates a sorted array of distinct random values
+	 *
+	 * @param size number of values
+	 * @param range values are taken from [0, range)
+	 * @return sorted array
+	 */
+	private int[] randomSet(int size, int range) {
+		TreeSet<Integer> set = new TreeSet<Integer>();
+		while (set.size() < size) {
+			set.add(random.nextInt(range));
+		}
+		int[] a = new int[size];
+		int i = 0;
+		for (int value : set) {
+			a[i++] = value;
+		}
+		return a;
+	}
+
+	/**
+	 * Straightforward intersection used as reference
+	 */
+	private int[] reference(int[] a, int[] b) {
+		TreeSet<Integer> set = new TreeSet<Integer>();
+		for (int x : a) {
+			if (Arrays.binarySearch(b, x) >= 0) {
+				set.add(x);
+			}
+		}
+		int[] r = new int[set.size()];
+		int i = 0;
+		for (int value : set) {
+			r[i++] = value;
+		}
+		return r;
+	}
+
+	/**
+	 * Checks merge and galloping intersections of ranges with various size
+	 * ratios against the reference
+	 */
+	@Test
+	public void testIntersect() {
+		int[][] sizes = { { 0, 10 }, { 1, 1 }, { 50, 60 }, { 3, 2000 }, { 2000, 3 }, { 20, 5000 }, { 1000, 1000 } };
+		for (int[] size : sizes) {
+			for (int run = 0; run < 20; run++) {
+				int[] a = randomSet(size[0], 10000);
+				int[] b = randomSet(size[1], 10000);
+				int[] out = new int[Math.min(a.length, b.length)];
+				int n = Intersection.intersect(a, 0, a.length, b, 0, b.length, out);
+				assertArrayEquals(reference(a, b), Arrays.copyOf(out, n));
+			}
+		}
+	}
+
+	/**
+	 * Checks intersecting in place and on sub-ranges
+	 */
+	@Test
+	public void testIntersectInPlaceAndRanges() {
+		for (int run = 0; run < 50; run++) {
+			int[] a = randomSet(40, 1000);
+			int[] b = randomSet(3000, 5000);
+			int[] expected = reference(Arrays.copyOfRange(a, 0, 30), Arrays.copyOfRange(b, 100, 2900));
+			int n = Intersection.intersect(a, 0, 30, b, 100, 2900, a);
+			assertArrayEquals(expected, Arrays.copyOf(a, n));
+		}
+	}
+
+	/**
+	 * Checks filtering through sparse and dense bitmap chunks against the
+	 * reference
+	 */
+	@Test
+	public void testBitmapRetain() {
+		int[][] sizes = { { 1, 3 }, { 200, 300 }, { 2000, 20000 }, { 5000, 100000 } };
+		for (int[] size : sizes) {
+			for (int run = 0; run < 10; run++) {
+				int[] a = randomSet(size[0], 200000);
+				int[] b = randomSet(size[1], 200000);
+				int[] expected = reference(a, b);
+				int n = new NodeBitmap(b, 0, b.length).retain(a, a.length);
+				assertArrayEquals(expected, Arrays.copyOf(a, n));
+			}
+		}
+	}
+
+	/**
+	 * Checks the bound searches
+	 */
+	@Test
+	public void testBounds() {
+		int[] a = { 1, 3, 5, 7 };
+		assertEquals(0, Intersection.upperBound(a, 0, 4, -1));
+		assertEquals(2, Intersection.upperBound(a, 0, 4, 3));
+		assertEquals(2, Intersection.upperBound(a, 0, 4, 4));
+		assertEquals(1, Intersection.lowerBound(a, 0, 4, 3));
+		assertEquals(4, Intersection.lowerBound(a, 0, 4, Integer.MAX_VALUE));
+	}
+}